@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** Tests that Main and its kernels convert without allocating: the bytes
+ *  that the converting thread allocates may grow with the number of
+ *  sections of the input, but not with the number of characters.
+ *  @author Vikram Cherukuri
+ */
+public class AllocationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The naval configuration, with A, B, and C replaced by Greek
+     *  letters. */
+    private static final String GREEK_CONFIG =
+        NAVAL_CONFIG.replace('A', '\u0391').replace('B', '\u0392')
+        .replace('C', '\u0393').replace("\u0392eta", "Beta")
+        .replace(" \u0392 R", " B R");
+
+    /** Settings for the sections of generated input. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA (HQ) (EX) (IP) (TR) (BY)",
+        "* B Beta IV V I MERC",
+        "* B Beta III I V XQZW (AZ) (KD)",
+    };
+
+    /** Number of letters in each generated message line. */
+    private static final int LINE = 60;
+
+    /** Most bytes that converting may allocate beyond those allocated
+     *  for each section, whatever the length of the input. */
+    private static final long BUDGET = 16 * 1024;
+
+    /** Most bytes that each section of input may cost. */
+    private static final long SECTION_BUDGET = 16 * 1024;
+
+    /** Return input of SECTIONS sections, cycling through SETTINGS, with
+     *  CHARS random letters in all. */
+    private static byte[] input(int sections, int chars) {
+        Random random = new Random(chars);
+        StringBuilder result = new StringBuilder();
+        for (int s = 0; s < sections; s += 1) {
+            result.append(SETTINGS[s % SETTINGS.length]).append('\n');
+            int n = chars / sections;
+            for (int i = 0; i < n; i += 1) {
+                result.append((char) ('A' + random.nextInt(26)));
+                if (i % LINE == LINE - 1 || i == n - 1) {
+                    result.append('\n');
+                }
+            }
+        }
+        return result.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Return the number of bytes this thread allocates while Main,
+     *  using ENGINE, converts INPUT. */
+    private static long allocation(String engine, byte[] input)
+        throws IOException {
+        File config = File.createTempFile("alloc", ".conf");
+        File in = File.createTempFile("alloc", ".in");
+        File out = File.createTempFile("alloc", ".out");
+        try {
+            Files.write(config.toPath(),
+                        NAVAL_CONFIG.getBytes(StandardCharsets.US_ASCII));
+            Files.write(in.toPath(), input);
+            String[] args = {
+                "--engine", engine, config.getPath(), in.getPath(),
+                out.getPath()
+            };
+            long start = allocated();
+            new Main(args).process();
+            return allocated() - start;
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /** Check that Main, with ENGINE, allocates within BUDGET however
+     *  many characters it converts, and within SECTION_BUDGET per
+     *  section. */
+    private static void checkMain(String engine) throws IOException {
+        byte[] small = input(6, 60_000), large = input(6, 600_000),
+            more = input(60, 600_000);
+        allocation(engine, large);
+        long base = allocation(engine, small);
+        long perChar = allocation(engine, large) - base;
+        long perSection = allocation(engine, more) - base;
+        assertTrue(String.format("%s: %d bytes for 540000 more characters",
+                                 engine, perChar),
+                   perChar <= BUDGET);
+        assertTrue(String.format("%s: %d bytes for 54 more sections",
+                                 engine, perSection),
+                   perSection <= BUDGET + 54 * SECTION_BUDGET);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInterpreter() throws IOException {
+        checkMain("interpreter");
+    }
+
+    @Test
+    public void testSpecialized() throws IOException {
+        checkMain("specialized");
+    }
+
+    @Test
+    public void testAuto() throws IOException {
+        checkMain("auto");
+    }
+
+    @Test
+    public void testTextKernel() {
+        Machine m = new MachineConfig(new Scanner(GREEK_CONFIG)).newMachine();
+        Main.setUp(m, "* B Beta I II III \u0391\u0391\u0391\u0391");
+        TextKernel k = new TextKernel(m, StandardCharsets.UTF_8);
+        byte[] line = "\u0391\u0392\u0393DE FGHIJ \u0393\u0392\u0391ZY "
+            .repeat(4).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 1000; i += 1) {
+            k.convertLine(line, 0, line.length);
+            k.clear();
+        }
+        long start = allocated();
+        for (int i = 0; i < 20_000; i += 1) {
+            k.convertLine(line, 0, line.length);
+            k.clear();
+        }
+        long used = allocated() - start;
+        assertTrue(used + " bytes for 20000 lines", used <= BUDGET);
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Vikram Cherukuri
@@ -8,12 +10,22 @@ class Alphabet {
     /** Chars of this alphabet. */
     private char[] _chars;
 
+    /** Index of each char of this alphabet, indexed by char; -1 for
+     *  chars not in it. */
+    private int[] _index;
+
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = new char[chars.length()];
-        for (int i = 0; i < chars.length(); i++) {
-            _chars[i] = chars.charAt(i);
+        _chars = chars.toCharArray();
+        int max = -1;
+        for (char ch : _chars) {
+            max = Math.max(max, ch);
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < _chars.length; i++) {
+            _index[_chars[i]] = i;
         }
     }
 
@@ -22,6 +34,16 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return an alphabet containing the characters of CHARS, which may
+     *  include characters outside the Basic Multilingual Plane (written
+     *  as surrogate pairs in CHARS). */
+    static Alphabet of(String chars) {
+        if (chars.codePointCount(0, chars.length()) == chars.length()) {
+            return new Alphabet(chars);
+        }
+        return new CodePointAlphabet(chars);
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _chars.length;
@@ -34,12 +56,12 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (ch == _chars[i]) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true if code point C is in this alphabet. */
+    boolean containsCodePoint(int c) {
+        return indexOf(c) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -51,19 +73,32 @@ class Alphabet {
         return _chars[index];
     }
 
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return toChar(index);
+    }
+
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!contains(ch)) {
+        return toIndex(ch);
+    }
+
+    /** Returns the index of code point C, which must be in the alphabet.
+     *  This is the inverse of toCodePoint(). */
+    int toIndex(int c) {
+        int result = indexOf(c);
+        if (result < 0) {
             throw new EnigmaException("Character not in alphabet");
         }
-        int result = -1;
-        for (int i = 0; i < _chars.length; i++) {
-            if (ch == _chars[i]) {
-                result = i;
-            }
-        }
         return result;
     }
 
+    /** Returns the index of code point C, or -1 if it is not in the
+     *  alphabet. */
+    int indexOf(int c) {
+        return c >= 0 && c < _index.length ? _index[c] : -1;
+    }
+
 }
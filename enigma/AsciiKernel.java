@@ -0,0 +1,156 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A fused conversion kernel for machines whose alphabets consist only
+ *  of ASCII characters.  Input bytes map directly to alphabet indices
+ *  through a 256-entry table, pass through the machine, and are written
+ *  as grouped output bytes into a reusable buffer, so that no String or
+ *  char values are created along the way.
+ *  @author Vikram Cherukuri
+ */
+final class AsciiKernel implements Kernel {
+
+    /** Table entry for bytes that are not in the alphabet. */
+    private static final byte ABSENT = -1;
+
+    /** Table entry for whitespace bytes, which are dropped. */
+    private static final byte SKIP = -2;
+
+    /** Number of characters in an output group. */
+    static final int GROUP = 5;
+
+    /** A kernel that converts through MACHINE, whose alphabet must
+     *  satisfy supports(). */
+    AsciiKernel(Machine machine) {
+        Alphabet alpha = machine.alphabet();
+        if (!supports(alpha)) {
+            throw error("alphabet is not ASCII");
+        }
+        _machine = machine;
+        _ordinals = new int[256];
+        Arrays.fill(_ordinals, ABSENT);
+        _bytes = new byte[alpha.size()];
+        _counts = new long[alpha.size()];
+        for (int i = 0; i < alpha.size(); i += 1) {
+            _ordinals[alpha.toChar(i)] = i;
+            _bytes[i] = (byte) alpha.toChar(i);
+        }
+        for (char ch : " \t\n\u000b\f\r".toCharArray()) {
+            _ordinals[ch] = SKIP;
+        }
+        _newline = System.lineSeparator().getBytes();
+        _buffer = new byte[LineReader.BUFFER_SIZE];
+    }
+
+    /** Return true iff every character of ALPHA is an ASCII character. */
+    static boolean supports(Alphabet alpha) {
+        for (int i = 0; i < alpha.size(); i += 1) {
+            if (alpha.toCodePoint(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return my machine. */
+    Machine machine() {
+        return _machine;
+    }
+
+    @Override
+    public void convertLine(byte[] in, int start, int end) {
+        reserve(end - start + (end - start) / GROUP + _newline.length);
+        if (end - start > _message.length) {
+            _message = new int[Math.max(2 * _message.length, end - start)];
+        }
+        int[] message = _message;
+        int[] ordinals = _ordinals;
+        int n = 0;
+        for (int i = start; i < end; i += 1) {
+            int c = ordinals[in[i] & 0xff];
+            if (c < 0) {
+                if (c == SKIP) {
+                    continue;
+                }
+                throw error("Character not in alphabet");
+            }
+            message[n] = c;
+            n += 1;
+        }
+        _machine.convert(message, 0, n);
+
+        byte[] out = _buffer;
+        long[] counts = _counts;
+        int k = _length;
+        int count = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (count == GROUP) {
+                out[k++] = ' ';
+                count = 0;
+            }
+            int r = message[i];
+            counts[r] += 1;
+            out[k++] = _bytes[r];
+            count += 1;
+        }
+        for (byte b : _newline) {
+            out[k++] = b;
+        }
+        _length = k;
+    }
+
+    @Override
+    public long[] counts() {
+        return _counts;
+    }
+
+    @Override
+    public byte[] buffer() {
+        return _buffer;
+    }
+
+    @Override
+    public int length() {
+        return _length;
+    }
+
+    @Override
+    public void clear() {
+        _length = 0;
+    }
+
+    /** Ensure that buffer() has room for at least N more bytes. */
+    private void reserve(int n) {
+        if (_length + n > _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer,
+                                    Math.max(2 * _buffer.length, _length + n));
+        }
+    }
+
+    /** The machine I convert through. */
+    private final Machine _machine;
+
+    /** Alphabet indices of the characters of the current line. */
+    private int[] _message = new int[Machine.BLOCK];
+
+    /** Alphabet index of each byte value, or ABSENT or SKIP. */
+    private final int[] _ordinals;
+
+    /** Number of times each index has been output. */
+    private final long[] _counts;
+
+    /** Byte value of each alphabet index. */
+    private final byte[] _bytes;
+
+    /** Line separator appended to each converted line. */
+    private final byte[] _newline;
+
+    /** Converted output. */
+    private byte[] _buffer;
+
+    /** Number of valid bytes in _buffer. */
+    private int _length;
+}
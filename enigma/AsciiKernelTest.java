@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the AsciiKernel class.
+ *  @author Vikram Cherukuri
+ */
+public class AsciiKernelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings of the machines used in these tests. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the contents of K's buffer as a String. */
+    private String output(AsciiKernel k) {
+        return new String(k.buffer(), 0, k.length());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSupports() {
+        assertTrue(AsciiKernel.supports(UPPER));
+        assertFalse(AsciiKernel.supports(new Alphabet("AB\u00c4")));
+    }
+
+    @Test
+    public void testConvertLine() {
+        AsciiKernel k = new AsciiKernel(navalMachine(SETTINGS));
+        byte[] in = "FROM HIS SHOULDER HIAWATHA".getBytes();
+        k.convertLine(in, 0, in.length);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + System.lineSeparator(),
+                     output(k));
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Machine m = navalMachine(SETTINGS);
+        AsciiKernel k = new AsciiKernel(navalMachine(SETTINGS));
+        String msg = "TOOKTHECAMERAOFROSEWOOD";
+        byte[] in = " TOOK THE\tCAMERA OF  ROSEWOOD ".getBytes();
+        k.convertLine(in, 0, in.length);
+        k.convertLine(in, 0, 0);
+        String expected = m.convert(msg);
+        assertEquals(expected.substring(0, 5) + " " + expected.substring(5, 10)
+                     + " " + expected.substring(10, 15) + " "
+                     + expected.substring(15, 20) + " "
+                     + expected.substring(20) + System.lineSeparator()
+                     + System.lineSeparator(), output(k));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        AsciiKernel k = new AsciiKernel(navalMachine(SETTINGS));
+        byte[] in = "HELLO, WORLD".getBytes();
+        k.convertLine(in, 0, in.length);
+    }
+
+}
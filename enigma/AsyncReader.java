@@ -0,0 +1,194 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.BooleanSupplier;
+
+/** An InputStream that reads another stream in large blocks on a
+ *  background thread, the counterpart of AsyncWriter.  There are two
+ *  buffers: while the caller consumes one, the reader thread fills the
+ *  other, so that work done by the underlying stream, such as
+ *  decompression, overlaps with the caller's.  Only one thread at a time
+ *  may read from an AsyncReader.
+ *  @author Vikram Cherukuri
+ */
+class AsyncReader extends InputStream {
+
+    /** Default size of each of my buffers. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** A reader taking its input from INPUT through buffers of the
+     *  default size. */
+    AsyncReader(InputStream input) {
+        this(input, BUFFER_SIZE);
+    }
+
+    /** A reader taking its input from INPUT through two buffers of SIZE
+     *  bytes each. */
+    AsyncReader(InputStream input, int size) {
+        _input = input;
+        _current = new byte[size];
+        _free = new byte[size];
+        Thread thread = new Thread(this::fill, "enigma-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (_pos == _length && !takeOver()) {
+            return -1;
+        }
+        int b = _current[_pos] & 0xff;
+        _pos += 1;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (_pos == _length && !takeOver()) {
+            return -1;
+        }
+        int n = Math.min(len, _length - _pos);
+        System.arraycopy(_current, _pos, b, off, n);
+        _pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return _length - _pos;
+    }
+
+    /** Stop my reader thread, which then closes my input. */
+    @Override
+    public synchronized void close() {
+        _closed = true;
+        notifyAll();
+    }
+
+    /** Continue with the buffer filled by the reader thread, waiting for
+     *  it if need be, and return the one just consumed for refilling.
+     *  Return false if my input is exhausted. */
+    private synchronized boolean takeOver() throws IOException {
+        await(() -> _full == null && !_done && !_closed);
+        if (_closed) {
+            throw new IOException("stream closed");
+        }
+        if (_full == null) {
+            if (_error != null) {
+                throw new IOException(_error.getMessage(), _error);
+            }
+            return false;
+        }
+        _free = _current;
+        _current = _full;
+        _length = _fullLength;
+        _pos = 0;
+        _full = null;
+        notifyAll();
+        return true;
+    }
+
+    /** Body of the reader thread: fill each buffer returned to it from
+     *  my input, and hand it off, closing my input when it is exhausted
+     *  or I am closed. */
+    private void fill() {
+        try {
+            boolean end = false;
+            while (!end) {
+                byte[] buf;
+                synchronized (this) {
+                    await(() -> _free == null && !_closed);
+                    if (_closed) {
+                        return;
+                    }
+                    buf = _free;
+                    _free = null;
+                }
+                int n = 0;
+                try {
+                    while (n < buf.length && !end) {
+                        int k = _input.read(buf, n, buf.length - n);
+                        if (k < 0) {
+                            end = true;
+                        } else {
+                            n += k;
+                        }
+                    }
+                } catch (IOException excp) {
+                    _error = excp;
+                    end = true;
+                }
+                synchronized (this) {
+                    if (n > 0) {
+                        _full = buf;
+                        _fullLength = n;
+                    } else {
+                        _free = buf;
+                    }
+                    _done = end;
+                    notifyAll();
+                }
+            }
+        } finally {
+            try {
+                _input.close();
+            } catch (IOException excp) {
+                /* Ignore IOException: all input has been read. */
+            }
+        }
+    }
+
+    /** Wait as long as BLOCKED, which is tested while holding my lock.
+     *  An interrupt does not end the wait, but the thread's interrupt
+     *  status is restored once it is over. */
+    private synchronized void await(BooleanSupplier blocked) {
+        boolean interrupted = false;
+        while (blocked.getAsBoolean()) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Source of my input. */
+    private final InputStream _input;
+
+    /** Buffer currently being consumed by the caller. */
+    private byte[] _current;
+
+    /** Position of the next byte to consume in _current. */
+    private int _pos;
+
+    /** Number of valid bytes in _current. */
+    private int _length;
+
+    /** Buffer filled by the reader thread and not yet taken over, or
+     *  null. */
+    private byte[] _full;
+
+    /** Number of valid bytes in _full. */
+    private int _fullLength;
+
+    /** Buffer available for the reader thread to fill, or null while it
+     *  holds it. */
+    private byte[] _free;
+
+    /** True once the reader thread has reached the end of _input. */
+    private boolean _done;
+
+    /** True once I have been closed. */
+    private boolean _closed;
+
+    /** Error that ended the reader thread, or null. */
+    private volatile IOException _error;
+}
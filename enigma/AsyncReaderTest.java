@@ -0,0 +1,193 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the AsyncReader class and for
+ *  compressed input and output in Main.
+ *  @author Vikram Cherukuri
+ */
+public class AsyncReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return all bytes remaining in IN, read in pieces of random sizes
+     *  up to MAX, using RANDOM. */
+    private static byte[] readAll(InputStream in, int max, Random random)
+        throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[max];
+        while (true) {
+            if (random.nextInt(4) == 0) {
+                int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                result.write(b);
+            } else {
+                int n = in.read(buf, 0, 1 + random.nextInt(max));
+                if (n < 0) {
+                    break;
+                }
+                result.write(buf, 0, n);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Return the output of Main, with ARGS followed by files holding
+     *  NAVAL_CONFIG, INPUT and the output, whose names end in SUFFIX.
+     *  The input is compressed if COMPRESS. */
+    private static byte[] run(byte[] input, String suffix, boolean compress,
+                              String... args) throws IOException {
+        File config = File.createTempFile("async", ".conf");
+        File in = File.createTempFile("async", ".in" + suffix);
+        File out = File.createTempFile("async", ".out" + suffix);
+        try {
+            Files.write(config.toPath(),
+                        NAVAL_CONFIG.getBytes(StandardCharsets.US_ASCII));
+            try (OutputStream s = compress
+                 ? new GZIPOutputStream(new FileOutputStream(in))
+                 : new FileOutputStream(in)) {
+                s.write(input);
+            }
+            String[] all = Arrays.copyOf(args, args.length + 3);
+            all[args.length] = config.getPath();
+            all[args.length + 1] = in.getPath();
+            all[args.length + 2] = out.getPath();
+            new Main(all).process();
+            byte[] result = Files.readAllBytes(out.toPath());
+            if (compress) {
+                result = new GZIPInputStream(new ByteArrayInputStream(result))
+                    .readAllBytes();
+            }
+            return result;
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRead() throws IOException {
+        Random random = new Random(42);
+        byte[] data = new byte[100_000];
+        random.nextBytes(data);
+        for (int size : new int[] { 1, 7, 4096, 1 << 20 }) {
+            InputStream in =
+                new AsyncReader(new ByteArrayInputStream(data), size);
+            assertArrayEquals(data, readAll(in, 3 * size + 1, random));
+            assertEquals(-1, in.read());
+            in.close();
+        }
+        assertEquals(-1, new AsyncReader(new ByteArrayInputStream(
+                                             new byte[0])).read());
+    }
+
+    @Test
+    public void testError() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (_count == 10) {
+                    throw new IOException("disk on fire");
+                }
+                _count += 1;
+                return 'A';
+            }
+
+            private int _count;
+        };
+        InputStream in = new AsyncReader(failing, 4);
+        for (int i = 0; i < 8; i += 1) {
+            assertEquals('A', in.read());
+        }
+        try {
+            while (in.read() >= 0) {
+                continue;
+            }
+            fail("error in input not reported");
+        } catch (IOException excp) {
+            assertEquals("disk on fire", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testInterrupt() throws IOException {
+        byte[] data = new byte[40];
+        new Random(43).nextBytes(data);
+        InputStream slow = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException excp) {
+                    throw new IllegalStateException(excp);
+                }
+                return super.read(b, off, Math.min(len, 8));
+            }
+        };
+        InputStream in = new AsyncReader(slow, 16);
+        Thread.currentThread().interrupt();
+        try {
+            assertArrayEquals(data, readAll(in, 16, new Random(44)));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        in.close();
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        Random random = new Random(7);
+        StringBuilder msg = new StringBuilder("* B Beta I II III AXLE (TR)\n");
+        for (int i = 0; i < 300_000; i += 1) {
+            msg.append((char) ('A' + random.nextInt(26)));
+            if (i % 70 == 69) {
+                msg.append('\n');
+            }
+        }
+        byte[] input = msg.append('\n').toString()
+            .getBytes(StandardCharsets.US_ASCII);
+        byte[] plain = run(input, "", false);
+        assertArrayEquals(plain, run(input, ".gz", true));
+        assertArrayEquals(plain, run(input, "", true, "--gzip"));
+        try {
+            run(input, ".gz", false);
+            fail("uncompressed input accepted as compressed");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            run(input, ".gz", true, "--checkpoint", "ckpt");
+            fail("checkpoint of compressed files accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
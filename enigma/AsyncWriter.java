@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.function.BooleanSupplier;
+
+/** An OutputStream that collects bytes into large direct buffers and
+ *  writes them to a channel on a background thread.  There are two
+ *  buffers: while the writer thread drains one, the caller fills the
+ *  other, so that output costs the caller one copy per line rather than
+ *  a system call.  Bytes reach the channel when a buffer fills, on
+ *  flush(), and on close().  Only one thread at a time may write to an
+ *  AsyncWriter.
+ *  @author Vikram Cherukuri
+ */
+class AsyncWriter extends OutputStream {
+
+    /** Default size of each of my buffers. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** A writer sending its output to CHANNEL through buffers of the
+     *  default size. */
+    AsyncWriter(WritableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    /** A writer sending its output to CHANNEL through two buffers of
+     *  SIZE bytes each. */
+    AsyncWriter(WritableByteChannel channel, int size) {
+        _channel = channel;
+        _filling = ByteBuffer.allocateDirect(size);
+        _free = ByteBuffer.allocateDirect(size);
+        _thread = new Thread(this::drain, "enigma-writer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!_filling.hasRemaining()) {
+            handOff();
+        }
+        _filling.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!_filling.hasRemaining()) {
+                handOff();
+            }
+            int n = Math.min(len, _filling.remaining());
+            _filling.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Write all bytes written so far to my channel, waiting until they
+     *  have been written. */
+    @Override
+    public void flush() throws IOException {
+        if (_filling.position() > 0) {
+            handOff();
+        }
+        synchronized (this) {
+            await(() -> _full != null);
+            checkError();
+        }
+    }
+
+    /** Flush me, stop my writer thread, and close my channel. */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                _closed = true;
+                notifyAll();
+            }
+            try {
+                _thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _channel.close();
+        }
+    }
+
+    /** Pass my filled buffer to the writer thread, waiting for it to
+     *  finish with the previous one, and continue with the other. */
+    private synchronized void handOff() throws IOException {
+        await(() -> _full != null);
+        checkError();
+        _filling.flip();
+        _full = _filling;
+        _filling = _free;
+        _free = null;
+        notifyAll();
+    }
+
+    /** Body of the writer thread: write each buffer handed off to it to
+     *  my channel, and return it for refilling. */
+    private void drain() {
+        while (true) {
+            ByteBuffer buf;
+            synchronized (this) {
+                await(() -> _full == null && !_closed);
+                if (_full == null) {
+                    return;
+                }
+                buf = _full;
+            }
+            try {
+                while (buf.hasRemaining()) {
+                    _channel.write(buf);
+                }
+            } catch (IOException excp) {
+                _error = excp;
+            }
+            synchronized (this) {
+                buf.clear();
+                _free = buf;
+                _full = null;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Wait as long as BLOCKED, which is tested while holding my lock.
+     *  An interrupt does not end the wait, but the thread's interrupt
+     *  status is restored once it is over. */
+    private synchronized void await(BooleanSupplier blocked) {
+        boolean interrupted = false;
+        while (blocked.getAsBoolean()) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Rethrow any error reported by the writer thread. */
+    private void checkError() throws IOException {
+        if (_error != null) {
+            throw new IOException(_error);
+        }
+    }
+
+    /** Destination of my output. */
+    private final WritableByteChannel _channel;
+
+    /** Thread writing buffers to _channel. */
+    private final Thread _thread;
+
+    /** Buffer currently being filled by the caller. */
+    private ByteBuffer _filling;
+
+    /** Buffer handed off to the writer thread and not yet written, or
+     *  null. */
+    private ByteBuffer _full;
+
+    /** Buffer available for filling once _filling is handed off, or null
+     *  while the writer thread holds it. */
+    private ByteBuffer _free;
+
+    /** True once I have been closed. */
+    private volatile boolean _closed;
+
+    /** First error encountered by the writer thread, or null. */
+    private volatile IOException _error;
+}
@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the AsyncWriter class.
+ *  @author Vikram Cherukuri
+ */
+public class AsyncWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A channel keeping the bytes written to it, which fails each write
+     *  once told to, and takes a given time over each write. */
+    private static class Sink implements WritableByteChannel {
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (failing) {
+                throw new IOException("disk full");
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException excp) {
+                throw new IOException(excp);
+            }
+            int n = src.remaining();
+            while (src.hasRemaining()) {
+                _bytes.write(src.get());
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return closes == 0;
+        }
+
+        @Override
+        public synchronized void close() {
+            closes += 1;
+        }
+
+        /** Return the bytes written to me so far. */
+        synchronized byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        /** True iff writes fail. */
+        volatile boolean failing;
+        /** Time taken by each write, in milliseconds. */
+        volatile long delay;
+        /** Number of times I have been closed. */
+        int closes;
+        /** Bytes written to me. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+    }
+
+    /** Return N random bytes, using RANDOM. */
+    private static byte[] randomBytes(int n, Random random) {
+        byte[] result = new byte[n];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrder() throws IOException {
+        Random random = new Random(28);
+        for (int size : new int[] { 1, 7, 64, 4096 }) {
+            Sink sink = new Sink();
+            AsyncWriter out = new AsyncWriter(sink, size);
+            byte[] data = randomBytes(20000, random);
+            for (int k = 0; k < data.length; ) {
+                if (random.nextBoolean()) {
+                    out.write(data[k]);
+                    k += 1;
+                } else {
+                    int n = Math.min(data.length - k, random.nextInt(300));
+                    out.write(data, k, n);
+                    k += n;
+                }
+            }
+            out.close();
+            assertArrayEquals(data, sink.bytes());
+            assertEquals(1, sink.closes);
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        Random random = new Random(29);
+        Sink sink = new Sink();
+        AsyncWriter out = new AsyncWriter(sink, 100);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int trial = 0; trial < 50; trial += 1) {
+            byte[] data = randomBytes(random.nextInt(250), random);
+            out.write(data);
+            expected.write(data);
+            out.flush();
+            assertArrayEquals(expected.toByteArray(), sink.bytes());
+        }
+        out.flush();
+        assertArrayEquals(expected.toByteArray(), sink.bytes());
+        out.close();
+    }
+
+    @Test
+    public void testError() throws IOException {
+        Sink sink = new Sink();
+        AsyncWriter out = new AsyncWriter(sink, 4);
+        out.write(new byte[] { 1, 2, 3, 4 });
+        sink.failing = true;
+        out.write(5);
+        try {
+            out.write(new byte[] { 6, 7, 8, 9, 10 });
+            fail("write after failure succeeded");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+        try {
+            out.close();
+            fail("close after failure succeeded");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+        assertEquals(1, sink.closes);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        Sink sink = new Sink();
+        AsyncWriter out = new AsyncWriter(sink, 16);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        out.close();
+        assertEquals(1, sink.closes);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, sink.bytes());
+    }
+
+    @Test
+    public void testInterrupt() throws IOException {
+        Sink sink = new Sink();
+        sink.delay = 50;
+        AsyncWriter out = new AsyncWriter(sink, 16);
+        out.write(new byte[40]);
+        Thread.currentThread().interrupt();
+        try {
+            out.flush();
+            assertArrayEquals(new byte[40], sink.bytes());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        out.close();
+    }
+}
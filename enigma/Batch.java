@@ -0,0 +1,309 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+import static enigma.EnigmaException.*;
+
+/** Batch Enigma simulator: runs many message files, each as a separate
+ *  run of Main, on a bounded pool of worker threads.
+ *  @author Vikram Cherukuri
+ */
+public final class Batch {
+
+    /** Process the message files specified by ARGS, which has the form
+     *      [--jobs N] [--out DIR] SOURCE
+     *  SOURCE is either a directory, whose files F.in are processed, or
+     *  a manifest file, each of whose non-blank lines not starting with
+     *  '#' has the form
+     *      INPUT [CONFIG]
+     *  with relative names taken relative to the manifest's directory.
+     *  As for testing/test-correct, the configuration for F.in is F.conf
+     *  if it exists, and otherwise default.conf in the same directory.
+     *  Each distinct configuration is read once.  The output for F.in is
+     *  written to DIR/F.out (DIR defaults to the current directory); it
+     *  is an error for two inputs to have the same output file.
+     *  Up to N files (default: the number of processors) are processed
+     *  at once.  Errors are reported for each file, and a summary of
+     *  throughput is printed at the end.  Exits normally if all files
+     *  were processed without error; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            System.exit(new Batch(args).process() ? 0 : 1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check ARGS (see comment on main). */
+    Batch(String[] args) {
+        String source = null;
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "--jobs":
+                try {
+                    _jobs = Integer.parseInt(optionValue(args, i));
+                } catch (NumberFormatException excp) {
+                    throw error("bad number of jobs");
+                }
+                if (_jobs < 1) {
+                    throw error("bad number of jobs");
+                }
+                i += 1;
+                break;
+            case "--out":
+                _outDir = new File(optionValue(args, i));
+                i += 1;
+                break;
+            default:
+                if (args[i].startsWith("--") || source != null) {
+                    throw error("usage: java enigma.Batch [--jobs N] "
+                                + "[--out DIR] (DIRECTORY | MANIFEST)");
+                }
+                source = args[i];
+            }
+        }
+        if (source == null) {
+            throw error("no directory or manifest given");
+        }
+        File src = new File(source);
+        if (src.isDirectory()) {
+            listDirectory(src);
+        } else {
+            readManifest(src);
+        }
+        if (!_outDir.isDirectory()) {
+            throw error("%s is not a directory", _outDir);
+        }
+        checkOutputs();
+    }
+
+    /** Return the value following the option ARGS[K]. */
+    private static String optionValue(String[] args, int k) {
+        if (k + 1 >= args.length) {
+            throw error("missing value for %s", args[k]);
+        }
+        return args[k + 1];
+    }
+
+    /** Add a job for each message file F.in in directory DIR. */
+    private void listDirectory(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".in"));
+        if (files == null) {
+            throw error("could not read directory %s", dir);
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            _inputs.add(f);
+            _configs.add(defaultConfig(f));
+        }
+    }
+
+    /** Add a job for each entry of the manifest file MANIFEST. */
+    private void readManifest(File manifest) {
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        try (Scanner lines = new Scanner(manifest)) {
+            while (lines.hasNextLine()) {
+                String line = lines.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length > 2) {
+                    throw error("bad manifest line: %s", line);
+                }
+                File input = resolve(dir, fields[0]);
+                _inputs.add(input);
+                _configs.add(fields.length > 1 ? resolve(dir, fields[1])
+                             : defaultConfig(input));
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", manifest);
+        }
+    }
+
+    /** Return the file named NAME, relative to DIR if not absolute. */
+    private static File resolve(File dir, String name) {
+        File f = new File(name);
+        return f.isAbsolute() ? f : new File(dir, name);
+    }
+
+    /** Return the configuration file for message file INPUT, following
+     *  the conventions of testing/test-correct. */
+    private static File defaultConfig(File input) {
+        String name = input.getPath();
+        if (name.endsWith(".in")) {
+            File own = new File(name.substring(0, name.length() - 3)
+                                + ".conf");
+            if (own.isFile()) {
+                return own;
+            }
+        }
+        return new File(input.getAbsoluteFile().getParentFile(),
+                        "default.conf");
+    }
+
+    /** Check that no two of _inputs would be written to the same output
+     *  file. */
+    private void checkOutputs() {
+        Map<File, File> writers = new HashMap<>();
+        for (File input : _inputs) {
+            File output = outputFile(input).getAbsoluteFile();
+            File other = writers.put(output, input);
+            if (other != null) {
+                throw error("%s and %s would both be written to %s",
+                            other, input, output);
+            }
+        }
+    }
+
+    /** Return the output file for message file INPUT. */
+    private File outputFile(File input) {
+        String name = input.getName();
+        if (name.endsWith(".in")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return new File(_outDir, name + ".out");
+    }
+
+    /** Read each distinct configuration, process all jobs, report
+     *  errors and statistics, and return true iff there were no
+     *  errors. */
+    boolean process() {
+        long start = System.nanoTime();
+        Map<File, LoadedConfig> configs = new HashMap<>();
+        for (File c : _configs) {
+            configs.computeIfAbsent(c.getAbsoluteFile(),
+                                    k -> new LoadedConfig(c));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        List<Future<Sizes>> results = new ArrayList<>();
+        for (int i = 0; i < _inputs.size(); i += 1) {
+            File input = _inputs.get(i);
+            LoadedConfig config =
+                configs.get(_configs.get(i).getAbsoluteFile());
+            results.add(pool.submit(() -> run(input, config)));
+        }
+        pool.shutdown();
+
+        int failures = 0;
+        long bytesIn = 0, bytesOut = 0;
+        for (int i = 0; i < results.size(); i += 1) {
+            try {
+                Sizes sizes = results.get(i).get();
+                bytesIn += sizes.input;
+                bytesOut += sizes.output;
+            } catch (ExecutionException excp) {
+                failures += 1;
+                Throwable cause = excp.getCause();
+                System.err.printf("%s: Error: %s%n", _inputs.get(i),
+                                  cause instanceof EnigmaException
+                                  ? cause.getMessage() : cause.toString());
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("%d files (%d failed) in %.3f s: "
+                          + "%d bytes in, %d bytes out, %.1f MB/s, "
+                          + "%.1f files/s%n",
+                          _inputs.size(), failures, seconds, bytesIn,
+                          bytesOut, bytesIn / seconds / 1e6,
+                          _inputs.size() / seconds);
+        return failures == 0;
+    }
+
+    /** Process message file INPUT using CONFIG, and return the sizes
+     *  of INPUT and of its output. */
+    private Sizes run(File input, LoadedConfig config) throws IOException {
+        if (config.error != null) {
+            throw config.error;
+        }
+        File output = outputFile(input);
+        InputStream in;
+        try {
+            in = new FileInputStream(input);
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+        try (in) {
+            OutputStream out;
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(output),
+                                               1 << 16);
+            } catch (IOException excp) {
+                throw error("could not open %s", output);
+            }
+            new Main(config.config, in, out).process();
+        }
+        return new Sizes(input.length(), output.length());
+    }
+
+    /** A configuration file, as read once for all the jobs using it. */
+    private static final class LoadedConfig {
+        /** The configuration read from FILE, or the error raised in
+         *  reading it. */
+        LoadedConfig(File file) {
+            MachineConfig read = null;
+            EnigmaException failure = null;
+            try {
+                read = MachineConfig.read(file.getPath());
+            } catch (EnigmaException excp) {
+                failure = excp;
+            }
+            config = read;
+            error = failure;
+        }
+
+        /** The configuration, or null if it could not be read. */
+        final MachineConfig config;
+        /** The error raised in reading the configuration, or null. */
+        final EnigmaException error;
+    }
+
+    /** The sizes of a message file and of its output. */
+    private static final class Sizes {
+        /** Sizes INPUT and OUTPUT, in bytes. */
+        Sizes(long input, long output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        /** Size of the message file. */
+        final long input;
+        /** Size of the output file. */
+        final long output;
+    }
+
+    /** Maximum number of files processed at once. */
+    private int _jobs = Runtime.getRuntime().availableProcessors();
+
+    /** Directory receiving output files. */
+    private File _outDir = new File(".");
+
+    /** Message files to process. */
+    private final List<File> _inputs = new ArrayList<>();
+
+    /** Configuration file for each of _inputs. */
+    private final List<File> _configs = new ArrayList<>();
+}
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Vikram Cherukuri
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message file. */
+    private static final String MESSAGE =
+        "* B Beta III IV I AXLE (TR)\nFROM HIS SHOULDER\nHIAWATHA\n"
+        + "* B Gamma V VI VII MZMZ (AK)\nTOOK THE CAMERA\n";
+
+    /** Write TEXT to the file NAME in DIR, making directories as needed,
+     *  and return the file. */
+    private static File write(File dir, String name, String text)
+        throws IOException {
+        File f = new File(dir, name);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return f;
+    }
+
+    /** Return the contents of the file NAME in DIR. */
+    private static String read(File dir, String name) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, name).toPath()),
+                          StandardCharsets.US_ASCII);
+    }
+
+    /** Return the output of Main for INPUT under the configuration
+     *  CONFIG. */
+    private static String expected(String config, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(new MachineConfig(new Scanner(config)),
+                 new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.US_ASCII)),
+                 out).process();
+        return out.toString();
+    }
+
+    /** Delete F and, if it is a directory, everything in it. */
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File g : files) {
+                delete(g);
+            }
+        }
+        f.delete();
+    }
+
+    /** Return the result of running Batch with ARGS. */
+    private static boolean batch(String... args) {
+        return new Batch(args).process();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDirectory() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File in = new File(dir, "in"), out = new File(dir, "out");
+            out.mkdir();
+            write(in, "default.conf", NAVAL_CONFIG);
+            write(in, "a.in", MESSAGE);
+            write(in, "b.in", "* B Beta I II III ZZZZ\nHELLO WORLD\n");
+            write(in, "c.txt", "NOT A MESSAGE");
+            assertTrue(batch("--jobs", "2", "--out", out.getPath(),
+                             in.getPath()));
+            assertEquals(expected(NAVAL_CONFIG, MESSAGE),
+                         read(out, "a.out"));
+            assertEquals(expected(NAVAL_CONFIG,
+                                  "* B Beta I II III ZZZZ\nHELLO WORLD\n"),
+                         read(out, "b.out"));
+            assertEquals(2, out.list().length);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testManifest() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File out = new File(dir, "out");
+            out.mkdir();
+            write(dir, "naval.conf", NAVAL_CONFIG);
+            write(dir, "m/default.conf", "NOT A CONFIGURATION\n");
+            write(dir, "m/x.in", MESSAGE);
+            write(dir, "m/y.in", MESSAGE);
+            write(dir, "m/y.conf", NAVAL_CONFIG);
+            write(dir, "z.in", MESSAGE);
+            File manifest = write(dir, "list",
+                                  "# A manifest\n\n  m/y.in\n"
+                                  + "z.in naval.conf\n"
+                                  + new File(dir, "m/x.in").getPath()
+                                  + "   naval.conf\n");
+            assertTrue(batch("--out", out.getPath(), manifest.getPath()));
+            for (String name : new String[] { "x.out", "y.out", "z.out" }) {
+                assertEquals(expected(NAVAL_CONFIG, MESSAGE),
+                             read(out, name));
+            }
+            write(dir, "bad", "z.in naval.conf extra\n");
+            try {
+                new Batch(new String[] { new File(dir, "bad").getPath() });
+                fail("bad manifest line accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testFailures() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File out = new File(dir, "out");
+            out.mkdir();
+            write(dir, "naval.conf", NAVAL_CONFIG);
+            write(dir, "good.in", MESSAGE);
+            write(dir, "bad.in", MESSAGE + "NOT IN THE ALPHABET: 42\n");
+            write(dir, "lost.in", MESSAGE);
+            write(dir, "other.in", MESSAGE);
+            File manifest = write(dir, "list",
+                                  "good.in naval.conf\nbad.in naval.conf\n"
+                                  + "lost.in missing.conf\n"
+                                  + "other.in naval.conf\n");
+            assertFalse(batch("--jobs", "3", "--out", out.getPath(),
+                              manifest.getPath()));
+            assertEquals(expected(NAVAL_CONFIG, MESSAGE),
+                         read(out, "good.out"));
+            assertEquals(expected(NAVAL_CONFIG, MESSAGE),
+                         read(out, "other.out"));
+            assertFalse(new File(out, "lost.out").exists());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCollision() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File out = new File(dir, "out");
+            out.mkdir();
+            write(dir, "default.conf", NAVAL_CONFIG);
+            write(dir, "a/x.in", MESSAGE);
+            write(dir, "b/x.in", MESSAGE);
+            File manifest = write(dir, "list",
+                                  "a/x.in default.conf\n"
+                                  + "b/x.in default.conf\n");
+            try {
+                batch("--out", out.getPath(), manifest.getPath());
+                fail("inputs with the same output file accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            assertEquals(0, out.list().length);
+        } finally {
+            delete(dir);
+        }
+    }
+}
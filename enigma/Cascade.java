@@ -0,0 +1,407 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Superencipherment: a message passed through several machines in
+ *  turn, each stage converting the output of the one before, in one
+ *  pass and without intermediate files.  The input is read as for Main,
+ *  but without settings lines, and the final output is written as by
+ *  Main, in groups of five, one line for each line of input.  The
+ *  stages work on blocks of alphabet indices, in which END_OF_LINE marks
+ *  the ends of lines.  Either one thread takes each block through every
+ *  stage, or, when pipelined, each stage has its own thread, as do
+ *  reading and writing, and blocks pass from one to the next through
+ *  SpscQueues and are then returned for reuse, so that the throughput
+ *  is that of the slowest stage rather than of all of them together.
+ *  @author Vikram Cherukuri
+ */
+public final class Cascade {
+
+    /** Number of indices in a block. */
+    static final int BLOCK_SIZE = 1 << 12;
+
+    /** Entry of a block marking the end of a line. */
+    static final int END_OF_LINE = -1;
+
+    /** Encipher messages through several machines, as specified by
+     *  ARGS, which has the form
+     *      [--pipeline] [--input FILE] [--output FILE]
+     *          CONFIG SETTINGS [CONFIG SETTINGS]...
+     *  Each CONFIG names a configuration file and the SETTINGS following
+     *  it is a settings line for that configuration, as for Main,
+     *  together describing a stage; all stages must have the same
+     *  alphabet.  The messages are read from FILE or the standard input
+     *  and converted by each stage in the order given, and the result
+     *  written to FILE or the standard output.  With --pipeline, each
+     *  stage runs on its own thread.  Exits normally if there are no
+     *  errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            boolean pipeline = false;
+            String input = null, output = null;
+            List<Machine> stages = new ArrayList<>();
+            for (int i = 0; i < args.length; i += 1) {
+                switch (args[i]) {
+                case "--pipeline":
+                    pipeline = true;
+                    break;
+                case "--input":
+                    input = optionValue(args, i);
+                    i += 1;
+                    break;
+                case "--output":
+                    output = optionValue(args, i);
+                    i += 1;
+                    break;
+                default:
+                    if (args[i].startsWith("--") || i + 1 >= args.length) {
+                        throw error("usage: java enigma.Cascade [--pipeline] "
+                                    + "[--input FILE] [--output FILE] "
+                                    + "CONFIG SETTINGS [CONFIG SETTINGS]...");
+                    }
+                    stages.add(stage(args[i], args[i + 1]));
+                    i += 1;
+                }
+            }
+            if (stages.isEmpty()) {
+                throw error("no stages");
+            }
+            Cascade cascade = new Cascade(stages);
+            try (InputStream in = input == null
+                     ? new FileInputStream(FileDescriptor.in)
+                     : new FileInputStream(input);
+                 OutputStream out = output == null
+                     ? new FileOutputStream(FileDescriptor.out)
+                     : new FileOutputStream(output)) {
+                cascade.run(new InputStreamReader(in, CHARSET),
+                            new OutputStreamWriter(out, CHARSET), pipeline);
+            } catch (IOException excp) {
+                throw error("could not process messages: %s",
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value following the option ARGS[K]. */
+    private static String optionValue(String[] args, int k) {
+        if (k + 1 >= args.length) {
+            throw error("missing value for %s", args[k]);
+        }
+        return args[k + 1];
+    }
+
+    /** Return a machine made from configuration file CONFIG and set up
+     *  according to the settings line SETTINGS. */
+    static Machine stage(String config, String settings) {
+        Machine m = MachineConfig.read(config).newMachine();
+        m.setCostModel(CostModel.RECORDED);
+        Main.setUp(m, settings);
+        return m;
+    }
+
+    /** A cascade of the machines STAGES, which are used in order and
+     *  must have the same alphabet. */
+    Cascade(List<Machine> stages) {
+        _stages = stages.toArray(new Machine[0]);
+        _alphabet = _stages[0].alphabet();
+        for (Machine m : _stages) {
+            Alphabet alpha = m.alphabet();
+            boolean same = alpha.size() == _alphabet.size();
+            for (int i = 0; same && i < alpha.size(); i += 1) {
+                same = alpha.toCodePoint(i) == _alphabet.toCodePoint(i);
+            }
+            if (!same) {
+                throw error("stages have different alphabets");
+            }
+        }
+    }
+
+    /** Convert all messages read from IN through each of my stages,
+     *  writing the results to OUT, which is flushed, on separate threads
+     *  for each stage iff PIPELINE. */
+    void run(Reader in, Writer out, boolean pipeline) throws IOException {
+        _in = in;
+        _out = new BufferedWriter(out, 1 << 16);
+        _chars = new char[1 << 13];
+        _pos = _end = 0;
+        _lineOpen = false;
+        _group = 0;
+        if (pipeline) {
+            runPipelined();
+        } else {
+            Block block = new Block();
+            do {
+                fill(block);
+                for (Machine m : _stages) {
+                    convert(m, block);
+                }
+                write(block);
+            } while (!block.last);
+        }
+        _out.flush();
+    }
+
+    /** Run each stage, and the writing of the output, on its own thread,
+     *  reading the input on this one. */
+    private void runPipelined() throws IOException {
+        int n = _stages.length;
+        int blocks = 2 * (n + 2);
+        List<SpscQueue<Block>> queues = new ArrayList<>(n + 2);
+        for (int i = 0; i < n + 2; i += 1) {
+            queues.add(new SpscQueue<>(blocks));
+        }
+        SpscQueue<Block> free = queues.get(n + 1);
+        for (int k = 0; k < blocks; k += 1) {
+            free.offer(new Block());
+        }
+        _failure = null;
+        Thread[] threads = new Thread[n + 1];
+        for (int i = 0; i <= n; i += 1) {
+            int stage = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    Block block;
+                    do {
+                        block = take(queues.get(stage));
+                        if (stage < n) {
+                            convert(_stages[stage], block);
+                        } else {
+                            write(block);
+                        }
+                        queues.get(stage + 1).offer(block);
+                    } while (!block.last);
+                } catch (IOException | RuntimeException excp) {
+                    fail(excp);
+                }
+            }, stage < n ? "enigma-stage-" + stage : "enigma-writer");
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try {
+            Block block;
+            do {
+                block = take(free);
+                fill(block);
+                queues.get(0).offer(block);
+            } while (!block.last);
+        } catch (IOException | RuntimeException excp) {
+            fail(excp);
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            boolean done = false;
+            while (!done) {
+                try {
+                    thread.join();
+                    done = true;
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (_failure instanceof IOException) {
+            throw (IOException) _failure;
+        } else if (_failure != null && _failure != STOPPED) {
+            throw (RuntimeException) _failure;
+        }
+    }
+
+    /** Record EXCP as the reason the pipeline stops, unless one has
+     *  already been recorded. */
+    private synchronized void fail(Exception excp) {
+        if (_failure == null || _failure == STOPPED) {
+            _failure = excp;
+        }
+    }
+
+    /** Return the next block from QUEUE, waiting for one if need be, or
+     *  throw STOPPED if the pipeline has failed. */
+    private Block take(SpscQueue<Block> queue) {
+        for (int k = 0; true; k += 1) {
+            Block block = queue.poll();
+            if (block != null) {
+                return block;
+            } else if (_failure != null) {
+                throw STOPPED;
+            } else if (k < SPINS) {
+                Thread.onSpinWait();
+            } else if (k < 2 * SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /** Fill BLOCK with the indices of the next characters of the input
+     *  and END_OF_LINE for the end of each line, marking it last at the
+     *  end of the input. */
+    private void fill(Block block) throws IOException {
+        int[] data = block.data;
+        int k = 0;
+        block.last = false;
+        while (k < data.length) {
+            if (_pos == _end) {
+                _end = _in.read(_chars);
+                _pos = 0;
+                if (_end < 0) {
+                    _end = 0;
+                    if (_lineOpen) {
+                        data[k] = END_OF_LINE;
+                        k += 1;
+                        _lineOpen = false;
+                    }
+                    block.last = true;
+                    break;
+                }
+            }
+            char ch = _chars[_pos];
+            _pos += 1;
+            if (ch == '\n') {
+                data[k] = END_OF_LINE;
+                k += 1;
+                _lineOpen = false;
+                continue;
+            }
+            _lineOpen = true;
+            int c = ch;
+            if (Character.isHighSurrogate(ch)) {
+                if (_pos == _end) {
+                    _end = _in.read(_chars);
+                    _pos = 0;
+                }
+                if (_pos < _end && Character.isLowSurrogate(_chars[_pos])) {
+                    c = Character.toCodePoint(ch, _chars[_pos]);
+                    _pos += 1;
+                }
+                if (_end < 0) {
+                    _end = 0;
+                }
+            } else if (ch == ' ' || ch == '\t' || ch == '\u000b'
+                       || ch == '\f' || ch == '\r') {
+                continue;
+            }
+            data[k] = _alphabet.toIndex(c);
+            k += 1;
+        }
+        block.length = k;
+    }
+
+    /** Convert the indices in BLOCK through M. */
+    private static void convert(Machine m, Block block) {
+        int[] data = block.data;
+        int start = 0;
+        for (int k = 0; k < block.length; k += 1) {
+            if (data[k] == END_OF_LINE) {
+                m.convert(data, start, k);
+                start = k + 1;
+            }
+        }
+        m.convert(data, start, block.length);
+    }
+
+    /** Write the characters whose indices are in BLOCK to _out, in
+     *  groups of five, with a line separator for each END_OF_LINE. */
+    private void write(Block block) throws IOException {
+        int[] data = block.data;
+        for (int k = 0; k < block.length; k += 1) {
+            if (data[k] == END_OF_LINE) {
+                _out.write(NEWLINE);
+                _group = 0;
+            } else {
+                if (_group == AsciiKernel.GROUP) {
+                    _out.write(' ');
+                    _group = 0;
+                }
+                int c = _alphabet.toCodePoint(data[k]);
+                if (Character.isBmpCodePoint(c)) {
+                    _out.write(c);
+                } else {
+                    _out.write(Character.highSurrogate(c));
+                    _out.write(Character.lowSurrogate(c));
+                }
+                _group += 1;
+            }
+        }
+    }
+
+    /** A block of indices passed from stage to stage. */
+    private static final class Block {
+        /** Indices of characters, and END_OF_LINE. */
+        final int[] data = new int[BLOCK_SIZE];
+        /** Number of entries of data in use. */
+        int length;
+        /** True iff this is the last block of the input. */
+        boolean last;
+    }
+
+    /** Character set of input and output. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Line separator of output. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Number of times a thread waiting for a block spins, and then
+     *  yields, before it parks. */
+    private static final int SPINS = 100;
+
+    /** Time for which a waiting thread parks, in nanoseconds. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** Thrown by take once another thread has failed. */
+    private static final RuntimeException STOPPED =
+        new RuntimeException("stopped", null, false, false) { };
+
+    /** My stages, in order. */
+    private final Machine[] _stages;
+
+    /** Alphabet of all stages. */
+    private final Alphabet _alphabet;
+
+    /** Source of input. */
+    private Reader _in;
+
+    /** Destination of output. */
+    private Writer _out;
+
+    /** Buffer of characters read from _in. */
+    private char[] _chars;
+
+    /** Position of the next character in _chars, and the end of those
+     *  read. */
+    private int _pos, _end;
+
+    /** True iff characters of the current input line have been read. */
+    private boolean _lineOpen;
+
+    /** Number of characters written in the current group of output. */
+    private int _group;
+
+    /** Exception that stopped the pipeline, or null. */
+    private volatile Exception _failure;
+}
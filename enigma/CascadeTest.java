@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Cascade and SpscQueue classes.
+ *  @author Vikram Cherukuri
+ */
+public class CascadeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the stages used in the tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (TR)",
+        "* C Gamma II V III QEZP (AK) (BL)",
+        "* B Beta I II V MMMM",
+    };
+
+    /** Return a cascade of the stages with settings lines SETTINGS. */
+    private static Cascade newCascade(String... settings) {
+        List<Machine> stages = new ArrayList<>();
+        for (String line : settings) {
+            stages.add(navalMachine(line));
+        }
+        return new Cascade(stages);
+    }
+
+    /** Return the result of converting INPUT with Main, once for each
+     *  of the settings lines SETTINGS, in turn. */
+    private static String reference(String input, String... settings) {
+        String text = input;
+        for (String line : settings) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] in = (line + "\n" + text)
+                .getBytes(StandardCharsets.US_ASCII);
+            new Main(new MachineConfig(new Scanner(NAVAL_CONFIG)),
+                     new ByteArrayInputStream(in), out).process();
+            text = out.toString();
+        }
+        return text;
+    }
+
+    /** Return the result of converting INPUT with CASCADE, pipelined iff
+     *  PIPELINE. */
+    private static String run(Cascade cascade, String input,
+                              boolean pipeline) throws IOException {
+        StringWriter out = new StringWriter();
+        cascade.run(new StringReader(input), out, pipeline);
+        return out.toString();
+    }
+
+    /** Return a random message of about N characters, in lines of random
+     *  lengths, some of them empty, using RANDOM. */
+    private static String randomInput(int n, Random random) {
+        StringBuilder result = new StringBuilder();
+        while (result.length() < n) {
+            int k = random.nextInt(100);
+            for (int i = 0; i < k; i += 1) {
+                result.append(random.nextInt(8) == 0 ? ' '
+                              : (char) ('A' + random.nextInt(26)));
+            }
+            result.append('\n');
+        }
+        result.append("LAST LINE");
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMain() throws IOException {
+        Random random = new Random(48);
+        for (int trial = 0; trial < 6; trial += 1) {
+            int stages = 1 + trial % SETTINGS.length;
+            String[] settings = new String[stages];
+            System.arraycopy(SETTINGS, 0, settings, 0, stages);
+            String input = randomInput(3 * Cascade.BLOCK_SIZE, random);
+            String expected = reference(input, settings);
+            assertEquals(expected,
+                         run(newCascade(settings), input, false));
+            assertEquals(expected,
+                         run(newCascade(settings), input, true));
+        }
+        assertEquals("", run(newCascade(SETTINGS), "", true));
+        assertEquals(reference("\n\nAB\n", SETTINGS),
+                     run(newCascade(SETTINGS), "\n\nAB\n", true));
+    }
+
+    @Test
+    public void testInterrupt() throws IOException {
+        String input = randomInput(5 * Cascade.BLOCK_SIZE, new Random(50));
+        String expected = reference(input, SETTINGS);
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(expected, run(newCascade(SETTINGS), input, true));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        List<Machine> stages = new ArrayList<>();
+        stages.add(navalMachine());
+        Machine other = new MachineConfig(new Scanner(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ0\n 2 1\n"
+            + " I MA (ABC)\n R R (AB) (C0)\n")).newMachine();
+        stages.add(other);
+        try {
+            new Cascade(stages);
+            fail("stages with different alphabets accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        for (boolean pipeline : new boolean[] { false, true }) {
+            String input = randomInput(5 * Cascade.BLOCK_SIZE,
+                                       new Random(49)) + "\nHI THERE?\n";
+            try {
+                run(newCascade(SETTINGS), input, pipeline);
+                fail("character not in alphabet accepted");
+            } catch (EnigmaException | IOException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testQueue() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<>(5);
+        assertEquals(8, queue.capacity());
+        assertNull(queue.poll());
+        final int n = 100000;
+        int[] received = new int[n];
+        Thread consumer = new Thread(() -> {
+            for (int k = 0; k < n; ) {
+                Integer x = queue.poll();
+                if (x != null) {
+                    received[k] = x;
+                    k += 1;
+                } else {
+                    Thread.yield();
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < n; ) {
+            if (queue.offer(i)) {
+                i += 1;
+            } else {
+                Thread.yield();
+            }
+        }
+        consumer.join();
+        for (int k = 0; k < n; k += 1) {
+            assertEquals(k, received[k]);
+        }
+        assertNull(queue.poll());
+    }
+}
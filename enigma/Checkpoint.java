@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A record of how far a run of Main has progressed, from which the run
+ *  can be resumed: the byte offsets in the input and output files of
+ *  the first unprocessed line and its output, the settings line of the
+ *  current section, the current positions of the machine's rotors, and
+ *  the ring settings of all available rotors.  The rings are recorded
+ *  separately because they carry over from earlier sections whose
+ *  settings lines give them.  Rotors not yet made by the machine's
+ *  RotorLibrary have ring 0.
+ *  @author Vikram Cherukuri
+ */
+class Checkpoint {
+
+    /** A checkpoint at INPUTOFFSET and OUTPUTOFFSET of a section
+     *  configured by SETTINGS, with the rotors of M at their current
+     *  positions and rings. */
+    Checkpoint(long inputOffset, long outputOffset, String settings,
+               Machine M) {
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _settings = settings;
+        _positions = new int[M.numRotors()];
+        for (int i = 0; i < _positions.length; i += 1) {
+            _positions[i] = M.rotors()[i].setting();
+        }
+        RotorLibrary library = M.library();
+        _rings = new int[library.size()];
+        for (int k = 0; k < _rings.length; k += 1) {
+            Rotor r = library.made(k);
+            _rings[k] = r == null ? 0 : r.ring();
+        }
+    }
+
+    /** A checkpoint with the given INPUTOFFSET, OUTPUTOFFSET, SETTINGS,
+     *  and rotor POSITIONS and RINGS. */
+    private Checkpoint(long inputOffset, long outputOffset, String settings,
+                       int[] positions, int[] rings) {
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _settings = settings;
+        _positions = positions;
+        _rings = rings;
+    }
+
+    /** Return the checkpoint stored in FILE, or null if there is no such
+     *  file. */
+    static Checkpoint read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (Scanner in = new Scanner(file)) {
+            long inputOffset = in.nextLong();
+            long outputOffset = in.nextLong();
+            int[] positions = new int[in.nextInt()];
+            for (int i = 0; i < positions.length; i += 1) {
+                positions[i] = in.nextInt();
+            }
+            int[] rings = new int[in.nextInt()];
+            for (int i = 0; i < rings.length; i += 1) {
+                rings[i] = in.nextInt();
+            }
+            in.nextLine();
+            String settings = in.nextLine();
+            return new Checkpoint(inputOffset, outputOffset, settings,
+                                  positions, rings);
+        } catch (IOException | NoSuchElementException excp) {
+            throw error("bad checkpoint file %s", file);
+        }
+    }
+
+    /** Store me in FILE, replacing its previous contents atomically. */
+    void write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (PrintWriter out = new PrintWriter(temp)) {
+                out.printf("%d %d %d", _inputOffset, _outputOffset,
+                           _positions.length);
+                for (int p : _positions) {
+                    out.printf(" %d", p);
+                }
+                out.printf(" %d", _rings.length);
+                for (int r : _rings) {
+                    out.printf(" %d", r);
+                }
+                out.println();
+                out.println(_settings);
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Set the rotors of M, which must already be set up according to
+     *  settings(), to my recorded positions and rings. */
+    void restore(Machine M) {
+        RotorLibrary library = M.library();
+        if (_positions.length != M.numRotors()
+            || _rings.length != library.size()) {
+            throw error("checkpoint does not match machine");
+        }
+        for (int k = 0; k < _rings.length; k += 1) {
+            if (_rings[k] != 0 || library.made(k) != null) {
+                library.get(k).setRing(_rings[k]);
+            }
+        }
+        for (int i = 0; i < _positions.length; i += 1) {
+            M.rotors()[i].set(_positions[i]);
+        }
+    }
+
+    /** Return the input offset of the first unprocessed line. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the output offset at which to resume writing. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return the settings line of the current section. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Byte offset in the input of the first unprocessed line. */
+    private final long _inputOffset;
+
+    /** Byte offset in the output corresponding to _inputOffset. */
+    private final long _outputOffset;
+
+    /** Settings line of the section containing _inputOffset. */
+    private final String _settings;
+
+    /** Positions of the machine's rotors, starting with the
+     *  reflector. */
+    private final int[] _positions;
+
+    /** Ring settings of all available rotors, in the order of the
+     *  machine's RotorLibrary. */
+    private final int[] _rings;
+}
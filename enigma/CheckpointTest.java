@@ -0,0 +1,185 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class and for
+ *  checkpointing and resuming in Main.
+ *  @author Vikram Cherukuri
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the sections of generated input.  Rotors I, III,
+     *  and IV keep the rings given in the first section in the third. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE BCDE (TR)",
+        "* C Gamma V VI VII MZMZ (AK) (BL)",
+        "* B Beta I IV III QQQQ (HQ)",
+    };
+
+    /** Return input with a section for each of SETTINGS, each of LINES
+     *  random lines, using RANDOM. */
+    private static String input(int lines, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (String settings : SETTINGS) {
+            result.append(settings).append('\n');
+            for (int i = 0; i < lines; i += 1) {
+                int n = random.nextInt(60);
+                for (int j = 0; j < n; j += 1) {
+                    result.append(random.nextInt(6) == 0 ? ' '
+                                  : (char) ('A' + random.nextInt(26)));
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Write TEXT to FILE. */
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Run Main with ARGS. */
+    private static void main(String... args) {
+        new Main(args).process();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testResume() throws IOException {
+        File config = File.createTempFile("ckpt", ".conf");
+        File in = File.createTempFile("ckpt", ".in");
+        File out = File.createTempFile("ckpt", ".out");
+        File expected = File.createTempFile("ckpt", ".out");
+        File ckpt = new File(out.getPath() + ".ckpt");
+        try {
+            write(config, NAVAL_CONFIG);
+            String good = input(40, new Random(27));
+            write(in, good);
+            main(config.getPath(), in.getPath(), expected.getPath());
+
+            int bad = good.lastIndexOf('\n', good.length() - 2) + 1;
+            write(in, good.substring(0, bad) + "?"
+                  + good.substring(bad + 1));
+            try {
+                main("--checkpoint", ckpt.getPath(),
+                     "--checkpoint-interval", "200",
+                     config.getPath(), in.getPath(), out.getPath());
+                fail("character not in alphabet accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            Checkpoint last = Checkpoint.read(ckpt);
+            assertNotNull(last);
+            assertEquals(SETTINGS[2], last.settings());
+            assertTrue(last.inputOffset() > good.indexOf(SETTINGS[2]));
+            assertTrue(last.inputOffset() <= bad);
+
+            write(in, good);
+            main("--checkpoint", ckpt.getPath(), "--resume",
+                 "--checkpoint-interval", "200",
+                 config.getPath(), in.getPath(), out.getPath());
+            assertArrayEquals(Files.readAllBytes(expected.toPath()),
+                              Files.readAllBytes(out.toPath()));
+            assertFalse(ckpt.exists());
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+            expected.delete();
+            ckpt.delete();
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        File file = File.createTempFile("ckpt", ".ckpt");
+        try {
+            String[] bad = {
+                "", "12 34 x\n* B Beta III IV I AXLE\n",
+                "12 34 5 0 1 2 3\n",
+                "12 34 2 0 1 1 0\n",
+            };
+            for (String text : bad) {
+                write(file, text);
+                try {
+                    Checkpoint.read(file);
+                    fail(msg("testRead", "accepted \"%s\"", text));
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+            write(file, "12 34 2 0 1 1 5\n* B I AB\n");
+            Checkpoint c = Checkpoint.read(file);
+            assertEquals(12, c.inputOffset());
+            assertEquals(34, c.outputOffset());
+            assertEquals("* B I AB", c.settings());
+            file.delete();
+            assertNull(Checkpoint.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRestore() throws IOException {
+        Machine m = navalMachine(SETTINGS[0]);
+        m.convert("FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD");
+        String settings = "* B Beta IV III I AXLE (TR)";
+        Main.setUp(m, settings);
+        m.convert("MADEOFSLIDINGFOLDINGROSEWOOD");
+        File file = File.createTempFile("ckpt", ".ckpt");
+        try {
+            new Checkpoint(12, 34, settings, m).write(file);
+            Checkpoint c = Checkpoint.read(file);
+            assertEquals(settings, c.settings());
+
+            Machine restored = navalMachine(settings);
+            c.restore(restored);
+            for (int i = 0; i < m.numRotors(); i += 1) {
+                assertEquals(m.rotors()[i].name(),
+                             restored.rotors()[i].name());
+                assertEquals(m.rotors()[i].setting(),
+                             restored.rotors()[i].setting());
+                assertEquals(m.rotors()[i].ring(),
+                             restored.rotors()[i].ring());
+            }
+            assertEquals(m.convert("NEATLYPUTITALLTOGETHER"),
+                         restored.convert("NEATLYPUTITALLTOGETHER"));
+            Main.setUp(restored, SETTINGS[2]);
+            Main.setUp(m, SETTINGS[2]);
+            assertEquals(m.convert("INITSCASEITLAYCOMPACTLY"),
+                         restored.convert("INITSCASEITLAYCOMPACTLY"));
+
+            Machine other = new MachineConfig(new Scanner(
+                NAVAL_CONFIG.replace(" 5 3", " 4 2"))).newMachine();
+            try {
+                c.restore(other);
+                fail("checkpoint restored to a different machine");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
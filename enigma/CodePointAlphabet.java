@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An alphabet whose characters are Unicode code points, for alphabets
+ *  with characters outside the Basic Multilingual Plane, which do not fit
+ *  in a char.  Such characters cannot be handled as chars, so toChar()
+ *  and getChars() fail for them; use toCodePoint() and indexOf().
+ *  @author Vikram Cherukuri
+ */
+class CodePointAlphabet extends Alphabet {
+
+    /** A new alphabet containing the code points of CHARS.  Code point
+     *  #k has index K (numbering from 0). */
+    CodePointAlphabet(String chars) {
+        super("");
+        _codePoints = chars.codePoints().toArray();
+        int n = _codePoints.length;
+        long[] keyed = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            keyed[i] = (long) _codePoints[i] << 32 | (n - 1 - i);
+        }
+        Arrays.sort(keyed);
+        int k = 0;
+        _sorted = new int[n];
+        _indices = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int c = (int) (keyed[i] >> 32);
+            if (k > 0 && _sorted[k - 1] == c) {
+                continue;
+            }
+            _sorted[k] = c;
+            _indices[k] = n - 1 - (int) keyed[i];
+            k += 1;
+        }
+        _sorted = Arrays.copyOf(_sorted, k);
+    }
+
+    @Override
+    int size() {
+        return _codePoints.length;
+    }
+
+    @Override
+    char[] getChars() {
+        throw error("alphabet has characters that are not chars");
+    }
+
+    @Override
+    char toChar(int index) {
+        int c = toCodePoint(index);
+        if (!Character.isBmpCodePoint(c)) {
+            throw error("character %d is not a char", index);
+        }
+        return (char) c;
+    }
+
+    @Override
+    int toCodePoint(int index) {
+        if (index > size() - 1) {
+            throw new EnigmaException("Index out of range");
+        }
+        return _codePoints[index];
+    }
+
+    @Override
+    int indexOf(int c) {
+        int k = Arrays.binarySearch(_sorted, c);
+        return k < 0 ? -1 : _indices[k];
+    }
+
+    /** My characters, in order. */
+    private final int[] _codePoints;
+
+    /** My distinct characters, in increasing order. */
+    private int[] _sorted;
+
+    /** The index of each character of _sorted: its last occurrence. */
+    private final int[] _indices;
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+/** A fixed-length table of non-negative ints, all less than a bound
+ *  given when it is made, stored in the narrowest array that holds them:
+ *  a byte[] for bounds up to 256, a char[] (16 unsigned bits) up to
+ *  65536, and otherwise an int[].  Precomputed permutation and rotor
+ *  tables, which have an entry per symbol (or per symbol and position),
+ *  thus take 1 or 2 bytes per entry for most alphabets, rather than 4.
+ *  All tables of one alphabet have the same representation, so calls of
+ *  get() in a given machine see only one subclass and can be inlined.
+ *  @author Vikram Cherukuri
+ */
+abstract class CompactTable {
+
+    /** Return a table of LENGTH zeros, whose entries will all be less
+     *  than BOUND. */
+    static CompactTable of(int length, int bound) {
+        switch (width(bound)) {
+        case 1:
+            return new Bytes(length);
+        case 2:
+            return new Chars(length);
+        default:
+            return new Ints(length);
+        }
+    }
+
+    /** Return the number of bytes per entry of a table whose entries are
+     *  all less than BOUND. */
+    static int width(int bound) {
+        if (bound <= 1 << 8) {
+            return 1;
+        } else if (bound <= 1 << 16) {
+            return 2;
+        } else {
+            return 4;
+        }
+    }
+
+    /** Return a table holding VALUES, which are all less than BOUND. */
+    static CompactTable of(int[] values, int bound) {
+        CompactTable result = of(values.length, bound);
+        for (int i = 0; i < values.length; i += 1) {
+            result.set(i, values[i]);
+        }
+        return result;
+    }
+
+    /** Return entry I. */
+    abstract int get(int i);
+
+    /** Set entry I to V. */
+    abstract void set(int i, int v);
+
+    /** Return my number of entries. */
+    abstract int length();
+
+    /** Return the number of bytes in each of my entries. */
+    abstract int width();
+
+    /** A table of bytes. */
+    private static final class Bytes extends CompactTable {
+        /** A table of LENGTH zeros. */
+        Bytes(int length) {
+            _a = new byte[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _a[i] & 0xff;
+        }
+
+        @Override
+        void set(int i, int v) {
+            _a[i] = (byte) v;
+        }
+
+        @Override
+        int length() {
+            return _a.length;
+        }
+
+        @Override
+        int width() {
+            return 1;
+        }
+
+        /** My entries. */
+        private final byte[] _a;
+    }
+
+    /** A table of 16-bit entries. */
+    private static final class Chars extends CompactTable {
+        /** A table of LENGTH zeros. */
+        Chars(int length) {
+            _a = new char[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _a[i];
+        }
+
+        @Override
+        void set(int i, int v) {
+            _a[i] = (char) v;
+        }
+
+        @Override
+        int length() {
+            return _a.length;
+        }
+
+        @Override
+        int width() {
+            return 2;
+        }
+
+        /** My entries. */
+        private final char[] _a;
+    }
+
+    /** A table of ints. */
+    private static final class Ints extends CompactTable {
+        /** A table of LENGTH zeros. */
+        Ints(int length) {
+            _a = new int[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _a[i];
+        }
+
+        @Override
+        void set(int i, int v) {
+            _a[i] = v;
+        }
+
+        @Override
+        int length() {
+            return _a.length;
+        }
+
+        @Override
+        int width() {
+            return 4;
+        }
+
+        /** My entries. */
+        private final int[] _a;
+    }
+}
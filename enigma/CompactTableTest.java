@@ -0,0 +1,174 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CompactTable class, and for
+ *  alphabets too large or too wide for single-byte tables.
+ *  @author Vikram Cherukuri
+ */
+public class CompactTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a string of the N code points starting at FIRST. */
+    private static String codePoints(int first, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.appendCodePoint(first + i);
+        }
+        return result.toString();
+    }
+
+    /** Return the code points of CHARS in random order, using RANDOM, as
+     *  a list of one-character strings. */
+    private static List<String> shuffled(String chars, Random random) {
+        List<String> result = new ArrayList<>();
+        chars.codePoints().forEach(c -> result.add(Character.toString(c)));
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    /** Return a random single cycle of all the characters of CHARS. */
+    private static String cycle(String chars, Random random) {
+        return "(" + String.join("", shuffled(chars, random)) + ")";
+    }
+
+    /** Return a random involution without fixed points on the characters
+     *  of CHARS, which has an even number of them. */
+    private static String pairs(String chars, Random random) {
+        List<String> c = shuffled(chars, random);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < c.size(); i += 2) {
+            result.add("(" + c.get(i) + c.get(i + 1) + ")");
+        }
+        return String.join(" ", result);
+    }
+
+    /** Return a machine with three moving rotors whose alphabet is
+     *  CHARS, with random wirings from SEED. */
+    private static Machine newMachine(String chars, long seed) {
+        Random random = new Random(seed);
+        Alphabet alpha = Alphabet.of(chars);
+        int[] c = chars.codePoints().toArray();
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(pairs(chars, random),
+                                                      alpha)));
+        rotors.add(new FixedRotor("F", new Permutation(cycle(chars, random),
+                                                       alpha)));
+        for (int i = 0; i < 3; i += 1) {
+            String notch = Character.toString(c[random.nextInt(c.length)]);
+            rotors.add(new MovingRotor("M" + i,
+                                       new Permutation(cycle(chars, random),
+                                                       alpha),
+                                       notch));
+        }
+        Machine m = new Machine(alpha, 5, 3, rotors);
+        m.insertRotors(new String[] { "R", "F", "M0", "M1", "M2" });
+        m.setPlugboard(new Permutation(
+            "(" + Character.toString(c[0]) + Character.toString(c[1]) + ")",
+            alpha));
+        return m;
+    }
+
+    /** Return a random message of LENGTH characters of CHARS. */
+    private static String message(String chars, int length, long seed) {
+        Random random = new Random(seed);
+        int[] c = chars.codePoints().toArray();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.appendCodePoint(c[random.nextInt(c.length)]);
+        }
+        return result.toString();
+    }
+
+    /** Check that a machine of alphabet CHARS deciphers what it enciphers,
+     *  and that its compiled form agrees with its interpreted form. */
+    private static void checkMachine(String chars) {
+        String setting = message(chars, 4, 1);
+        String plain = message(chars, 500, 2);
+
+        Machine m = newMachine(chars, 3);
+        m.setRotors(setting);
+        String cipher = m.convert(plain);
+        assertEquals(plain.length(), cipher.length());
+
+        Machine d = newMachine(chars, 3);
+        d.setRotors(setting);
+        assertEquals(plain, d.convert(cipher));
+
+        Machine s = newMachine(chars, 3);
+        s.setSpecialized(true);
+        s.setRotors(setting);
+        assertEquals(cipher, s.convert(plain));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testWidths() {
+        assertEquals(1, CompactTable.of(5, 256).width());
+        assertEquals(2, CompactTable.of(5, 257).width());
+        assertEquals(2, CompactTable.of(5, 1 << 16).width());
+        assertEquals(4, CompactTable.of(5, (1 << 16) + 1).width());
+        for (int bound : new int[] { 256, 1 << 16, 1 << 20 }) {
+            int[] values = { 0, 1, bound / 2, bound - 2, bound - 1 };
+            CompactTable t = CompactTable.of(values, bound);
+            assertEquals(values.length, t.length());
+            for (int i = 0; i < values.length; i += 1) {
+                assertEquals(values[i], t.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCodePointAlphabet() {
+        String chars = codePoints(0x1D400, 26);
+        Alphabet alpha = Alphabet.of(chars);
+        assertTrue(alpha instanceof CodePointAlphabet);
+        assertFalse(Alphabet.of("ABC") instanceof CodePointAlphabet);
+        assertEquals(26, alpha.size());
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(0x1D400 + i, alpha.toCodePoint(i));
+            assertEquals(i, alpha.indexOf(0x1D400 + i));
+        }
+        assertEquals(-1, alpha.indexOf('A'));
+        assertFalse(alpha.contains('A'));
+        try {
+            alpha.toChar(0);
+            fail("supplementary character returned as char");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+
+        String a = codePoints(0x1D400, 1), b = codePoints(0x1D401, 1),
+            c = codePoints(0x1D402, 1);
+        Permutation p = new Permutation("(" + a + b + c + ")", alpha);
+        assertEquals(1, p.permute(0));
+        assertEquals(2, p.permute(1));
+        assertEquals(0, p.permute(2));
+        assertEquals(2, p.invert(0));
+        assertEquals(3, p.permute(3));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        checkMachine(codePoints(0x4E00, 600));
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        checkMachine(codePoints(0x1D400, 52));
+    }
+}
@@ -0,0 +1,610 @@
+package enigma;
+
+import java.io.File;
+
+import java.nio.IntBuffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/** A converter specialized to one configuration of a Machine: its rotor
+ *  order, ring settings, fixed-rotor positions, and plugboard.  All
+ *  substitutions are precomputed into tables.  Each moving rotor has one
+ *  table per position for each direction.  The plugboard is folded into
+ *  the tables of the rightmost rotor, and the reflector and all
+ *  non-moving rotors into a single table.  A conversion is therefore a
+ *  short straight-line sequence of array lookups.  Stepping is written
+ *  out separately for each common number of moving rotors.  The tables
+ *  for a configuration are built once and cached, on the heap or, for
+ *  large machines, outside it (see OffHeapTables).
+ *  @author Vikram Cherukuri
+ */
+abstract class CompiledMachine {
+
+    /** Largest alphabet for which machines are compiled.  Each moving
+     *  rotor has 2 * MAX_SIZE * MAX_SIZE table entries, of 2 bytes at
+     *  this size (see CompactTable). */
+    static final int MAX_SIZE = 1024;
+
+    /** Most bytes of tables kept in each of the caches of tables: a
+     *  quarter of the maximum heap.  A single machine at MAX_SIZE with
+     *  three moving rotors needs about 12 MB of heap, or twice that off
+     *  the heap. */
+    static final long CACHE_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    /** Return a CompiledMachine equivalent to the machine with alphabet
+     *  ALPHA, rotors ROTORS in their current positions, and PLUGBOARD,
+     *  or null if that machine cannot be compiled.  Its tables are on
+     *  the heap unless OFFHEAP, in which case they are in memory-mapped
+     *  files in directory DIR, or in direct buffers if DIR is null. */
+    static CompiledMachine compile(Alphabet alpha, Rotor[] rotors,
+                                   Permutation plugboard, boolean offHeap,
+                                   File dir) {
+        int first = firstMoving(alpha, rotors, plugboard);
+        if (first < 0) {
+            return null;
+        }
+        int[] plug = table(plugboard, false);
+        String key = key(alpha, rotors, first, plug);
+        int[] q = new int[rotors.length - first];
+        for (int j = 0; j < q.length; j += 1) {
+            q[j] = rotors[first + j].setting();
+        }
+
+        if (offHeap) {
+            String where = dir == null ? "" : dir.getAbsolutePath();
+            OffHeapTables tables = OFF_HEAP_CACHE.get(where + "\n" + key);
+            if (tables == null) {
+                int n = alpha.size();
+                tables = dir == null
+                    ? OffHeapTables.allocate(key,
+                                             build(n, rotors, first, plug))
+                    : OffHeapTables.map(dir, key,
+                                        () -> build(n, rotors, first, plug));
+                OFF_HEAP_CACHE.put(where + "\n" + key, tables);
+            }
+            return new OffHeap(tables, q);
+        }
+
+        Plan plan = CACHE.get(key);
+        if (plan == null) {
+            plan = build(alpha.size(), rotors, first, plug);
+            CACHE.put(key, plan);
+        }
+        switch (plan.moving) {
+        case 0:
+            return new Fixed(plan);
+        case 1:
+            return new OnePawl(plan, q);
+        case 2:
+            return new TwoPawls(plan, q);
+        case 3:
+            return new ThreePawls(plan, q);
+        default:
+            return new ManyPawls(plan, q);
+        }
+    }
+
+    /** Return the number of moving rotors of the CompiledMachine that
+     *  compile would make for ALPHA, ROTORS, and PLUGBOARD, or -1 if that
+     *  machine cannot be compiled. */
+    static int moving(Alphabet alpha, Rotor[] rotors, Permutation plugboard) {
+        int first = firstMoving(alpha, rotors, plugboard);
+        return first < 0 ? -1 : rotors.length - first;
+    }
+
+    /** Return true iff the tables that compile would use for the machine
+     *  with alphabet ALPHA, ROTORS, and PLUGBOARD, which can be compiled,
+     *  already exist: in memory, or in a table file in DIR if OFFHEAP and
+     *  DIR is not null. */
+    static boolean cached(Alphabet alpha, Rotor[] rotors,
+                          Permutation plugboard, boolean offHeap, File dir) {
+        int first = firstMoving(alpha, rotors, plugboard);
+        String key = key(alpha, rotors, first, table(plugboard, false));
+        if (!offHeap) {
+            return CACHE.containsKey(key);
+        }
+        String where = dir == null ? "" : dir.getAbsolutePath();
+        return OFF_HEAP_CACHE.containsKey(where + "\n" + key)
+            || dir != null
+               && new File(dir, OffHeapTables.fileName(key)).isFile();
+    }
+
+    /** Return the number of bytes of heap taken by the tables of a
+     *  compiled machine with alphabet size N and MOVING moving rotors. */
+    static long tableBytes(int n, int moving) {
+        long entries = 2L * moving * n * n + n;
+        return entries * CompactTable.width(n) + (long) moving * n;
+    }
+
+    /** A compiled machine with alphabet size N. */
+    CompiledMachine(int n) {
+        _n = n;
+    }
+
+    /** Returns the result of converting C, after first advancing me. */
+    abstract int convert(int c);
+
+    /** Return the positions of my moving rotors, leftmost first. */
+    abstract int[] positions();
+
+    /** Set the rightmost rotors of ROTORS to the positions of my moving
+     *  rotors. */
+    final void store(Rotor[] rotors) {
+        int[] q = positions();
+        for (int j = 0; j < q.length; j += 1) {
+            rotors[rotors.length - q.length + j].set(q[j]);
+        }
+    }
+
+    /** Return P advanced by one position. */
+    final int inc(int p) {
+        p += 1;
+        return p == _n ? 0 : p;
+    }
+
+    /** Size of my alphabet. */
+    protected final int _n;
+
+    /** The precomputed tables for one machine configuration. */
+    static final class Plan {
+        /** Alphabet size. */
+        int size;
+        /** Number of moving rotors. */
+        int moving;
+        /** Forward tables of the moving rotors, leftmost first: entry
+         *  p * size + x is the image of x at position p. */
+        CompactTable[] forward;
+        /** Backward tables of the moving rotors, as for forward. */
+        CompactTable[] backward;
+        /** Notch flags of the moving rotors, indexed by position. */
+        boolean[][] notches;
+        /** Combined mapping of the non-moving rotors and reflector. */
+        CompactTable inner;
+    }
+
+    /** Return the slot of the leftmost moving rotor of the machine
+     *  described by ALPHA, ROTORS, and PLUGBOARD, or -1 if it cannot be
+     *  compiled. */
+    private static int firstMoving(Alphabet alpha, Rotor[] rotors,
+                                   Permutation plugboard) {
+        if (alpha.size() > MAX_SIZE || plugboard == null) {
+            return -1;
+        }
+        for (Rotor r : rotors) {
+            if (r == null) {
+                return -1;
+            }
+        }
+        int first = rotors.length;
+        while (first > 1 && rotors[first - 1] instanceof MovingRotor) {
+            first -= 1;
+        }
+        for (int i = 1; i < first; i += 1) {
+            if (rotors[i].rotates()) {
+                return -1;
+            }
+        }
+        return first;
+    }
+
+    /** Return a description of everything that determines the tables for
+     *  a machine with alphabet ALPHA and ROTORS, whose moving rotors
+     *  start at slot FIRST, and plugboard mapping PLUG.  Equal
+     *  descriptions give equal tables, in any process. */
+    private static String key(Alphabet alpha, Rotor[] rotors, int first,
+                              int[] plug) {
+        int n = alpha.size();
+        StringBuilder key = new StringBuilder();
+        key.append((char) n);
+        for (int x = 0; x < n; x += 1) {
+            key.appendCodePoint(alpha.toCodePoint(x));
+        }
+        key.append((char) rotors.length).append((char) first);
+        for (int i = 0; i < rotors.length; i += 1) {
+            Rotor r = rotors[i];
+            for (int x : table(r.permutation(), false)) {
+                key.append((char) x);
+            }
+            if (i < first) {
+                key.append((char) wrap(r.setting() - r.ring(), n));
+            } else {
+                key.append((char) r.ring());
+                for (int p = 0; p < n; p += 1) {
+                    key.append(r.atNotch(p) ? '1' : '0');
+                }
+            }
+        }
+        for (int x : plug) {
+            key.append((char) x);
+        }
+        return key.toString();
+    }
+
+    /** Return new tables for a machine of alphabet size N with ROTORS,
+     *  whose moving rotors start at slot FIRST, and plugboard mapping
+     *  PLUG. */
+    private static Plan build(int n, Rotor[] rotors, int first, int[] plug) {
+        Plan plan = new Plan();
+        plan.size = n;
+        plan.moving = rotors.length - first;
+        plan.forward = new CompactTable[plan.moving];
+        plan.backward = new CompactTable[plan.moving];
+        plan.notches = new boolean[plan.moving][];
+
+        int[] identity = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            identity[x] = x;
+        }
+        for (int j = 0; j < plan.moving; j += 1) {
+            Rotor r = rotors[first + j];
+            int[] fwd = table(r.permutation(), false);
+            int[] bwd = table(r.permutation(), true);
+            int[] in = j == plan.moving - 1 ? plug : identity;
+            CompactTable f = plan.forward[j] = CompactTable.of(n * n, n);
+            CompactTable b = plan.backward[j] = CompactTable.of(n * n, n);
+            plan.notches[j] = new boolean[n];
+            for (int p = 0; p < n; p += 1) {
+                int k = wrap(p - r.ring(), n);
+                for (int x = 0; x < n; x += 1) {
+                    f.set(p * n + x, wrap(fwd[(in[x] + k) % n] - k, n));
+                    b.set(p * n + x, in[wrap(bwd[(x + k) % n] - k, n)]);
+                }
+                plan.notches[j][p] = r.atNotch(p);
+            }
+        }
+
+        int[] inner = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            int y = plan.moving == 0 ? plug[x] : x;
+            for (int i = first - 1; i >= 0; i -= 1) {
+                y = rotors[i].convertForward(y);
+            }
+            for (int i = 1; i < first; i += 1) {
+                y = rotors[i].convertBackward(y);
+            }
+            inner[x] = plan.moving == 0 ? plug[y] : y;
+        }
+        plan.inner = CompactTable.of(inner, n);
+        return plan;
+    }
+
+    /** Return the mapping of PERM (or of its inverse if INVERSE) as an
+     *  array. */
+    private static int[] table(Permutation perm, boolean inverse) {
+        int[] result = new int[perm.size()];
+        for (int x = 0; x < result.length; x += 1) {
+            result[x] = inverse ? perm.invert(x) : perm.permute(x);
+        }
+        return result;
+    }
+
+    /** Return P modulo N. */
+    private static int wrap(int p, int n) {
+        int r = p % n;
+        return r < 0 ? r + n : r;
+    }
+
+    /** Cache of tables, by configuration. */
+    private static final TableCache<Plan> CACHE =
+        new TableCache<>(CACHE_BYTES, p -> tableBytes(p.size, p.moving));
+
+    /** Cache of off-heap tables, by location and configuration. */
+    private static final TableCache<OffHeapTables> OFF_HEAP_CACHE =
+        new TableCache<>(CACHE_BYTES, OffHeapTables::bytes);
+
+    /** A synchronized cache of tables by key, holding the most recently
+     *  used whose sizes in bytes total at most a budget. */
+    static final class TableCache<V> {
+        /** A cache of at most BUDGET bytes of tables, whose sizes are
+         *  given by SIZE. */
+        TableCache(long budget, ToLongFunction<V> size) {
+            _budget = budget;
+            _size = size;
+        }
+
+        /** Return the tables under KEY, or null if there are none. */
+        synchronized V get(String key) {
+            return _entries.get(key);
+        }
+
+        /** Return true iff there are tables under KEY. */
+        synchronized boolean containsKey(String key) {
+            return _entries.containsKey(key);
+        }
+
+        /** Keep TABLES under KEY, evicting the least recently used tables
+         *  to make room, unless TABLES alone exceed my budget. */
+        synchronized void put(String key, V tables) {
+            long bytes = _size.applyAsLong(tables);
+            if (bytes > _budget) {
+                return;
+            }
+            V old = _entries.remove(key);
+            if (old != null) {
+                _bytes -= _size.applyAsLong(old);
+            }
+            Iterator<V> eldest = _entries.values().iterator();
+            while (_bytes + bytes > _budget) {
+                _bytes -= _size.applyAsLong(eldest.next());
+                eldest.remove();
+            }
+            _entries.put(key, tables);
+            _bytes += bytes;
+        }
+
+        /** Return the number of bytes of tables I hold. */
+        synchronized long bytes() {
+            return _bytes;
+        }
+
+        /** Most bytes of tables I may hold. */
+        private final long _budget;
+        /** Size in bytes of each of my values. */
+        private final ToLongFunction<V> _size;
+        /** My tables, least recently used first. */
+        private final LinkedHashMap<String, V> _entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+        /** Total size of _entries. */
+        private long _bytes;
+    }
+
+    /** A compiled machine with no moving rotors. */
+    private static final class Fixed extends CompiledMachine {
+        /** A machine using PLAN. */
+        Fixed(Plan plan) {
+            super(plan.size);
+            _map = plan.inner;
+        }
+
+        @Override
+        int convert(int c) {
+            return _map.get(c);
+        }
+
+        @Override
+        int[] positions() {
+            return new int[0];
+        }
+
+        /** Complete mapping of the machine. */
+        private final CompactTable _map;
+    }
+
+    /** A compiled machine with one moving rotor. */
+    private static final class OnePawl extends CompiledMachine {
+        /** A machine using PLAN with rotors at positions Q. */
+        OnePawl(Plan plan, int[] q) {
+            super(plan.size);
+            _f0 = plan.forward[0];
+            _b0 = plan.backward[0];
+            _inner = plan.inner;
+            _q0 = q[0];
+        }
+
+        @Override
+        int convert(int c) {
+            int n = _n;
+            int q0 = _q0 = inc(_q0);
+            return _b0.get(q0 * n + _inner.get(_f0.get(q0 * n + c)));
+        }
+
+        @Override
+        int[] positions() {
+            return new int[] { _q0 };
+        }
+
+        /** Tables of the moving rotor. */
+        private final CompactTable _f0, _b0;
+        /** Table of the fixed rotors. */
+        private final CompactTable _inner;
+        /** Position of the moving rotor. */
+        private int _q0;
+    }
+
+    /** A compiled machine with two moving rotors. */
+    private static final class TwoPawls extends CompiledMachine {
+        /** A machine using PLAN with rotors at positions Q. */
+        TwoPawls(Plan plan, int[] q) {
+            super(plan.size);
+            _f0 = plan.forward[0];
+            _b0 = plan.backward[0];
+            _f1 = plan.forward[1];
+            _b1 = plan.backward[1];
+            _n1 = plan.notches[1];
+            _inner = plan.inner;
+            _q0 = q[0];
+            _q1 = q[1];
+        }
+
+        @Override
+        int convert(int c) {
+            int n = _n;
+            if (_n1[_q1]) {
+                _q0 = inc(_q0);
+            }
+            int q0 = _q0, q1 = _q1 = inc(_q1);
+            int x = _f0.get(q0 * n + _f1.get(q1 * n + c));
+            x = _inner.get(x);
+            return _b1.get(q1 * n + _b0.get(q0 * n + x));
+        }
+
+        @Override
+        int[] positions() {
+            return new int[] { _q0, _q1 };
+        }
+
+        /** Tables of the moving rotors. */
+        private final CompactTable _f0, _b0, _f1, _b1;
+        /** Notches of the rightmost rotor. */
+        private final boolean[] _n1;
+        /** Table of the fixed rotors. */
+        private final CompactTable _inner;
+        /** Positions of the moving rotors. */
+        private int _q0, _q1;
+    }
+
+    /** A compiled machine with three moving rotors. */
+    private static final class ThreePawls extends CompiledMachine {
+        /** A machine using PLAN with rotors at positions Q. */
+        ThreePawls(Plan plan, int[] q) {
+            super(plan.size);
+            _f0 = plan.forward[0];
+            _b0 = plan.backward[0];
+            _f1 = plan.forward[1];
+            _b1 = plan.backward[1];
+            _f2 = plan.forward[2];
+            _b2 = plan.backward[2];
+            _n1 = plan.notches[1];
+            _n2 = plan.notches[2];
+            _inner = plan.inner;
+            _q0 = q[0];
+            _q1 = q[1];
+            _q2 = q[2];
+        }
+
+        @Override
+        int convert(int c) {
+            int n = _n;
+            if (_n1[_q1]) {
+                _q0 = inc(_q0);
+                _q1 = inc(_q1);
+            } else if (_n2[_q2]) {
+                _q1 = inc(_q1);
+            }
+            int q0 = _q0, q1 = _q1, q2 = _q2 = inc(_q2);
+            int x = _f0.get(q0 * n + _f1.get(q1 * n + _f2.get(q2 * n + c)));
+            x = _inner.get(x);
+            return _b2.get(q2 * n + _b1.get(q1 * n + _b0.get(q0 * n + x)));
+        }
+
+        @Override
+        int[] positions() {
+            return new int[] { _q0, _q1, _q2 };
+        }
+
+        /** Tables of the moving rotors. */
+        private final CompactTable _f0, _b0, _f1, _b1, _f2, _b2;
+        /** Notches of the middle and rightmost rotors. */
+        private final boolean[] _n1, _n2;
+        /** Table of the fixed rotors. */
+        private final CompactTable _inner;
+        /** Positions of the moving rotors. */
+        private int _q0, _q1, _q2;
+    }
+
+    /** A compiled machine with any number of moving rotors. */
+    private static final class ManyPawls extends CompiledMachine {
+        /** A machine using PLAN with rotors at positions Q. */
+        ManyPawls(Plan plan, int[] q) {
+            super(plan.size);
+            _forward = plan.forward;
+            _backward = plan.backward;
+            _notches = plan.notches;
+            _inner = plan.inner;
+            _q = q.clone();
+        }
+
+        @Override
+        int convert(int c) {
+            int n = _n, p = _q.length;
+            int[] q = _q;
+            for (int i = 0; i < p - 1; i += 1) {
+                if (_notches[i + 1][q[i + 1]]) {
+                    q[i] = inc(q[i]);
+                    if (i != p - 2) {
+                        q[i + 1] = inc(q[i + 1]);
+                        i += 1;
+                    }
+                }
+            }
+            q[p - 1] = inc(q[p - 1]);
+            int x = c;
+            for (int i = p - 1; i >= 0; i -= 1) {
+                x = _forward[i].get(q[i] * n + x);
+            }
+            x = _inner.get(x);
+            for (int i = 0; i < p; i += 1) {
+                x = _backward[i].get(q[i] * n + x);
+            }
+            return x;
+        }
+
+        @Override
+        int[] positions() {
+            return _q.clone();
+        }
+
+        /** Tables of the moving rotors. */
+        private final CompactTable[] _forward, _backward;
+        /** Notches of the moving rotors. */
+        private final boolean[][] _notches;
+        /** Table of the fixed rotors. */
+        private final CompactTable _inner;
+        /** Positions of the moving rotors. */
+        private final int[] _q;
+    }
+
+    /** A compiled machine whose tables are off the heap. */
+    private static final class OffHeap extends CompiledMachine {
+        /** A machine using TABLES with rotors at positions Q. */
+        OffHeap(OffHeapTables tables, int[] q) {
+            super(tables.size());
+            _data = tables.data();
+            _q = q.clone();
+            int p = q.length;
+            _forward = new int[p];
+            _backward = new int[p];
+            _notches = new int[p];
+            for (int j = 0; j < p; j += 1) {
+                _forward[j] = tables.forward(j);
+                _backward[j] = tables.backward(j);
+                _notches[j] = tables.notches(j);
+            }
+            _inner = tables.inner();
+        }
+
+        @Override
+        int convert(int c) {
+            IntBuffer data = _data;
+            int n = _n, p = _q.length;
+            int[] q = _q;
+            for (int i = 0; i < p - 1; i += 1) {
+                if (data.get(_notches[i + 1] + q[i + 1]) != 0) {
+                    q[i] = inc(q[i]);
+                    if (i != p - 2) {
+                        q[i + 1] = inc(q[i + 1]);
+                        i += 1;
+                    }
+                }
+            }
+            if (p > 0) {
+                q[p - 1] = inc(q[p - 1]);
+            }
+            int x = c;
+            for (int i = p - 1; i >= 0; i -= 1) {
+                x = data.get(_forward[i] + q[i] * n + x);
+            }
+            x = data.get(_inner + x);
+            for (int i = 0; i < p; i += 1) {
+                x = data.get(_backward[i] + q[i] * n + x);
+            }
+            return x;
+        }
+
+        @Override
+        int[] positions() {
+            return _q.clone();
+        }
+
+        /** The tables. */
+        private final IntBuffer _data;
+        /** Indices in _data of the tables of the moving rotors. */
+        private final int[] _forward, _backward, _notches;
+        /** Index in _data of the table of the fixed rotors. */
+        private final int _inner;
+        /** Positions of the moving rotors. */
+        private final int[] _q;
+    }
+}
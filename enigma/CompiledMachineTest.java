@@ -0,0 +1,247 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledMachine class.
+ *  @author Vikram Cherukuri
+ */
+public class CompiledMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final String[][] NOTCHES = {
+        {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+        {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"},
+    };
+
+    /** Return the permutation of naval rotor NAME. */
+    private Permutation perm(String name) {
+        return new Permutation(NAVALA.get(name).replace(")(", ") ("),
+                               UPPER);
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls, set up with
+     *  reflector B, fixed rotors Beta and Gamma as needed, and moving
+     *  rotors ending with VIII, at setting SETTING and ring RING. */
+    private Machine newMachine(int numRotors, int pawls, String setting,
+                               String ring) {
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        allRotors.add(new Reflector("B", perm("B")));
+        allRotors.add(new FixedRotor("Beta", perm("Beta")));
+        allRotors.add(new FixedRotor("Gamma", perm("Gamma")));
+        for (String[] r : NOTCHES) {
+            allRotors.add(new MovingRotor(r[0], perm(r[0]), r[1]));
+        }
+        Machine m = new Machine(UPPER, numRotors, pawls, allRotors);
+        String[] names = new String[numRotors];
+        names[0] = "B";
+        for (int i = 1; i < numRotors - pawls; i += 1) {
+            names[i] = i == 1 ? "Beta" : "Gamma";
+        }
+        for (int i = numRotors - pawls; i < numRotors; i += 1) {
+            names[i] = NOTCHES[NOTCHES.length - numRotors + i][0];
+        }
+        m.insertRotors(names);
+        m.setRotors(setting);
+        for (int i = 1; i < numRotors; i += 1) {
+            m.rotors()[i].setRing(ring.charAt(i - 1));
+        }
+        m.setPlugboard(new Permutation("(AQ) (EP) (MZ)", UPPER));
+        return m;
+    }
+
+    /** A long message. */
+    private static final String MSG;
+    static {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        MSG = msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesInterpreter() {
+        String[][] shapes = {
+            {"3", "1", "AY", "BC"}, {"3", "2", "AY", "BC"},
+            {"4", "3", "ZLY", "QRS"}, {"5", "3", "AXLY", "BCFG"},
+            {"5", "4", "AXLY", "BCFG"}, {"3", "0", "KL", "AB"},
+        };
+        for (String[] s : shapes) {
+            int numRotors = Integer.parseInt(s[0]);
+            int pawls = Integer.parseInt(s[1]);
+            Machine plain = newMachine(numRotors, pawls, s[2], s[3]);
+            Machine fast = newMachine(numRotors, pawls, s[2], s[3]);
+            fast.setSpecialized(true);
+            String expected = plain.convert(MSG);
+            assertEquals(msg(s[0] + "/" + s[1], "wrong conversion"),
+                         expected, fast.convert(MSG));
+            assertTrue(fast.specialized());
+        }
+    }
+
+    @Test
+    public void testBlocks() {
+        String[][] shapes = {
+            {"3", "1", "AY", "BC"}, {"4", "3", "ZLY", "QRS"},
+            {"5", "3", "AXLY", "BCFG"}, {"5", "4", "AXLY", "BCFG"},
+            {"3", "0", "KL", "AB"}, {"5", "3", "AXLY", "BCFG", "odd"},
+        };
+        int[] input = new int[MSG.length()];
+        for (int k = 0; k < input.length; k += 1) {
+            input[k] = UPPER.toInt(MSG.charAt(k));
+        }
+        for (String[] s : shapes) {
+            int numRotors = Integer.parseInt(s[0]);
+            int pawls = Integer.parseInt(s[1]);
+            for (boolean specialized : new boolean[] { false, true }) {
+                Machine plain = newMachine(numRotors, pawls, s[2], s[3]);
+                Machine block = newMachine(numRotors, pawls, s[2], s[3]);
+                if (s.length > 4) {
+                    String[] odd = {"B", "VI", "Beta", "VII", "VIII"};
+                    plain.insertRotors(odd);
+                    block.insertRotors(odd);
+                }
+                block.setSpecialized(specialized);
+                int[] msg = input.clone();
+                int[] cuts = { 0, 1, 700, 700, 1900, msg.length };
+                for (int c = 0; c + 1 < cuts.length; c += 1) {
+                    if (c == 3) {
+                        plain.rotors()[numRotors - 1].setRing(5);
+                        block.rotors()[numRotors - 1].setRing(5);
+                    }
+                    block.convert(msg, cuts[c], cuts[c + 1]);
+                    for (int k = cuts[c]; k < cuts[c + 1]; k += 1) {
+                        assertEquals(msg(s[0] + "/" + s[1],
+                                         "wrong conversion at %d", k),
+                                     plain.convert(input[k]), msg[k]);
+                    }
+                }
+                for (int i = 0; i < numRotors; i += 1) {
+                    assertEquals(plain.rotors()[i].setting(),
+                                 block.rotors()[i].setting());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDetach() {
+        Machine plain = newMachine(5, 3, "AXLY", "BCFG");
+        Machine fast = newMachine(5, 3, "AXLY", "BCFG");
+        fast.setSpecialized(true);
+        assertEquals(plain.convert(MSG), fast.convert(MSG));
+        for (int i = 0; i < 5; i += 1) {
+            assertEquals(plain.rotors()[i].setting(),
+                         fast.rotors()[i].setting());
+        }
+        assertFalse(fast.specialized());
+        fast.rotors()[4].set(3);
+        plain.rotors()[4].set(3);
+        assertEquals(plain.convert(MSG), fast.convert(MSG));
+    }
+
+    @Test
+    public void testFallback() {
+        Machine m = newMachine(5, 3, "AXLY", "BCFG");
+        m.insertRotors(new String[] {"B", "VI", "Beta", "VII", "VIII"});
+        m.setSpecialized(true);
+        m.convert(0);
+        assertFalse(m.specialized());
+    }
+
+    @Test
+    public void testOffHeap() throws IOException {
+        File dir = Files.createTempDirectory("tables").toFile();
+        try {
+            for (File where : new File[] { null, dir, dir }) {
+                Machine plain = newMachine(5, 3, "AXLY", "BCFG");
+                Machine fast = newMachine(5, 3, "AXLY", "BCFG");
+                fast.setSpecialized(true);
+                fast.setOffHeapTables(true, where);
+                assertEquals(plain.convert(MSG), fast.convert(MSG));
+                assertTrue(fast.specialized());
+            }
+            assertEquals(1, dir.listFiles().length);
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testTableCache() {
+        CompiledMachine.TableCache<String> cache =
+            new CompiledMachine.TableCache<>(10, v -> v.length());
+        cache.put("a", "AAAA");
+        cache.put("b", "BBBB");
+        assertEquals(8, cache.bytes());
+        assertEquals("AAAA", cache.get("a"));
+        cache.put("c", "CCC");
+        assertFalse(cache.containsKey("b"));
+        assertEquals(7, cache.bytes());
+        cache.put("d", "DDDDDDDDDDD");
+        assertNull(cache.get("d"));
+        assertEquals(7, cache.bytes());
+        cache.put("a", "AAAAAAAAAA");
+        assertFalse(cache.containsKey("c"));
+        assertEquals("AAAAAAAAAA", cache.get("a"));
+        assertEquals(10, cache.bytes());
+    }
+
+    @Test
+    public void testCostModel() {
+        CostModel model = new CostModel(1.0, 1.0, 1.0);
+        int breakEven = model.breakEven(26, 5, 3);
+        assertEquals((2 * 3 * 26 * 26 + 26 + 3) / 4, breakEven);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Machine plain = newMachine(5, 3, "AXLY", "QQQQ");
+        Machine auto = newMachine(5, 3, "AXLY", "QQQQ");
+        auto.setCostModel(model);
+        auto.setEngineLog(new PrintStream(log, true));
+        for (int i = 0; i < breakEven; i += 1) {
+            int c = MSG.charAt(i) - 'A';
+            assertEquals(plain.convert(c), auto.convert(c));
+            assertFalse(auto.specialized());
+        }
+        assertEquals(plain.convert(MSG), auto.convert(MSG));
+        assertTrue(auto.specialized());
+        assertTrue(log.toString().contains(
+            "B Beta VI VII VIII: specialized after " + breakEven));
+
+        plain.setRotors("AXLY");
+        auto.setRotors("AXLY");
+        assertEquals(plain.convert(MSG), auto.convert(MSG));
+        assertTrue(auto.specialized());
+        assertTrue(log.toString().contains("tables already built"));
+
+        auto.setCostModel(new CostModel(1.0, 10.0, 1.0));
+        assertEquals(plain.convert(MSG), auto.convert(MSG));
+        assertFalse(auto.specialized());
+    }
+
+}
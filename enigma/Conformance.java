@@ -0,0 +1,632 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static enigma.EnigmaException.*;
+
+/** A differential test of the conversion engines of Main against its
+ *  reference engine, the interpreter, which applies the Machine and
+ *  Rotor logic directly.  Cases are configuration files and message
+ *  files in the format of testing/, generated at random or taken from
+ *  a corpus such as testing/correct and testing/error.  Each case is run
+ *  with every engine, and its outcome (output and whether an error was
+ *  reported) compared with that of the reference.  A mismatching case is
+ *  shrunk to a small one with the same mismatch and saved.  Optionally,
+ *  the throughput of each engine is also measured and compared with a
+ *  recorded baseline.
+ *  @author Vikram Cherukuri
+ */
+public final class Conformance {
+
+    /** Options of Main selecting the reference engine. */
+    static final String[] REFERENCE = { "--engine", "interpreter" };
+
+    /** Engines compared with the reference: a name and the options of
+     *  Main that select it. */
+    static final String[][] ENGINES = {
+        { "specialized", "--engine", "specialized" },
+        { "off-heap", "--engine", "specialized", "--tables", "off-heap" },
+        { "auto", "--engine", "auto" },
+    };
+
+    /** Run the harness as specified by ARGS, which are options
+     *      --cases N        number of random cases (default 200).
+     *      --seed S         seed of the first random case (default 0).
+     *      --corpus DIR     also run each F.in in DIR, configured by
+     *                       F.conf or DIR/default.conf, as for
+     *                       testing/test-correct.  May be repeated.
+     *      --out DIR        where to save shrunk mismatches (default .).
+     *      --baseline FILE  measure throughputs and compare them with
+     *                       those recorded in FILE.
+     *      --record         record the throughputs in FILE instead.
+     *      --tolerance F    fail if a throughput is below (1 - F) times
+     *                       its baseline (default 0.2).
+     *  Exits normally if every case matches and no throughput has
+     *  regressed; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (new Conformance(args).check()) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A harness configured by ARGS (see main). */
+    Conformance(String[] args) {
+        for (int i = 0; i < args.length; i += 1) {
+            String opt = args[i];
+            if (opt.equals("--record")) {
+                _record = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw error("missing value for %s", opt);
+            }
+            String value = args[++i];
+            try {
+                switch (opt) {
+                case "--cases":
+                    _cases = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    _seed = Long.parseLong(value);
+                    break;
+                case "--corpus":
+                    _corpus.add(new File(value));
+                    break;
+                case "--out":
+                    _out = new File(value);
+                    break;
+                case "--baseline":
+                    _baseline = new File(value);
+                    break;
+                case "--tolerance":
+                    _tolerance = Double.parseDouble(value);
+                    break;
+                default:
+                    throw error("unknown option %s", opt);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s", opt);
+            }
+        }
+        if (_record && _baseline == null) {
+            throw error("--record requires --baseline");
+        }
+    }
+
+    /** Run all my cases and measurements, reporting on the standard
+     *  output.  Return true iff all succeed. */
+    boolean check() {
+        boolean ok = true;
+        int count = 0;
+        for (File dir : _corpus) {
+            for (Case c : corpus(dir)) {
+                ok &= check(c, c.name());
+                count += 1;
+            }
+        }
+        for (int i = 0; i < _cases; i += 1) {
+            ok &= check(generate(new Random(_seed + i)), "seed-"
+                        + (_seed + i));
+            count += 1;
+        }
+        System.out.printf("%d cases, %d engines: %s%n", count,
+                          ENGINES.length, ok ? "all match" : "MISMATCHES");
+        if (_baseline != null) {
+            ok &= checkThroughput();
+        }
+        return ok;
+    }
+
+    /** Check case C, called NAME, reporting and saving any mismatch.
+     *  Return true iff there is none. */
+    private boolean check(Case c, String name) {
+        String engine = mismatch(c);
+        if (engine == null) {
+            return true;
+        }
+        String[] options = options(engine);
+        Case small = shrink(c, x -> !outcome(x, REFERENCE)
+                            .equals(outcome(x, options)));
+        File conf = new File(_out, "mismatch-" + name + ".conf");
+        File in = new File(_out, "mismatch-" + name + ".in");
+        small.write(conf, in);
+        System.out.printf("%s: %s differs from the reference; shrunk to "
+                          + "%s and %s%n", name, engine, conf, in);
+        return false;
+    }
+
+    /** Return the name of the first engine whose outcome for C differs
+     *  from the reference's, or null if none does. */
+    static String mismatch(Case c) {
+        String expected = outcome(c, REFERENCE);
+        for (String[] engine : ENGINES) {
+            if (!expected.equals(outcome(c, options(engine[0])))) {
+                return engine[0];
+            }
+        }
+        return null;
+    }
+
+    /** Return the options of Main that select the engine named NAME. */
+    static String[] options(String name) {
+        if (name.equals("reference")) {
+            return REFERENCE;
+        }
+        for (String[] engine : ENGINES) {
+            if (engine[0].equals(name)) {
+                String[] result = new String[engine.length - 1];
+                System.arraycopy(engine, 1, result, 0, result.length);
+                return result;
+            }
+        }
+        throw error("unknown engine %s", name);
+    }
+
+    /** Return a description of the result of running Main with OPTIONS
+     *  on C: its output, preceded by "error" if it reported an error and
+     *  by the name of any other exception it threw. */
+    static String outcome(Case c, String[] options) {
+        File dir = null;
+        try {
+            dir = Files.createTempDirectory("conformance").toFile();
+            File conf = new File(dir, "case.conf");
+            File in = new File(dir, "case.in");
+            File out = new File(dir, "case.out");
+            c.write(conf, in);
+            String status = "ok";
+            try {
+                String[] args = new String[options.length + 3];
+                System.arraycopy(options, 0, args, 0, options.length);
+                args[options.length] = conf.getPath();
+                args[options.length + 1] = in.getPath();
+                args[options.length + 2] = out.getPath();
+                new Main(args).process();
+            } catch (EnigmaException excp) {
+                status = "error";
+            } catch (RuntimeException excp) {
+                status = excp.getClass().getName();
+            }
+            String output = out.exists()
+                ? new String(Files.readAllBytes(out.toPath())) : "";
+            return status + "\n" + output;
+        } catch (IOException excp) {
+            throw error("could not run case: %s", excp.getMessage());
+        } finally {
+            if (dir != null) {
+                for (File f : dir.listFiles()) {
+                    f.delete();
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    /** Return a case smaller than C for which FAILING is still true, as
+     *  it is for C, found by repeatedly deleting input lines, parts of
+     *  message lines, and rotor descriptions while FAILING holds. */
+    static Case shrink(Case c, Predicate<Case> failing) {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int chunk = c.input.size(); chunk >= 1; chunk /= 2) {
+                for (int i = 0; i + chunk <= c.input.size(); ) {
+                    Case smaller = c.withInput(without(c.input, i, chunk));
+                    if (failing.test(smaller)) {
+                        c = smaller;
+                        progress = true;
+                    } else {
+                        i += chunk;
+                    }
+                }
+            }
+            for (int k = 0; k < c.input.size(); k += 1) {
+                String line = c.input.get(k);
+                if (line.startsWith("*")) {
+                    continue;
+                }
+                for (int chunk = line.length(); chunk >= 1; chunk /= 2) {
+                    for (int i = 0; i + chunk <= line.length(); ) {
+                        String shorter = line.substring(0, i)
+                            + line.substring(i + chunk);
+                        List<String> input = new ArrayList<>(c.input);
+                        input.set(k, shorter);
+                        Case smaller = c.withInput(input);
+                        if (failing.test(smaller)) {
+                            c = smaller;
+                            line = shorter;
+                            progress = true;
+                        } else {
+                            i += chunk;
+                        }
+                    }
+                }
+            }
+            for (int k = c.config.size() - 1; k >= 2; k -= 1) {
+                Case smaller = c.withConfig(without(c.config, k, 1));
+                if (failing.test(smaller)) {
+                    c = smaller;
+                    progress = true;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return LINES without the COUNT lines starting at line K. */
+    private static List<String> without(List<String> lines, int k,
+                                        int count) {
+        List<String> result = new ArrayList<>(lines.subList(0, k));
+        result.addAll(lines.subList(k + count, lines.size()));
+        return result;
+    }
+
+    /** Return a random case, made with RANDOM.  About a quarter of cases
+     *  contain one of the kinds of error in testing/error. */
+    static Case generate(Random random) {
+        String pool = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "0123456789";
+        int n = 2 * (3 + random.nextInt(13));
+        List<String> chars = new ArrayList<>();
+        for (char ch : pool.toCharArray()) {
+            chars.add(String.valueOf(ch));
+        }
+        Collections.shuffle(chars, random);
+        String alpha = String.join("", chars.subList(0, n));
+        int slots = 2 + random.nextInt(5);
+        int pawls = random.nextInt(slots);
+
+        List<String> config = new ArrayList<>();
+        config.add(alpha);
+        config.add(String.format(" %d %d", slots, pawls));
+        List<String> moving = new ArrayList<>(), fixed = new ArrayList<>();
+        for (int i = 0; i < pawls + 2; i += 1) {
+            moving.add("M" + i);
+            config.add(String.format(" M%d M%s %s", i,
+                                     sample(alpha, 1 + random.nextInt(4),
+                                            random),
+                                     cycles(alpha, random)));
+        }
+        for (int i = 0; i < slots - pawls; i += 1) {
+            fixed.add("N" + i);
+            config.add(String.format(" N%d N %s", i, cycles(alpha, random)));
+        }
+        config.add(" R0 R " + pairs(alpha, random));
+        config.add(" R1 R " + pairs(alpha, random));
+
+        List<String> input = new ArrayList<>();
+        int sections = 1 + random.nextInt(4);
+        for (int s = 0; s < sections; s += 1) {
+            Collections.shuffle(moving, random);
+            Collections.shuffle(fixed, random);
+            StringBuilder line = new StringBuilder("* R");
+            line.append(random.nextInt(2));
+            for (String name : fixed.subList(0, slots - pawls - 1)) {
+                line.append(' ').append(name);
+            }
+            for (String name : moving.subList(0, pawls)) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(string(alpha, slots - 1, random));
+            if (random.nextBoolean()) {
+                line.append(' ').append(string(alpha, slots - 1, random));
+            }
+            if (random.nextBoolean()) {
+                String p = sample(alpha, 4, random);
+                line.append(String.format(" (%s) (%s)", p.substring(0, 2),
+                                          p.substring(2)));
+            }
+            input.add(line.toString());
+            for (int k = random.nextInt(8); k > 0; k -= 1) {
+                input.add(string(alpha + "  ", random.nextInt(300),
+                                 random));
+            }
+        }
+        Case result = new Case(config, input, "generated");
+        return random.nextInt(4) == 0 ? mutate(result, random) : result;
+    }
+
+    /** Return C with one error of a random kind, made with RANDOM. */
+    private static Case mutate(Case c, Random random) {
+        List<String> config = new ArrayList<>(c.config);
+        List<String> input = new ArrayList<>(c.input);
+        String settings = input.get(0);
+        String[] terms = settings.split(" ");
+        switch (random.nextInt(8)) {
+        case 0:
+            input.remove(0);
+            input.add("MESSAGE WITHOUT SETTINGS");
+            break;
+        case 1:
+            terms[1] = "Q9";
+            input.set(0, String.join(" ", terms));
+            break;
+        case 2:
+            input.set(0, settings.replaceFirst("^\\*", "#"));
+            break;
+        case 3:
+            input.add(1, "!");
+            break;
+        case 4:
+            terms[terms.length - 1] += config.get(0).substring(0, 1);
+            input.set(0, String.join(" ", terms));
+            break;
+        case 5:
+            terms[2] = terms[1];
+            input.set(0, String.join(" ", terms));
+            break;
+        case 6:
+            config.set(1, config.get(1) + "0");
+            break;
+        default:
+            config.add(" X9 Q (" + config.get(0).substring(0, 2) + ")");
+            break;
+        }
+        return new Case(config, input, "mutated");
+    }
+
+    /** Return a random cycle string for a permutation of ALPHA, made
+     *  with RANDOM. */
+    private static String cycles(String alpha, Random random) {
+        String chars = sample(alpha, alpha.length(), random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < chars.length(); ) {
+            int k = 1 + random.nextInt(chars.length() - i);
+            result.append(i == 0 ? "(" : " (")
+                .append(chars, i, i + k).append(')');
+            i += k;
+        }
+        return result.toString();
+    }
+
+    /** Return a random cycle string for an involution without fixed
+     *  points of ALPHA, whose length is even, made with RANDOM. */
+    private static String pairs(String alpha, Random random) {
+        String chars = sample(alpha, alpha.length(), random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < chars.length(); i += 2) {
+            result.append(i == 0 ? "(" : " (")
+                .append(chars, i, i + 2).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return K distinct characters of ALPHA in random order. */
+    private static String sample(String alpha, int k, Random random) {
+        List<Character> chars = new ArrayList<>();
+        for (char ch : alpha.toCharArray()) {
+            chars.add(ch);
+        }
+        Collections.shuffle(chars, random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < k; i += 1) {
+            result.append(chars.get(i));
+        }
+        return result.toString();
+    }
+
+    /** Return LENGTH random characters of CHARS. */
+    private static String string(String chars, int length, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return the cases in directory DIR: each F.in, configured by F.conf
+     *  if it exists and otherwise by DIR/default.conf. */
+    static List<Case> corpus(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".in"));
+        if (files == null) {
+            throw error("%s is not a directory", dir);
+        }
+        List<Case> result = new ArrayList<>();
+        for (File in : files) {
+            String base = in.getName().substring(0,
+                                                 in.getName().length() - 3);
+            File conf = new File(dir, base + ".conf");
+            if (!conf.exists()) {
+                conf = new File(dir, "default.conf");
+            }
+            try {
+                result.add(new Case(Files.readAllLines(conf.toPath()),
+                                    Files.readAllLines(in.toPath()),
+                                    dir.getName() + "-" + base));
+            } catch (IOException excp) {
+                throw error("could not read %s", in);
+            }
+        }
+        Collections.sort(result, (a, b) -> a.name().compareTo(b.name()));
+        return result;
+    }
+
+    /** Measure the throughput of the reference and of each engine, and
+     *  record them in _baseline or compare them with it, reporting on
+     *  the standard output.  Return true iff none has regressed. */
+    private boolean checkThroughput() {
+        Map<String, Double> measured = throughputs();
+        Properties baseline = new Properties();
+        if (_record) {
+            for (Map.Entry<String, Double> e : measured.entrySet()) {
+                baseline.setProperty(e.getKey(), e.getValue().toString());
+                System.out.printf("%s: %.1f Mchars/s%n", e.getKey(),
+                                  e.getValue() * 1e-6);
+            }
+            try (Writer out = new FileWriter(_baseline)) {
+                baseline.store(out, "Throughputs, in characters per second");
+            } catch (IOException excp) {
+                throw error("could not write %s", _baseline);
+            }
+            return true;
+        }
+        try (Reader in = new FileReader(_baseline)) {
+            baseline.load(in);
+        } catch (IOException excp) {
+            throw error("could not read %s", _baseline);
+        }
+        boolean ok = true;
+        for (Map.Entry<String, Double> e : measured.entrySet()) {
+            String recorded = baseline.getProperty(e.getKey());
+            double expected;
+            try {
+                expected = recorded == null ? 0
+                    : Double.parseDouble(recorded);
+            } catch (NumberFormatException excp) {
+                throw error("bad baseline for %s", e.getKey());
+            }
+            boolean regressed = e.getValue() < (1 - _tolerance) * expected;
+            ok &= !regressed;
+            System.out.printf("%s: %.1f Mchars/s (baseline %.1f)%s%n",
+                              e.getKey(), e.getValue() * 1e-6,
+                              expected * 1e-6,
+                              regressed ? " REGRESSED" : "");
+        }
+        return ok;
+    }
+
+    /** Return the best throughput, in characters per second, of the
+     *  reference and each engine on a fixed workload over several
+     *  rounds, by engine name. */
+    static Map<String, Double> throughputs() {
+        Case work = workload();
+        long chars = 0;
+        for (String line : work.input) {
+            if (!line.startsWith("*")) {
+                chars += line.length();
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("reference", 0.0);
+        for (String[] engine : ENGINES) {
+            result.put(engine[0], 0.0);
+        }
+        for (int round = 0; round < THROUGHPUT_ROUNDS; round += 1) {
+            for (String name : result.keySet()) {
+                long start = System.nanoTime();
+                outcome(work, options(name));
+                double rate = chars * 1e9 / (System.nanoTime() - start);
+                result.put(name, Math.max(result.get(name), rate));
+            }
+        }
+        return result;
+    }
+
+    /** Return the throughput workload: long messages on a four-rotor
+     *  machine with several settings lines. */
+    private static Case workload() {
+        Random random = new Random(THROUGHPUT_CHARS);
+        String alpha = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        List<String> config = new ArrayList<>();
+        config.add(alpha);
+        config.add(" 5 3");
+        for (int i = 0; i < 3; i += 1) {
+            config.add(String.format(" M%d M%s %s", i,
+                                     sample(alpha, 2, random),
+                                     cycles(alpha, random)));
+        }
+        config.add(" N0 N " + cycles(alpha, random));
+        config.add(" R0 R " + pairs(alpha, random));
+        List<String> input = new ArrayList<>();
+        int sections = 8;
+        for (int s = 0; s < sections; s += 1) {
+            input.add(String.format("* R0 N0 M0 M1 M2 %s %s (AB) (CD)",
+                                    string(alpha, 4, random),
+                                    string(alpha, 4, random)));
+            for (int k = 0; k < THROUGHPUT_CHARS / sections / 100; k += 1) {
+                input.add(string(alpha, 100, random));
+            }
+        }
+        return new Case(config, input, "workload");
+    }
+
+    /** A configuration file and a message file. */
+    static final class Case {
+        /** The case with lines CONFIG of configuration and INPUT of
+         *  messages, called NAME. */
+        Case(List<String> config, List<String> input, String name) {
+            this.config = Collections.unmodifiableList(config);
+            this.input = Collections.unmodifiableList(input);
+            _name = name;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return me with messages INPUT. */
+        Case withInput(List<String> newInput) {
+            return new Case(config, newInput, _name);
+        }
+
+        /** Return me with configuration NEWCONFIG. */
+        Case withConfig(List<String> newConfig) {
+            return new Case(newConfig, input, _name);
+        }
+
+        /** Write my configuration to CONF and my messages to IN. */
+        void write(File conf, File in) {
+            try {
+                Files.write(conf.toPath(), config);
+                Files.write(in.toPath(), input);
+            } catch (IOException excp) {
+                throw error("could not write %s", in);
+            }
+        }
+
+        /** Lines of the configuration file. */
+        final List<String> config;
+        /** Lines of the message file. */
+        final List<String> input;
+        /** Name, for reports. */
+        private final String _name;
+    }
+
+    /** Number of message characters in the throughput workload. */
+    private static final int THROUGHPUT_CHARS = 2_000_000;
+
+    /** Number of timed runs of each engine; the fastest is used. */
+    private static final int THROUGHPUT_ROUNDS = 3;
+
+    /** Number of random cases. */
+    private int _cases = 200;
+
+    /** Seed of the first random case. */
+    private long _seed;
+
+    /** Directories of corpus cases. */
+    private final List<File> _corpus = new ArrayList<>();
+
+    /** Directory for shrunk mismatches. */
+    private File _out = new File(".");
+
+    /** File of baseline throughputs, or null. */
+    private File _baseline;
+
+    /** True iff throughputs are recorded rather than checked. */
+    private boolean _record;
+
+    /** Allowed fractional drop in throughput. */
+    private double _tolerance = 0.2;
+}
@@ -0,0 +1,59 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Conformance harness.
+ *  @author Vikram Cherukuri
+ */
+public class ConformanceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void testGeneratedCasesMatch() {
+        for (int seed = 0; seed < 25; seed += 1) {
+            Conformance.Case c = Conformance.generate(new Random(seed));
+            assertNull("seed " + seed, Conformance.mismatch(c));
+        }
+    }
+
+    @Test
+    public void testOutcome() {
+        List<String> config = Arrays.asList(
+            "ABCD", " 2 1", " I MA (ABCD)", " R R (AB) (CD)");
+        Conformance.Case good = new Conformance.Case(
+            config, Arrays.asList("* R I A", "ABCD ABCD"), "good");
+        Conformance.Case bad = good.withInput(
+            Arrays.asList("* R I A", "ABCDE"));
+        String ok = Conformance.outcome(good, Conformance.REFERENCE);
+        assertTrue(ok.startsWith("ok\n"));
+        assertEquals(ok, Conformance.outcome(
+            good, Conformance.options("specialized")));
+        assertTrue(Conformance.outcome(bad, Conformance.REFERENCE)
+                   .startsWith("error\n"));
+    }
+
+    @Test
+    public void testShrink() {
+        Conformance.Case c = Conformance.generate(new Random(3));
+        List<String> input = new ArrayList<>(c.input);
+        input.add(1, "QQ" + input.get(0).substring(2, 4) + "QQ");
+        String target = input.get(0).substring(2, 4);
+        c = c.withInput(input);
+        Conformance.Case small = Conformance.shrink(
+            c, x -> x.input.stream().anyMatch(
+                line -> !line.startsWith("*") && line.contains(target)));
+        assertEquals(Arrays.asList(target), small.input);
+        assertEquals(2, small.config.size());
+    }
+}
@@ -0,0 +1,231 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Estimates of the costs of the two ways a Machine can convert: by
+ *  interpreting its rotors one at a time, or through a CompiledMachine,
+ *  whose tables must first be built.  A Machine with a CostModel uses it
+ *  to decide, for each configuration, how many characters to interpret
+ *  before compiling (see breakEven).
+ *
+ *  The estimates are times in nanoseconds: of one interpreted conversion
+ *  per rotor slot, of one compiled conversion, and of building one table
+ *  entry.  They come from RECORDED, from a file written by write, or
+ *  from a short benchmark (calibrate).
+ *  @author Vikram Cherukuri
+ */
+final class CostModel {
+
+    /** Estimates recorded on a typical machine. */
+    static final CostModel RECORDED = new CostModel(50.0, 20.0, 2.5);
+
+    /** A model in which an interpreted conversion takes INTERPRET
+     *  nanoseconds per rotor slot, a compiled conversion COMPILED
+     *  nanoseconds, and building a table entry BUILD nanoseconds. */
+    CostModel(double interpret, double compiled, double build) {
+        if (!(interpret > 0 && compiled > 0 && build > 0)) {
+            throw error("cost estimates must be positive");
+        }
+        _interpret = interpret;
+        _compiled = compiled;
+        _build = build;
+    }
+
+    /** Return the model recorded in FILE if it exists, and otherwise
+     *  one measured by calibrate, which is then recorded in FILE. */
+    static CostModel load(File file) {
+        if (file.exists()) {
+            return read(file);
+        }
+        CostModel result = calibrate();
+        result.write(file);
+        return result;
+    }
+
+    /** Return the model recorded in FILE. */
+    static CostModel read(File file) {
+        Properties props = new Properties();
+        try (Reader in = new FileReader(file)) {
+            props.load(in);
+            return new CostModel(
+                Double.parseDouble(props.getProperty("interpret")),
+                Double.parseDouble(props.getProperty("compiled")),
+                Double.parseDouble(props.getProperty("build")));
+        } catch (IOException | NullPointerException
+                 | NumberFormatException excp) {
+            throw error("bad cost model %s", file);
+        }
+    }
+
+    /** Record me in FILE. */
+    void write(File file) {
+        Properties props = new Properties();
+        props.setProperty("interpret", Double.toString(_interpret));
+        props.setProperty("compiled", Double.toString(_compiled));
+        props.setProperty("build", Double.toString(_build));
+        try (Writer out = new FileWriter(file)) {
+            props.store(out, "Enigma engine costs, in nanoseconds");
+        } catch (IOException excp) {
+            throw error("could not write cost model %s", file);
+        }
+    }
+
+    /** Return a model measured by converting and compiling with a
+     *  synthetic machine for a few tens of milliseconds. */
+    static CostModel calibrate() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < BENCH_SIZE; i += 1) {
+            chars.append((char) ('0' + i));
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        Random random = new Random(BENCH_SIZE);
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", randomPermutation(alpha, random,
+                                                        true)));
+        rotors.add(new FixedRotor("F", randomPermutation(alpha, random,
+                                                         false)));
+        String[] names = { "R", "F", "M0", "M1", "M2" };
+        for (int i = 0; i < 3; i += 1) {
+            rotors.add(new MovingRotor(names[i + 2],
+                                       randomPermutation(alpha, random,
+                                                         false),
+                                       chars.substring(i, i + 1)));
+        }
+        Permutation plugboard = randomPermutation(alpha, random, true);
+        Machine m = new Machine(alpha, names.length, 3, rotors);
+        m.insertRotors(names);
+        m.setPlugboard(plugboard);
+
+        double interpret = Double.MAX_VALUE, compiled = Double.MAX_VALUE,
+            build = Double.MAX_VALUE;
+        for (int round = 0; round < BENCH_ROUNDS; round += 1) {
+            m.setSpecialized(false);
+            interpret = Math.min(interpret, time(m) / names.length);
+            m.setSpecialized(true);
+            compiled = Math.min(compiled, time(m));
+
+            Rotor[] slots = m.rotors();
+            long start = System.nanoTime();
+            for (int k = 0; k < BENCH_BUILDS; k += 1) {
+                slots[names.length - 1]
+                    .setRing(round * BENCH_BUILDS + k + 1);
+                CompiledMachine.compile(alpha, slots, plugboard, false,
+                                        null);
+            }
+            long entries = 2L * 3 * BENCH_SIZE * BENCH_SIZE + BENCH_SIZE;
+            build = Math.min(build, (double) (System.nanoTime() - start)
+                             / BENCH_BUILDS / entries);
+            slots[names.length - 1].setRing(0);
+        }
+        return new CostModel(interpret, compiled, build);
+    }
+
+    /** Return the average time in nanoseconds that M takes for each of
+     *  BENCH_CHARS conversions, starting at its 0 setting. */
+    private static double time(Machine m) {
+        m.setRotors("0000");
+        m.convert(0);
+        int c = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCH_CHARS; i += 1) {
+            c = m.convert(c);
+        }
+        return (double) (System.nanoTime() - start) / BENCH_CHARS;
+    }
+
+    /** Return a random permutation of ALPHA, using RANDOM, that is an
+     *  involution without fixed points if PAIRS. */
+    private static Permutation randomPermutation(Alphabet alpha,
+                                                 Random random,
+                                                 boolean pairs) {
+        List<Character> chars = new ArrayList<>();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            chars.add(alpha.toChar(i));
+        }
+        Collections.shuffle(chars, random);
+        StringBuilder cycles = new StringBuilder();
+        int step = pairs ? 2 : chars.size();
+        for (int i = 0; i < chars.size(); i += step) {
+            cycles.append(i == 0 ? "(" : " (");
+            for (int j = i; j < i + step; j += 1) {
+                cycles.append(chars.get(j));
+            }
+            cycles.append(')');
+        }
+        return new Permutation(cycles.toString(), alpha);
+    }
+
+    /** Return the number of conversions by a machine with alphabet size
+     *  N and SLOTS rotor slots, MOVING of them compiled as moving rotors,
+     *  after which building its tables has paid for itself, or
+     *  Integer.MAX_VALUE if it never does. */
+    int breakEven(int n, int slots, int moving) {
+        double saving = saving(slots);
+        if (saving <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Math.ceil(buildTime(n, moving) / saving),
+                              Integer.MAX_VALUE - 1);
+    }
+
+    /** Return the estimated nanoseconds saved by each compiled, rather
+     *  than interpreted, conversion by a machine with SLOTS rotor
+     *  slots. */
+    double saving(int slots) {
+        return _interpret * slots - _compiled;
+    }
+
+    /** Return the estimated nanoseconds taken to build the tables of a
+     *  machine with alphabet size N and MOVING moving rotors. */
+    double buildTime(int n, int moving) {
+        return _build * (2.0 * moving * n * n + n);
+    }
+
+    /** Return the number of bytes of heap that compiled tables may take:
+     *  a quarter of what is currently unused. */
+    static long memoryBudget() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.maxMemory() - (rt.totalMemory() - rt.freeMemory())) / 4;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("interpreted %.2f ns per rotor, compiled %.2f "
+                             + "ns, build %.2f ns per entry",
+                             _interpret, _compiled, _build);
+    }
+
+    /** Alphabet size of the calibration machine. */
+    private static final int BENCH_SIZE = 64;
+
+    /** Number of conversions timed in each calibration round. */
+    private static final int BENCH_CHARS = 200_000;
+
+    /** Number of machines compiled in each calibration round. */
+    private static final int BENCH_BUILDS = 4;
+
+    /** Number of calibration rounds; the fastest is used. */
+    private static final int BENCH_ROUNDS = 5;
+
+    /** Estimated nanoseconds per interpreted conversion per rotor slot. */
+    private final double _interpret;
+
+    /** Estimated nanoseconds per compiled conversion. */
+    private final double _compiled;
+
+    /** Estimated nanoseconds to build one table entry. */
+    private final double _build;
+}
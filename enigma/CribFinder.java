@@ -0,0 +1,239 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the offsets in a ciphertext at which each of a number of cribs
+ *  (known plaintexts) may lie.  Because a machine's reflector maps no
+ *  character to itself, neither does the machine, so a crib cannot lie
+ *  where any of its characters is the ciphertext character at the same
+ *  position.  For each character of the alphabet the finder keeps a
+ *  bitset of the positions at which it occurs in the ciphertext.  The
+ *  positions at which crib character J clashes, seen from 64 consecutive
+ *  offsets, are then one word of that bitset shifted by J, and the
+ *  offsets ruled out by a crib are the OR of such words over its
+ *  characters: a few instructions per character per 64 offsets.  The
+ *  ciphertext is read as a stream, and only the words that a crib
+ *  starting at the earliest undecided offset can reach are kept, so that
+ *  memory does not grow with its length.  Offsets count the characters
+ *  of the ciphertext that are in the alphabet, starting at 0; whitespace
+ *  is ignored.
+ *  @author Vikram Cherukuri
+ */
+public final class CribFinder {
+
+    /** Receives the offsets found. */
+    interface Listener {
+        /** Called for each OFFSET at which crib number CRIB may lie, in
+         *  increasing order of offset for each crib. */
+        void found(int crib, long offset);
+    }
+
+    /** Find crib offsets, as specified by ARGS, which has the form
+     *      [--count] CONFIG CIPHERTEXT CRIB...
+     *  Prints each offset in file CIPHERTEXT at which one of the CRIBs,
+     *  written in the alphabet of configuration file CONFIG, may lie,
+     *  followed by the crib, one to a line, or with --count, only each
+     *  crib and the number of its offsets.  Every reflector of CONFIG
+     *  must map no character to itself.  Exits normally if there are no
+     *  errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            boolean count = args.length > 0 && args[0].equals("--count");
+            int k = count ? 1 : 0;
+            if (args.length < k + 3) {
+                throw error("usage: java enigma.CribFinder [--count] "
+                            + "CONFIG CIPHERTEXT CRIB...");
+            }
+            MachineConfig config = MachineConfig.read(args[k]);
+            checkReflectors(config.newMachine());
+            String[] cribs = new String[args.length - k - 2];
+            System.arraycopy(args, k + 2, cribs, 0, cribs.length);
+            CribFinder finder = new CribFinder(config.alphabet(), cribs);
+            PrintStream out =
+                new PrintStream(new BufferedOutputStream(System.out, 1 << 16));
+            long[] counts = new long[cribs.length];
+            try (Reader in = new InputStreamReader(
+                     new FileInputStream(args[k + 1]), CHARSET)) {
+                finder.find(in, (crib, offset) -> {
+                    counts[crib] += 1;
+                    if (!count) {
+                        out.printf("%d %s%n", offset, cribs[crib]);
+                    }
+                });
+            } catch (IOException excp) {
+                throw error("could not read %s", args[k + 1]);
+            }
+            if (count) {
+                for (int c = 0; c < cribs.length; c += 1) {
+                    out.printf("%s %d%n", cribs[c], counts[c]);
+                }
+            }
+            out.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check that no reflector available to M maps a character to
+     *  itself, as crib offsets are ruled out on that assumption. */
+    static void checkReflectors(Machine m) {
+        for (Rotor r : m.allRotors()) {
+            if (r.reflecting() && !r.permutation().derangement()) {
+                throw error("reflector %s maps a character to itself",
+                            r.name());
+            }
+        }
+    }
+
+    /** A finder of the offsets of CRIBS, which are written in
+     *  ALPHABET. */
+    CribFinder(Alphabet alphabet, String... cribs) {
+        _alphabet = alphabet;
+        _cribs = new int[cribs.length][];
+        int longest = 1;
+        for (int c = 0; c < cribs.length; c += 1) {
+            String crib = cribs[c];
+            _cribs[c] = new int[crib.codePointCount(0, crib.length())];
+            if (_cribs[c].length == 0) {
+                throw error("empty crib");
+            }
+            for (int i = 0, j = 0; i < crib.length();
+                 i += Character.charCount(crib.codePointAt(i)), j += 1) {
+                int ch = crib.codePointAt(i);
+                if (!alphabet.containsCodePoint(ch)) {
+                    throw error("crib %s is not in the alphabet", crib);
+                }
+                _cribs[c][j] = alphabet.toIndex(ch);
+            }
+            longest = Math.max(longest, _cribs[c].length);
+        }
+        _longest = longest;
+        int words = Integer.highestOneBit((longest + 62) / 64 + 2) * 2;
+        _mask = words - 1;
+        _positions = new long[alphabet.size()][words];
+        _text = new int[64 * words];
+    }
+
+    /** Read the ciphertext from IN to its end, reporting to LISTENER each
+     *  offset at which each of my cribs may lie. */
+    void find(Reader in, Listener listener) throws IOException {
+        _length = 0;
+        _decided = 0;
+        char[] buf = new char[1 << 13];
+        int high = -1;
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            for (int i = 0; i < n; i += 1) {
+                int ch = buf[i];
+                if (high >= 0) {
+                    ch = Character.isLowSurrogate(buf[i])
+                        ? Character.toCodePoint((char) high, buf[i]) : -1;
+                    high = -1;
+                } else if (Character.isHighSurrogate(buf[i])) {
+                    high = ch;
+                    continue;
+                }
+                if (ch >= 0 && _alphabet.containsCodePoint(ch)) {
+                    add(_alphabet.toIndex(ch), listener);
+                } else if (ch < 0 || !Character.isWhitespace(ch)) {
+                    throw error("ciphertext is not in the alphabet");
+                }
+            }
+        }
+        if (high >= 0) {
+            throw error("ciphertext is not in the alphabet");
+        }
+        while (_decided < _length) {
+            decide(listener);
+        }
+    }
+
+    /** Add the character with index C to the end of the ciphertext,
+     *  reporting to LISTENER the offsets that are then decided. */
+    private void add(int c, Listener listener) {
+        long pos = _length;
+        _positions[c][(int) (pos >>> 6) & _mask] |= 1L << pos;
+        _text[(int) pos & (_text.length - 1)] = c;
+        _length += 1;
+        if (_length >= _decided + 64 + _longest - 1) {
+            decide(listener);
+        }
+    }
+
+    /** Report to LISTENER which of the 64 offsets from _decided each crib
+     *  may lie at, given that the ciphertext has _length characters
+     *  and any more will not affect them, and then forget the
+     *  ciphertext at those offsets. */
+    private void decide(Listener listener) {
+        long base = _decided;
+        for (int c = 0; c < _cribs.length; c += 1) {
+            int[] crib = _cribs[c];
+            long ruledOut = 0;
+            for (int j = 0; j < crib.length; j += 1) {
+                long[] positions = _positions[crib[j]];
+                long pos = base + j;
+                int w = (int) (pos >>> 6);
+                int shift = (int) pos & 63;
+                long clash = positions[w & _mask] >>> shift;
+                if (shift != 0) {
+                    clash |= positions[(w + 1) & _mask] << (64 - shift);
+                }
+                ruledOut |= clash;
+            }
+            long possible = ~ruledOut;
+            long limit = _length - crib.length + 1 - base;
+            if (limit < 64) {
+                possible &= limit <= 0 ? 0 : (1L << limit) - 1;
+            }
+            while (possible != 0) {
+                listener.found(c, base + Long.numberOfTrailingZeros(possible));
+                possible &= possible - 1;
+            }
+        }
+        int w = (int) (base >>> 6) & _mask;
+        for (long pos = base; pos < base + 64 && pos < _length; pos += 1) {
+            _positions[_text[(int) pos & (_text.length - 1)]][w] = 0;
+        }
+        _decided = base + 64;
+    }
+
+    /** Character set of ciphertext files. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Alphabet of the ciphertext and cribs. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet indices of the characters of each crib. */
+    private final int[][] _cribs;
+
+    /** Length of the longest crib. */
+    private final int _longest;
+
+    /** For each alphabet index, a ring of bitsets of the positions in
+     *  the ciphertext at which it occurs: bit P % 64 of word
+     *  (P / 64) & _mask for position P. */
+    private final long[][] _positions;
+
+    /** Mask of word numbers giving indices into _positions. */
+    private final int _mask;
+
+    /** Alphabet index of the character at each position P of the
+     *  ciphertext that is still in _positions, at P % _text.length. */
+    private final int[] _text;
+
+    /** Number of characters of ciphertext read. */
+    private long _length;
+
+    /** Number of offsets decided: a multiple of 64. */
+    private long _decided;
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribFinder class.
+ *  @author Vikram Cherukuri
+ */
+public class CribFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random string of N characters of ALPHABET, using
+     *  RANDOM. */
+    private static String randomText(String alphabet, int n, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return the offsets found by a CribFinder for CRIBS, in ALPHABET,
+     *  in the ciphertext TEXT, as strings "CRIB OFFSET", in the order of
+     *  CRIBS and then of offsets. */
+    private static List<String> find(Alphabet alphabet, String text,
+                                     String... cribs) throws IOException {
+        List<String> result = new ArrayList<>();
+        new CribFinder(alphabet, cribs).find(
+            new StringReader(text),
+            (crib, offset) -> result.add(crib + " " + offset));
+        result.sort(Comparator.comparing((String s) -> s.split(" ")[0])
+                    .thenComparingLong(s -> Long.parseLong(s.split(" ")[1])));
+        return result;
+    }
+
+    /** Return the offsets in TEXT, with whitespace removed, at which
+     *  none of the characters of one of CRIBS clashes, in the form and
+     *  order of find. */
+    private static List<String> bruteForce(String text, String... cribs) {
+        text = text.replaceAll("\\s", "");
+        List<String> result = new ArrayList<>();
+        for (int c = 0; c < cribs.length; c += 1) {
+            for (int p = 0; p < text.length(); p += 1) {
+                boolean possible = p + cribs[c].length() <= text.length();
+                for (int j = 0; possible && j < cribs[c].length(); j += 1) {
+                    possible = text.charAt(p + j) != cribs[c].charAt(j);
+                }
+                if (possible) {
+                    result.add(c + " " + p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesBruteForce() throws IOException {
+        Random random = new Random(46);
+        Alphabet abc = new Alphabet("ABC");
+        for (int trial = 0; trial < 40; trial += 1) {
+            String text = randomText("ABC", random.nextInt(600), random);
+            String[] cribs = new String[1 + random.nextInt(4)];
+            for (int c = 0; c < cribs.length; c += 1) {
+                cribs[c] = randomText("ABC", 1 + random.nextInt(
+                    random.nextBoolean() ? 4 : 200), random);
+            }
+            StringBuilder spaced = new StringBuilder(text);
+            for (int i = spaced.length() - 5; i > 0; i -= 5) {
+                spaced.insert(i, random.nextBoolean() ? " " : "\n");
+            }
+            assertEquals(bruteForce(text, cribs),
+                         find(abc, spaced.toString(), cribs));
+        }
+        assertEquals(new ArrayList<String>(), find(abc, "AB", "ABC"));
+        assertEquals(new ArrayList<String>(), find(abc, "", "A"));
+    }
+
+    @Test
+    public void testEncryption() throws IOException {
+        Random random = new Random(47);
+        Machine m = navalMachine();
+        CribFinder.checkReflectors(m);
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(TR) (HQ)", UPPER));
+        String crib = "WETTERVORHERSAGE";
+        String plain = randomText(UPPER_STRING, 5000, random) + crib
+            + randomText(UPPER_STRING, 3000, random);
+        String cipher = m.convert(plain);
+        List<String> found = find(UPPER, cipher, crib, "X");
+        assertTrue(found.contains("0 5000"));
+        assertEquals(bruteForce(cipher, crib, "X"), found);
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        Alphabet abc = new Alphabet("ABC");
+        for (String[] cribs : new String[][] { { "" }, { "AD" } }) {
+            try {
+                new CribFinder(abc, cribs);
+                fail("bad crib accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            find(abc, "AB CD", "A");
+            fail("ciphertext outside the alphabet accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Machine m = new MachineConfig(new Scanner(
+            "ABC\n 2 1\n I MA (ABC)\n R R (AB)\n")).newMachine();
+        try {
+            CribFinder.checkReflectors(m);
+            fail("reflector with a fixed point accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
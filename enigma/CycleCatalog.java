@@ -0,0 +1,433 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristic cycle structures of a machine
+ *  configuration, in the manner of Rejewski.  For a machine at some
+ *  position, let A1, ..., A6 be the permutations it applies at its next
+ *  six steps.  The signature of the position is the cycle structure of
+ *  the products A1A4, A2A5, and A3A6, which does not depend on the
+ *  plugboard.  The catalog records the signature of every rotor order
+ *  and every starting position of the rotors other than the reflector,
+ *  with all rings at their 0 setting and no plugboard, in an index file
+ *  that maps each signature to the settings that produce it.
+ *
+ *  An index file holds, in the format of DataOutputStream: MAGIC and
+ *  VERSION; the alphabet; the number of rotor slots; the rotor orders,
+ *  as a count followed by the names of each order; the signatures, as a
+ *  count followed by each signature and its number of settings, sorted
+ *  by signature; and then the settings of each signature in turn, each
+ *  as the index of its rotor order and the index of its position,
+ *  counting positions in alphabet order with the rightmost rotor
+ *  fastest.
+ *  @author Vikram Cherukuri
+ */
+public final class CycleCatalog {
+
+    /** First int of an index file. */
+    static final int MAGIC = 0x454e4343;
+
+    /** Version of the index format. */
+    static final int VERSION = 1;
+
+    /** Build or search a catalog, as specified by ARGS, which has one
+     *  of the forms
+     *      [--jobs N] CONFIG INDEX
+     *      --lookup INDEX SIGNATURE
+     *  The first builds the catalog of configuration file CONFIG in the
+     *  file INDEX, using N threads (default: the number of processors).
+     *  The second prints the settings in INDEX that have SIGNATURE,
+     *  which is written as the cycle lengths of each of the three
+     *  products, largest first, separated by commas, with the products
+     *  separated by slashes (e.g., "13,13/10,10,3,3/12,12,1,1").  Each
+     *  setting is printed as a rotor order followed by the positions of
+     *  the rotors after the reflector.  Exits normally if there are no
+     *  errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("--lookup")) {
+                CycleCatalog catalog = new CycleCatalog(new File(args[1]));
+                for (String setting : catalog.lookup(args[2])) {
+                    System.out.println(setting);
+                }
+                return;
+            }
+            int jobs = Runtime.getRuntime().availableProcessors();
+            int k = 0;
+            if (args.length == 4 && args[0].equals("--jobs")) {
+                try {
+                    jobs = Integer.parseInt(args[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad number of jobs");
+                }
+                if (jobs < 1) {
+                    throw error("bad number of jobs");
+                }
+                k = 2;
+            } else if (args.length != 2) {
+                throw error("usage: java enigma.CycleCatalog [--jobs N] "
+                            + "CONFIG INDEX | --lookup INDEX SIGNATURE");
+            }
+            long start = System.nanoTime();
+            int[] sizes = build(MachineConfig.read(args[k]),
+                                new File(args[k + 1]), jobs);
+            System.out.printf("%d settings, %d signatures in %.3f s%n",
+                              sizes[0], sizes[1],
+                              (System.nanoTime() - start) * 1e-9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the signature of M at its current position, leaving M at
+     *  that position. */
+    static String signature(Machine m) {
+        int n = m.alphabet().size();
+        int[] start = positions(m);
+        int[] pos = start.clone();
+        int[][] steps = new int[6][n];
+        for (int[] step : steps) {
+            for (int x = 0; x < n; x += 1) {
+                place(m, pos);
+                step[x] = m.convert(x);
+            }
+            place(m, pos);
+            m.convert(0);
+            pos = positions(m);
+        }
+        place(m, start);
+        return cycles(steps[0], steps[3]) + "/" + cycles(steps[1], steps[4])
+            + "/" + cycles(steps[2], steps[5]);
+    }
+
+    /** Return the lengths of the cycles of the product of FIRST and
+     *  SECOND (applying FIRST first), largest first, separated by
+     *  commas. */
+    static String cycles(int[] first, int[] second) {
+        int[] lengths = IndexPermutation.of(first)
+            .then(IndexPermutation.of(second)).cycleType();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lengths.length; i += 1) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(lengths[i]);
+        }
+        return result.toString();
+    }
+
+    /** Write the catalog of CONFIG to INDEX, examining rotor orders on
+     *  JOBS threads at once.  Return the numbers of settings and of
+     *  distinct signatures. */
+    static int[] build(MachineConfig config, File index, int jobs) {
+        Machine proto = config.newMachine();
+        int slots = proto.numRotors() - 1;
+        long count = 1;
+        for (int i = 0; i < slots; i += 1) {
+            count *= proto.alphabet().size();
+            if (count > Integer.MAX_VALUE) {
+                throw error("too many positions to catalog");
+            }
+        }
+        List<String[]> orders = rotorOrders(proto);
+        if (count * orders.size() > Integer.MAX_VALUE) {
+            throw error("too many settings to catalog");
+        }
+        int positions = (int) count;
+
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        List<String> signatures = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<int[]>> scans = new ArrayList<>();
+        for (String[] order : orders) {
+            scans.add(pool.submit(() -> scan(config, order, positions,
+                                             ids, signatures)));
+        }
+        pool.shutdown();
+        int[][] found = new int[orders.size()][];
+        for (int k = 0; k < found.length; k += 1) {
+            try {
+                found[k] = scans.get(k).get();
+            } catch (ExecutionException excp) {
+                pool.shutdownNow();
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                }
+                throw error("catalog failed: %s", excp.getCause());
+            } catch (InterruptedException excp) {
+                pool.shutdownNow();
+                throw error("interrupted");
+            }
+        }
+
+        String[] sorted = signatures.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int[] rank = new int[sorted.length];
+        for (int r = 0; r < sorted.length; r += 1) {
+            rank[ids.get(sorted[r])] = r;
+        }
+        int[] counts = new int[sorted.length];
+        for (int[] f : found) {
+            for (int id : f) {
+                counts[rank[id]] += 1;
+            }
+        }
+        write(index, proto, orders, sorted, counts, found, rank);
+        return new int[] { orders.size() * positions, sorted.length };
+    }
+
+    /** Return the signature ids of each position of the machine made
+     *  from CONFIG with rotor order ORDER, whose rotors after the
+     *  reflector have POSITIONS possible positions, interning new
+     *  signatures in IDS and SIGNATURES. */
+    private static int[] scan(MachineConfig config, String[] order,
+                              int positions, Map<String, Integer> ids,
+                              List<String> signatures) {
+        Machine m = config.newMachine();
+        m.insertRotors(order);
+        m.setPlugboard(new Permutation("", m.alphabet()));
+        int n = m.alphabet().size();
+        int[] pos = new int[m.numRotors() - 1];
+        int[] result = new int[positions];
+        for (int p = 0; p < positions; p += 1) {
+            place(m, pos);
+            result[p] = ids.computeIfAbsent(signature(m), s -> {
+                synchronized (signatures) {
+                    signatures.add(s);
+                    return signatures.size() - 1;
+                }
+            });
+            for (int i = pos.length - 1; i >= 0; i -= 1) {
+                pos[i] += 1;
+                if (pos[i] < n) {
+                    break;
+                }
+                pos[i] = 0;
+            }
+        }
+        return result;
+    }
+
+    /** Write an index to FILE for machines like PROTO with rotor orders
+     *  ORDERS, whose settings have signatures SORTED, each with COUNTS
+     *  settings.  FOUND[K][P] is the id of the signature of order K at
+     *  position P, and RANK maps ids to indices in SORTED. */
+    private static void write(File file, Machine proto, List<String[]> orders,
+                              String[] sorted, int[] counts, int[][] found,
+                              int[] rank) {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file),
+                                          1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < proto.alphabet().size(); i += 1) {
+                chars.appendCodePoint(proto.alphabet().toCodePoint(i));
+            }
+            out.writeUTF(chars.toString());
+            out.writeInt(proto.numRotors());
+            out.writeInt(orders.size());
+            for (String[] order : orders) {
+                for (String name : order) {
+                    out.writeUTF(name);
+                }
+            }
+            out.writeInt(sorted.length);
+            for (int r = 0; r < sorted.length; r += 1) {
+                out.writeUTF(sorted[r]);
+                out.writeInt(counts[r]);
+            }
+
+            int[] next = new int[sorted.length];
+            for (int r = 1; r < sorted.length; r += 1) {
+                next[r] = next[r - 1] + counts[r - 1];
+            }
+            int total = next.length == 0 ? 0
+                : next[next.length - 1] + counts[counts.length - 1];
+            int[] orderOf = new int[total];
+            int[] positionOf = new int[total];
+            for (int k = 0; k < found.length; k += 1) {
+                for (int p = 0; p < found[k].length; p += 1) {
+                    int slot = next[rank[found[k][p]]]++;
+                    orderOf[slot] = k;
+                    positionOf[slot] = p;
+                }
+            }
+            for (int s = 0; s < total; s += 1) {
+                out.writeInt(orderOf[s]);
+                out.writeInt(positionOf[s]);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return every rotor order allowed for machines like PROTO: a
+     *  reflector, then distinct non-moving rotors, then distinct moving
+     *  rotors, as many as the slots and pawls allow. */
+    static List<String[]> rotorOrders(Machine proto) {
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (Rotor r : proto.allRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        int numFixed = proto.numRotors() - proto.numPawls() - 1;
+        List<String[]> result = new ArrayList<>();
+        for (String reflector : reflectors) {
+            String[] order = new String[proto.numRotors()];
+            order[0] = reflector;
+            fill(order, 1, 1 + numFixed, fixed, result);
+        }
+        List<String[]> complete = new ArrayList<>();
+        for (String[] order : result) {
+            fill(order, 1 + numFixed, order.length, moving, complete);
+        }
+        return complete;
+    }
+
+    /** Add to RESULT a copy of ORDER for each way of filling its slots
+     *  FROM .. TO-1 with distinct rotors named in NAMES. */
+    private static void fill(String[] order, int from, int to,
+                             List<String> names, List<String[]> result) {
+        if (from == to) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : names) {
+            if (!Arrays.asList(order).subList(0, from).contains(name)) {
+                order[from] = name;
+                fill(order, from + 1, to, names, result);
+            }
+        }
+    }
+
+    /** Return the positions of the rotors of M after the reflector. */
+    private static int[] positions(Machine m) {
+        Rotor[] rotors = m.rotors();
+        int[] result = new int[rotors.length - 1];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = rotors[i + 1].setting();
+        }
+        return result;
+    }
+
+    /** Set the rotors of M after the reflector to POS. */
+    private static void place(Machine m, int[] pos) {
+        Rotor[] rotors = m.rotors();
+        for (int i = 0; i < pos.length; i += 1) {
+            rotors[i + 1].set(pos[i]);
+        }
+    }
+
+    /** The catalog in index file FILE. */
+    CycleCatalog(File file) {
+        _file = file;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("%s is not a cycle catalog", file);
+            }
+            _alphabet = in.readUTF().codePoints().toArray();
+            int numRotors = in.readInt();
+            _orders = new String[in.readInt()];
+            for (int k = 0; k < _orders.length; k += 1) {
+                StringBuilder order = new StringBuilder();
+                for (int i = 0; i < numRotors; i += 1) {
+                    order.append(i == 0 ? "" : " ").append(in.readUTF());
+                }
+                _orders[k] = order.toString();
+            }
+            _slots = numRotors - 1;
+            _signatures = new String[in.readInt()];
+            _starts = new long[_signatures.length + 1];
+            for (int r = 0; r < _signatures.length; r += 1) {
+                _signatures[r] = in.readUTF();
+                _starts[r + 1] = _starts[r] + in.readInt();
+            }
+            _base = in.getFilePointer();
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the number of distinct signatures in this catalog. */
+    int size() {
+        return _signatures.length;
+    }
+
+    /** Return the settings with SIGNATURE, each as a rotor order
+     *  followed by the positions of the rotors after the reflector. */
+    List<String> lookup(String signature) {
+        List<String> result = new ArrayList<>();
+        int r = Arrays.binarySearch(_signatures, signature);
+        if (r < 0) {
+            return result;
+        }
+        int n = _alphabet.length;
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            in.seek(_base + 8 * _starts[r]);
+            for (long s = _starts[r]; s < _starts[r + 1]; s += 1) {
+                int order = in.readInt();
+                int p = in.readInt();
+                int[] pos = new int[_slots];
+                for (int i = _slots - 1; i >= 0; i -= 1) {
+                    pos[i] = _alphabet[p % n];
+                    p /= n;
+                }
+                result.add(_orders[order] + " "
+                           + new String(pos, 0, _slots));
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        return result;
+    }
+
+    /** The index file. */
+    private final File _file;
+
+    /** Characters of the alphabet. */
+    private final int[] _alphabet;
+
+    /** Number of rotors after the reflector. */
+    private final int _slots;
+
+    /** Rotor orders, as space-separated names. */
+    private final String[] _orders;
+
+    /** Signatures, sorted. */
+    private final String[] _signatures;
+
+    /** _starts[R] is the index of the first setting of _signatures[R],
+     *  and _starts[_signatures.length] is the number of settings. */
+    private final long[] _starts;
+
+    /** Offset in _file of the first setting. */
+    private final long _base;
+}
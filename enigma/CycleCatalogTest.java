@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Vikram Cherukuri
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A small configuration, with 2 reflectors, 3 moving rotors, and
+     *  3 rotor slots. */
+    private static final String CONFIG =
+        "ABCDEF\n3 2\n"
+        + " R1 R (AB) (CD) (EF)\n"
+        + " R2 R (AF) (BE) (CD)\n"
+        + " X MA (ABC) (DEF)\n"
+        + " Y MD (ADBFCE)\n"
+        + " Z MBE (AB) (CDE)\n";
+
+    @Test
+    public void testCycles() {
+        int[] identity = {0, 1, 2, 3, 4, 5};
+        int[] swaps = {1, 0, 3, 2, 5, 4};
+        assertEquals("1,1,1,1,1,1", CycleCatalog.cycles(swaps, swaps));
+        assertEquals("2,2,2", CycleCatalog.cycles(identity, swaps));
+        assertEquals("3,3",
+                     CycleCatalog.cycles(identity, new int[] {2, 0, 1,
+                                                              4, 5, 3}));
+    }
+
+    @Test
+    public void testBuildAndLookup() throws IOException {
+        MachineConfig config = new MachineConfig(new Scanner(CONFIG));
+        File index = File.createTempFile("catalog", ".idx");
+        try {
+            int[] sizes = CycleCatalog.build(config, index, 3);
+            assertEquals(2 * 3 * 2 * 36, sizes[0]);
+            CycleCatalog catalog = new CycleCatalog(index);
+            assertEquals(sizes[1], catalog.size());
+
+            Machine m = config.newMachine();
+            m.insertRotors(new String[] {"R2", "Z", "X"});
+            m.setPlugboard(new Permutation("(AE)", m.alphabet()));
+            m.setRotors("CF");
+            String sig = CycleCatalog.signature(m);
+            assertEquals(2, m.rotors()[1].setting());
+            assertEquals(5, m.rotors()[2].setting());
+            List<String> settings = catalog.lookup(sig);
+            assertTrue(settings.contains("R2 Z X CF"));
+            assertTrue(catalog.lookup("6/6/6").isEmpty());
+        } finally {
+            index.delete();
+        }
+    }
+
+}
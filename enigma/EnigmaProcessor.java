@@ -0,0 +1,437 @@
+package enigma;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive-streams stage that converts a stream of text chunks
+ *  through a Machine.  The text has the same form as the input to Main:
+ *  lines beginning with '*' are settings lines, which reconfigure the
+ *  machine as in Main.process, and other lines are messages, whose
+ *  converted characters are emitted in groups of five with one line
+ *  separator per line.  Chunks may divide lines, settings, and (for
+ *  ByteBuffer chunks) multi-byte characters anywhere; the machine's
+ *  state carries over from chunk to chunk.  Input chunks are either
+ *  CharBuffers or ByteBuffers, which are decoded with a given charset.
+ *  Each input chunk yields at most one output chunk, and one input chunk
+ *  is requested at a time, and only when the subscriber has demand, so
+ *  that memory use is bounded by the chunk size however long the stream.
+ *  @author Vikram Cherukuri
+ */
+class EnigmaProcessor implements Flow.Processor<Buffer, CharBuffer> {
+
+    /** Maximum length of a settings line. */
+    static final int MAX_SETTINGS = 1 << 16;
+
+    /** A processor that converts through MACHINE, decoding ByteBuffer
+     *  chunks with CHARSET. */
+    EnigmaProcessor(Machine machine, Charset charset) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _decoder = charset.newDecoder();
+        _newline = System.lineSeparator();
+    }
+
+    /** A processor that converts through MACHINE, decoding ByteBuffer
+     *  chunks with the default charset. */
+    EnigmaProcessor(Machine machine) {
+        this(machine, Charset.defaultCharset());
+    }
+
+    /* Publisher side. */
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_downstream == null) {
+                _downstream = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "EnigmaProcessor allows only one subscriber"));
+            return;
+        }
+        _downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requestOutput(n);
+            }
+
+            @Override
+            public void cancel() {
+                cancelOutput();
+            }
+        });
+        drain();
+    }
+
+    /** Add N to the demand of my subscriber. */
+    private void requestOutput(long n) {
+        synchronized (this) {
+            if (n <= 0) {
+                _error = new IllegalArgumentException(
+                    "non-positive request");
+            } else {
+                _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+            }
+        }
+        drain();
+    }
+
+    /** Stop all signals to my subscriber, and cancel my input. */
+    private void cancelOutput() {
+        Flow.Subscription upstream;
+        synchronized (this) {
+            _terminated = true;
+            upstream = _upstream;
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    /* Subscriber side. */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        boolean duplicate;
+        synchronized (this) {
+            duplicate = _upstream != null;
+            if (!duplicate) {
+                _upstream = subscription;
+            }
+        }
+        if (duplicate) {
+            subscription.cancel();
+        } else {
+            drain();
+        }
+    }
+
+    @Override
+    public void onNext(Buffer item) {
+        CharBuffer out = null;
+        RuntimeException err = null;
+        try {
+            out = convert(decode(item));
+        } catch (RuntimeException excp) {
+            err = excp;
+        }
+        Flow.Subscription upstream = null;
+        synchronized (this) {
+            _requested = false;
+            if (err != null) {
+                _error = err;
+                upstream = _upstream;
+            } else if (out.hasRemaining()) {
+                _pending = out;
+            }
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            _error = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        CharBuffer out = null;
+        RuntimeException err = null;
+        try {
+            out = finish();
+        } catch (RuntimeException excp) {
+            err = excp;
+        }
+        synchronized (this) {
+            if (err != null) {
+                _error = err;
+            } else if (out.hasRemaining()) {
+                _pending = _pending == null ? out : concat(_pending, out);
+            }
+            _done = true;
+        }
+        drain();
+    }
+
+    /** Deliver whatever signals my state allows to my subscriber and
+     *  request more input when there is demand for it.  Calls made
+     *  while another call is active return at once, since the active
+     *  call rechecks the state after each signal. */
+    private void drain() {
+        synchronized (this) {
+            if (_draining) {
+                return;
+            }
+            _draining = true;
+        }
+        while (true) {
+            CharBuffer out = null;
+            Throwable err = null;
+            boolean complete = false;
+            Flow.Subscription request = null;
+            synchronized (this) {
+                if (_terminated || _downstream == null) {
+                    _draining = false;
+                    return;
+                } else if (_pending != null && _demand > 0) {
+                    out = _pending;
+                    _pending = null;
+                    _demand -= 1;
+                } else if (_error != null) {
+                    err = _error;
+                    _terminated = true;
+                } else if (_pending == null && _done) {
+                    complete = true;
+                    _terminated = true;
+                } else if (_pending == null && _demand > 0 && !_requested
+                           && _upstream != null) {
+                    _requested = true;
+                    request = _upstream;
+                } else {
+                    _draining = false;
+                    return;
+                }
+            }
+            if (out != null) {
+                _downstream.onNext(out);
+            } else if (err != null) {
+                _downstream.onError(err);
+            } else if (complete) {
+                _downstream.onComplete();
+            } else if (request != null) {
+                request.request(1);
+            }
+        }
+    }
+
+    /* Conversion. */
+
+    /** Return the characters in ITEM, which is a CharBuffer or a
+     *  ByteBuffer, consuming them. */
+    private CharBuffer decode(Buffer item) {
+        if (item instanceof CharBuffer) {
+            return (CharBuffer) item;
+        } else if (!(item instanceof ByteBuffer)) {
+            throw error("unsupported chunk type %s", item.getClass());
+        }
+        ByteBuffer in = (ByteBuffer) item;
+        if (_carry != null) {
+            in = ByteBuffer.allocate(_carry.remaining() + in.remaining())
+                .put(_carry).put(in).flip();
+            _carry = null;
+        }
+        CharBuffer chars = CharBuffer.allocate(
+            (int) (in.remaining() * _decoder.maxCharsPerByte()) + 1);
+        CoderResult result = _decoder.decode(in, chars, false);
+        if (result.isError()) {
+            throw error("malformed input");
+        }
+        if (in.hasRemaining()) {
+            _carry = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        }
+        return chars.flip();
+    }
+
+    /** Return the result of converting the characters in IN, consuming
+     *  them.  Each character of IN yields at most three of output: a
+     *  group separator and a supplementary code point, or a line
+     *  separator. */
+    private CharBuffer convert(CharBuffer in) {
+        CharBuffer out = CharBuffer.allocate(3 * in.remaining() + 1
+                                             + _newline.length());
+        while (in.hasRemaining()) {
+            char ch = in.get();
+            if (_high != 0 && !Character.isLowSurrogate(ch)) {
+                throw error("malformed input");
+            }
+            if (_lineStart) {
+                startLine(ch);
+            }
+            if (ch == '\n') {
+                endLine(out);
+            } else if (_inSettings) {
+                if (_settings.length() >= MAX_SETTINGS) {
+                    throw error("settings line too long");
+                }
+                _settings.append(ch);
+            } else if (!isWhitespace(ch)) {
+                if (_count == AsciiKernel.GROUP) {
+                    out.put(' ');
+                    _count = 0;
+                }
+                int cp = ch;
+                if (Character.isHighSurrogate(ch)) {
+                    _high = ch;
+                    continue;
+                } else if (_high != 0) {
+                    cp = Character.toCodePoint(_high, ch);
+                }
+                _high = 0;
+                int c = _alphabet.toIndex(cp);
+                cp = _alphabet.toCodePoint(_machine.convert(c));
+                if (Character.isBmpCodePoint(cp)) {
+                    out.put((char) cp);
+                } else {
+                    out.put(Character.highSurrogate(cp))
+                        .put(Character.lowSurrogate(cp));
+                }
+                _count += 1;
+            }
+        }
+        return out.flip();
+    }
+
+    /** Return the output ending the stream. */
+    private CharBuffer finish() {
+        if (_carry != null || _high != 0) {
+            throw error("malformed input");
+        }
+        if (!_configured && _nextSettings == null && !_inSettings) {
+            throw error("input must contain settings");
+        }
+        CharBuffer out = CharBuffer.allocate(_newline.length());
+        if (!_lineStart && !_inSettings) {
+            endLine(out);
+        }
+        return out.flip();
+    }
+
+    /** Begin a new line whose first character is CH, first applying
+     *  any settings line that precedes it. */
+    private void startLine(char ch) {
+        _lineStart = false;
+        if (_nextSettings != null) {
+            Main.setUp(_machine, _nextSettings);
+            _nextSettings = null;
+            _configured = true;
+        }
+        _inSettings = ch == '*';
+        if (!_inSettings && !_configured) {
+            throw error("input must contain settings");
+        }
+        _count = 0;
+    }
+
+    /** End the current line, writing any output it requires to OUT. */
+    private void endLine(CharBuffer out) {
+        if (_inSettings) {
+            int n = _settings.length();
+            if (n > 0 && _settings.charAt(n - 1) == '\r') {
+                _settings.setLength(n - 1);
+            }
+            _nextSettings = _settings.toString();
+            _settings.setLength(0);
+            _inSettings = false;
+        } else {
+            out.put(_newline);
+        }
+        _lineStart = true;
+    }
+
+    /** Return true iff CH is whitespace as matched by "\\s". */
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\f'
+            || ch == '\u000b';
+    }
+
+    /** Return the contents of A followed by those of B. */
+    private static CharBuffer concat(CharBuffer a, CharBuffer b) {
+        return CharBuffer.allocate(a.remaining() + b.remaining())
+            .put(a).put(b).flip();
+    }
+
+    /** The machine I convert through. */
+    private final Machine _machine;
+
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Decoder for ByteBuffer chunks. */
+    private final CharsetDecoder _decoder;
+
+    /** Line separator ending each output line. */
+    private final String _newline;
+
+    /** Undecoded bytes at the end of the last ByteBuffer chunk, or
+     *  null. */
+    private ByteBuffer _carry;
+
+    /** True iff the next character begins a line. */
+    private boolean _lineStart = true;
+
+    /** True iff the current line is a settings line. */
+    private boolean _inSettings;
+
+    /** Text of the current settings line so far. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** A complete settings line to apply at the start of the next line,
+     *  or null. */
+    private String _nextSettings;
+
+    /** True once _machine has been set up. */
+    private boolean _configured;
+
+    /** Number of characters in the current output group. */
+    private int _count;
+
+    /** The first half of a surrogate pair whose second half has not yet
+     *  arrived, or 0. */
+    private char _high;
+
+    /** My subscriber, or null. */
+    private Flow.Subscriber<? super CharBuffer> _downstream;
+
+    /** Subscription to my input, or null. */
+    private Flow.Subscription _upstream;
+
+    /** Number of chunks my subscriber has requested and not received. */
+    private long _demand;
+
+    /** True iff a chunk has been requested from my input and not yet
+     *  received. */
+    private boolean _requested;
+
+    /** Converted chunk awaiting demand, or null. */
+    private CharBuffer _pending;
+
+    /** True once my input has completed. */
+    private boolean _done;
+
+    /** Error to deliver to my subscriber, or null. */
+    private Throwable _error;
+
+    /** True once my subscriber has been sent a terminal signal or has
+     *  cancelled. */
+    private boolean _terminated;
+
+    /** True while drain() is active. */
+    private boolean _draining;
+}
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Scanner;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Vikram Cherukuri
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Line separator of converted output. */
+    private static final String NL = System.lineSeparator();
+
+    /** Input containing two settings lines. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\r\n"
+        + "FROM HIS SHOULDER\tHIAWATHA\n"
+        + "\n"
+        + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "QVPQS OKOIL PUBKJ ZPISF XDW";
+
+    /** Expected conversion of INPUT. */
+    private static final String OUTPUT =
+        "QVPQS OKOIL PUBKJ ZPISF XDW" + NL + NL
+        + "FROMH ISSHO ULDER HIAWA THA" + NL;
+
+    /** A subscriber that records what it receives, requesting one chunk
+     *  at a time. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            text.append(item);
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** Subscription to the processor. */
+        private Flow.Subscription _subscription;
+        /** Text received. */
+        final StringBuilder text = new StringBuilder();
+        /** Error received, or null. */
+        Throwable error;
+        /** True once completed. */
+        boolean complete;
+    }
+
+    /** A configuration whose alphabet mixes BMP and supplementary
+     *  characters, whose reflector maps A and B to the supplementary
+     *  characters U+1D400 and U+1D401, and whose moving rotor leaves
+     *  every character unchanged. */
+    private static final String MIXED_CONFIG =
+        "AB\uD835\uDC00\uD835\uDC01\n 2 1\n"
+        + " R R (A\uD835\uDC00) (B\uD835\uDC01)\n M MA (A)\n";
+
+    /** Publish CHUNKS through a new processor and return the collector
+     *  of its output. */
+    private Collector run(Buffer... chunks) {
+        return run(navalMachine(), chunks);
+    }
+
+    /** Publish CHUNKS through a new processor converting through M and
+     *  return the collector of its output. */
+    private Collector run(Machine m, Buffer... chunks) {
+        EnigmaProcessor proc = new EnigmaProcessor(m,
+                                                   StandardCharsets.UTF_8);
+        Collector result = new Collector();
+        proc.subscribe(result);
+        try (SubmissionPublisher<Buffer> pub =
+             new SubmissionPublisher<>(Runnable::run, 4)) {
+            pub.subscribe(proc);
+            for (Buffer b : chunks) {
+                pub.submit(b);
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testWholeInput() {
+        Collector c = run(CharBuffer.wrap(INPUT));
+        assertNull(c.error);
+        assertTrue(c.complete);
+        assertEquals(OUTPUT, c.text.toString());
+    }
+
+    @Test
+    public void testAllSplits() {
+        for (int k = 0; k <= INPUT.length(); k += 1) {
+            Collector c = run(CharBuffer.wrap(INPUT.substring(0, k)),
+                              CharBuffer.wrap(INPUT.substring(k)));
+            assertEquals("split at " + k, OUTPUT, c.text.toString());
+        }
+    }
+
+    @Test
+    public void testByteChunks() {
+        byte[] bytes = INPUT.getBytes(StandardCharsets.UTF_8);
+        Buffer[] chunks = new Buffer[bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            chunks[i] = ByteBuffer.wrap(bytes, i, 1);
+        }
+        Collector c = run(chunks);
+        assertTrue(c.complete);
+        assertEquals(OUTPUT, c.text.toString());
+    }
+
+    @Test
+    public void testErrors() {
+        Collector c = run(CharBuffer.wrap("HELLO\n"));
+        assertTrue(c.error instanceof EnigmaException);
+        c = run(CharBuffer.wrap(INPUT + "\nHELLO, WORLD\n"));
+        assertTrue(c.error instanceof EnigmaException);
+        assertFalse(c.complete);
+    }
+
+    @Test
+    public void testSupplementary() {
+        String a = "\uD835\uDC00", b = "\uD835\uDC01";
+        Machine m = new MachineConfig(new Scanner(MIXED_CONFIG)).newMachine();
+        Collector c = run(m, CharBuffer.wrap("* R M A\n"),
+                          CharBuffer.wrap("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+        assertNull(c.error);
+        String group = a + a + a + a + a;
+        assertEquals(group + " " + group + " " + group + " " + group + " "
+                     + group + " " + group + NL, c.text.toString());
+
+        m = new MachineConfig(new Scanner(MIXED_CONFIG)).newMachine();
+        c = run(m, CharBuffer.wrap("* R M A\nB" + a + "\uD835"),
+                CharBuffer.wrap("\uDC01AB" + b + "\n"));
+        assertNull(c.error);
+        assertEquals(b + "AB" + a + b + " B" + NL, c.text.toString());
+    }
+
+    @Test
+    public void testLoneSurrogates() {
+        String[] bad = {
+            "\uD835A\n", "\uD835\n\uDC00\n", "A\uD835 \uDC00\n",
+            "\uD835\t\uDC00\n", "\uD835\uD835\uDC00\n", "AB\uD835",
+        };
+        for (String text : bad) {
+            Machine m =
+                new MachineConfig(new Scanner(MIXED_CONFIG)).newMachine();
+            Collector c = run(m, CharBuffer.wrap("* R M A\n" + text));
+            assertTrue(msg("testLoneSurrogates", "accepted %s", text),
+                       c.error instanceof EnigmaException);
+            assertFalse(c.complete);
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** An executor for many concurrent conversions of very different lengths.
+ *  Each job converts a message, given as alphabet indices, through its
+ *  own Machine, CHUNK characters at a time.  After each chunk the job is
+ *  queued again to resume where it stopped, its rotor state carried over
+ *  in its machine, so that chunks of long jobs take turns with short
+ *  jobs instead of holding a thread until done.  Each worker thread has
+ *  its own deque of work, taking from its head and, when it is empty,
+ *  stealing from the tails of the others'.  Where new jobs and resumed
+ *  jobs are queued is set by a Fairness policy.  The scheduler records
+ *  the latency of each job, from submission to completion, by size
+ *  class, the number of decimal digits of its length.
+ *  @author Vikram Cherukuri
+ */
+final class FairScheduler {
+
+    /** Where jobs are queued on their worker's deque. */
+    enum Fairness {
+        /** A job runs to completion once started, as on a plain thread
+         *  pool. */
+        NONE(false, true),
+        /** Chunks of all jobs take turns in order of arrival. */
+        ROUND_ROBIN(false, false),
+        /** Jobs no longer than a chunk go ahead of all waiting chunks of
+         *  longer jobs, which take turns among themselves. */
+        SHORT_FIRST(true, false);
+
+        /** A policy that queues short new jobs at the head of a deque iff
+         *  SHORTAHEAD, and resumed jobs at the head iff RESUMEAHEAD. */
+        Fairness(boolean shortAhead, boolean resumeAhead) {
+            _shortAhead = shortAhead;
+            _resumeAhead = resumeAhead;
+        }
+
+        /** True iff new jobs no longer than a chunk go to the head. */
+        private final boolean _shortAhead;
+        /** True iff resumed jobs go to the head. */
+        private final boolean _resumeAhead;
+    }
+
+    /** Number of size classes: lengths of up to 10 decimal digits. */
+    static final int SIZE_CLASSES = 11;
+
+    /** A scheduler running jobs on THREADS threads in chunks of CHUNK
+     *  characters, queued according to FAIRNESS. */
+    FairScheduler(int threads, int chunk, Fairness fairness) {
+        if (threads < 1 || chunk < 1) {
+            throw error("bad scheduler parameters");
+        }
+        _chunk = chunk;
+        _fairness = fairness;
+        _deques = new ArrayList<>(threads);
+        _workers = new Thread[threads];
+        for (int k = 0; k < threads; k += 1) {
+            _deques.add(new ConcurrentLinkedDeque<>());
+        }
+        for (int c = 0; c < SIZE_CLASSES; c += 1) {
+            _latencies[c] = new long[16];
+        }
+        for (int k = 0; k < threads; k += 1) {
+            int self = k;
+            _workers[k] = new Thread(() -> work(self),
+                                     "enigma-scheduler-" + k);
+            _workers[k].setDaemon(true);
+            _workers[k].start();
+        }
+    }
+
+    /** Convert MESSAGE, a sequence of indices in the alphabet of
+     *  MACHINE, in place through MACHINE, which no other job or thread
+     *  may use until it is done.  Return a future completed with
+     *  MESSAGE once it is converted, or with the exception thrown by
+     *  MACHINE. */
+    CompletableFuture<int[]> submit(Machine machine, int[] message) {
+        Job job = new Job(machine, message);
+        synchronized (this) {
+            if (_shutdown) {
+                throw error("scheduler is shut down");
+            }
+            int k = Math.floorMod(_next.getAndIncrement(), _deques.size());
+            enqueue(k, job, _fairness._shortAhead
+                    && message.length <= _chunk);
+        }
+        return job._result;
+    }
+
+    /** Finish all jobs submitted so far, then stop my threads.  No more
+     *  jobs may be submitted.  An interrupt does not end the wait for my
+     *  threads, but the caller's interrupt status is restored after it. */
+    void shutdown() {
+        synchronized (this) {
+            if (_shutdown) {
+                return;
+            }
+            _shutdown = true;
+        }
+        _pending.release(_workers.length);
+        boolean interrupted = false;
+        for (Thread worker : _workers) {
+            boolean done = false;
+            while (!done) {
+                try {
+                    worker.join();
+                    done = true;
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Return the number of jobs of size class SIZECLASS completed so
+     *  far. */
+    int completed(int sizeClass) {
+        synchronized (_latencies) {
+            return _counts[sizeClass];
+        }
+    }
+
+    /** Return the least latency, in nanoseconds, not exceeded by
+     *  PERCENT percent of the completed jobs of size class SIZECLASS,
+     *  where 0 < PERCENT <= 100, or -1 if none have completed. */
+    long latency(int sizeClass, double percent) {
+        long[] sorted;
+        synchronized (_latencies) {
+            sorted = Arrays.copyOf(_latencies[sizeClass],
+                                   _counts[sizeClass]);
+        }
+        if (sorted.length == 0) {
+            return -1;
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+    }
+
+    /** Return a table of the 50th, 90th, 99th and 100th percentile
+     *  latencies, in microseconds, of each size class with completed
+     *  jobs. */
+    String latencyReport() {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < SIZE_CLASSES; c += 1) {
+            if (completed(c) > 0) {
+                result.append(String.format(
+                    "<1e%-2d jobs %8d p50 %10d p90 %10d p99 %10d max %10d"
+                    + " us%n", c, completed(c), latency(c, 50) / 1000,
+                    latency(c, 90) / 1000, latency(c, 99) / 1000,
+                    latency(c, 100) / 1000));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the size class of a job of LENGTH characters. */
+    static int sizeClass(int length) {
+        int result = 0;
+        for (long limit = 1; length >= limit; limit *= 10) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Queue JOB on deque K, at its head iff AHEAD. */
+    private void enqueue(int k, Job job, boolean ahead) {
+        if (ahead) {
+            _deques.get(k).addFirst(job);
+        } else {
+            _deques.get(k).addLast(job);
+        }
+        _pending.release();
+    }
+
+    /** Body of worker SELF: run a chunk of one job at a time, from the
+     *  head of my deque or the tail of another's, until shut down with
+     *  no work left. */
+    private void work(int self) {
+        while (true) {
+            _pending.acquireUninterruptibly();
+            Job job = take(self);
+            if (job == null) {
+                return;
+            }
+            if (job.step(_chunk)) {
+                record(job);
+                job.finish();
+            } else {
+                enqueue(self, job, _fairness._resumeAhead);
+            }
+        }
+    }
+
+    /** Return a job from the head of deque SELF or the tail of another,
+     *  or null if there are none and I am shut down.  There is a job
+     *  for each permit acquired from _pending beyond those released by
+     *  shutdown(). */
+    private Job take(int self) {
+        while (true) {
+            Job job = _deques.get(self).pollFirst();
+            for (int i = 1; job == null && i < _deques.size(); i += 1) {
+                job = _deques.get((self + i) % _deques.size()).pollLast();
+            }
+            if (job != null) {
+                return job;
+            }
+            if (_shutdown) {
+                return null;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Record the latency of JOB, now completed. */
+    private void record(Job job) {
+        long latency = System.nanoTime() - job._submitted;
+        int c = sizeClass(job._message.length);
+        synchronized (_latencies) {
+            if (_counts[c] == _latencies[c].length) {
+                _latencies[c] = Arrays.copyOf(_latencies[c], 2 * _counts[c]);
+            }
+            _latencies[c][_counts[c]] = latency;
+            _counts[c] += 1;
+        }
+    }
+
+    /** A submitted conversion and its progress. */
+    private static final class Job {
+
+        /** A job converting MESSAGE through MACHINE. */
+        Job(Machine machine, int[] message) {
+            _machine = machine;
+            _message = message;
+            _submitted = System.nanoTime();
+        }
+
+        /** Convert up to CHUNK more characters of my message, returning
+         *  true iff I am now done, having converted it all or failed. */
+        boolean step(int chunk) {
+            try {
+                int end = (int) Math.min(_message.length,
+                                         (long) _pos + chunk);
+                _machine.convert(_message, _pos, end);
+                _pos = end;
+                return end == _message.length;
+            } catch (RuntimeException excp) {
+                _error = excp;
+                return true;
+            }
+        }
+
+        /** Complete my future, once step() has returned true. */
+        void finish() {
+            if (_error == null) {
+                _result.complete(_message);
+            } else {
+                _result.completeExceptionally(_error);
+            }
+        }
+
+        /** Machine converting my message. */
+        private final Machine _machine;
+        /** Message converted in place. */
+        private final int[] _message;
+        /** Position of the next character of _message to convert. */
+        private int _pos;
+        /** Exception that ended my conversion, or null. */
+        private RuntimeException _error;
+        /** Time of submission, from System.nanoTime. */
+        private final long _submitted;
+        /** Completed when I am. */
+        private final CompletableFuture<int[]> _result =
+            new CompletableFuture<>();
+    }
+
+    /** Number of characters converted per turn. */
+    private final int _chunk;
+
+    /** Where jobs are queued. */
+    private final Fairness _fairness;
+
+    /** Deque of waiting jobs of each worker. */
+    private final List<ConcurrentLinkedDeque<Job>> _deques;
+
+    /** My worker threads. */
+    private final Thread[] _workers;
+
+    /** One permit for each queued job, and one for each worker once I
+     *  am shut down. */
+    private final Semaphore _pending = new Semaphore(0);
+
+    /** Counter choosing the deque of each new job. */
+    private final AtomicInteger _next = new AtomicInteger();
+
+    /** True once shutdown() has been called. */
+    private volatile boolean _shutdown;
+
+    /** Latencies of completed jobs in nanoseconds, by size class, the
+     *  first _counts[c] of _latencies[c] being in use. */
+    private final long[][] _latencies = new long[SIZE_CLASSES][];
+
+    /** Number of completed jobs by size class. */
+    private final int[] _counts = new int[SIZE_CLASSES];
+}
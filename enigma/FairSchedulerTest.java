@@ -0,0 +1,171 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the FairScheduler class.
+ *  @author Vikram Cherukuri
+ */
+public class FairSchedulerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with rotors B, Beta, III, IV, I at SETTING. */
+    private static Machine newMachine(String setting) {
+        return navalMachine("* B Beta III IV I " + setting + " (TR)");
+    }
+
+    /** Return a random setting, using RANDOM. */
+    private static String randomSetting(Random random) {
+        char[] result = new char[4];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    /** Return MESSAGE converted through a new machine at SETTING. */
+    private static int[] convert(String setting, int[] message) {
+        Machine m = newMachine(setting);
+        int[] result = new int[message.length];
+        for (int i = 0; i < message.length; i += 1) {
+            result[i] = m.convert(message[i]);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testResults() throws Exception {
+        Random random = new Random(45);
+        for (FairScheduler.Fairness fairness
+                 : FairScheduler.Fairness.values()) {
+            FairScheduler scheduler =
+                new FairScheduler(3, 1 + random.nextInt(500), fairness);
+            List<int[]> expected = new ArrayList<>();
+            List<CompletableFuture<int[]>> results = new ArrayList<>();
+            for (int j = 0; j < 60; j += 1) {
+                String setting = randomSetting(random);
+                int[] message = randomMessage(
+                    random.nextInt(10) == 0 ? random.nextInt(50000)
+                    : random.nextInt(200), random);
+                expected.add(convert(setting, message));
+                results.add(scheduler.submit(newMachine(setting), message));
+            }
+            for (int j = 0; j < expected.size(); j += 1) {
+                assertArrayEquals(expected.get(j), results.get(j).get());
+            }
+            scheduler.shutdown();
+            int total = 0;
+            for (int c = 0; c < FairScheduler.SIZE_CLASSES; c += 1) {
+                total += scheduler.completed(c);
+            }
+            assertEquals(expected.size(), total);
+        }
+    }
+
+    @Test
+    public void testFairness() throws Exception {
+        Random random = new Random(46);
+        for (FairScheduler.Fairness fairness
+                 : FairScheduler.Fairness.values()) {
+            FairScheduler scheduler = new FairScheduler(1, 256, fairness);
+            CompletableFuture<int[]> large = scheduler.submit(
+                newMachine("AXLE"), randomMessage(2_000_000, random));
+            List<CompletableFuture<int[]>> small = new ArrayList<>();
+            for (int j = 0; j < 20; j += 1) {
+                small.add(scheduler.submit(newMachine("AXLE"),
+                                           randomMessage(100, random)));
+            }
+            for (CompletableFuture<int[]> job : small) {
+                job.get();
+                assertEquals(fairness == FairScheduler.Fairness.NONE,
+                             large.isDone());
+            }
+            scheduler.shutdown();
+            assertTrue(large.isDone());
+            assertTrue(scheduler.latency(3, 100)
+                       < scheduler.latency(7, 50)
+                       || fairness == FairScheduler.Fairness.NONE);
+        }
+    }
+
+    @Test
+    public void testLatencies() throws Exception {
+        assertEquals(0, FairScheduler.sizeClass(0));
+        assertEquals(1, FairScheduler.sizeClass(9));
+        assertEquals(2, FairScheduler.sizeClass(10));
+        assertEquals(10, FairScheduler.sizeClass(Integer.MAX_VALUE));
+        Random random = new Random(47);
+        FairScheduler scheduler =
+            new FairScheduler(2, 100, FairScheduler.Fairness.SHORT_FIRST);
+        assertEquals(-1, scheduler.latency(2, 50));
+        for (int j = 0; j < 100; j += 1) {
+            scheduler.submit(newMachine("AXLE"),
+                             randomMessage(10 + random.nextInt(90), random));
+        }
+        scheduler.shutdown();
+        assertEquals(100, scheduler.completed(2));
+        long p50 = scheduler.latency(2, 50), p99 = scheduler.latency(2, 99);
+        assertTrue(0 < p50 && p50 <= p99
+                   && p99 <= scheduler.latency(2, 100));
+        assertTrue(scheduler.latencyReport().startsWith("<1e2  jobs"));
+        try {
+            scheduler.submit(newMachine("AXLE"), new int[1]);
+            fail("job accepted after shutdown");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testInterrupt() {
+        Random random = new Random(48);
+        FairScheduler scheduler =
+            new FairScheduler(2, 100, FairScheduler.Fairness.ROUND_ROBIN);
+        List<CompletableFuture<int[]>> results = new ArrayList<>();
+        for (int j = 0; j < 20; j += 1) {
+            results.add(scheduler.submit(newMachine(randomSetting(random)),
+                                         randomMessage(5000, random)));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            scheduler.shutdown();
+            for (CompletableFuture<int[]> result : results) {
+                assertTrue(result.isDone());
+            }
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testError() throws InterruptedException {
+        FairScheduler scheduler =
+            new FairScheduler(2, 10, FairScheduler.Fairness.ROUND_ROBIN);
+        CompletableFuture<int[]> bad =
+            scheduler.submit(navalMachine(), new int[] { 1, 2, 3 });
+        try {
+            bad.get();
+            fail("converted through a machine without rotors");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof RuntimeException);
+        }
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,289 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable permutation of the integers 0 .. size()-1, held as an
+ *  array, with the operations of the permutation group: composition,
+ *  inverse, powers, and decomposition into cycles.  Each takes time
+ *  proportional to size().  Where Permutation describes one rotor's
+ *  wiring in terms of an alphabet's characters, an IndexPermutation is
+ *  the value such wirings and whole machines compute on indices, and the
+ *  two convert to each other directly (see of(Permutation) and
+ *  toPermutation).
+ *  @author Vikram Cherukuri
+ */
+final class IndexPermutation {
+
+    /** The permutation that maps each I to MAP[I], which I take over;
+     *  MAP must be a permutation. */
+    private IndexPermutation(int[] map) {
+        _map = map;
+    }
+
+    /** The permutation that maps each I to MAP[I] and whose inverse maps
+     *  each I to INVERSE[I], both of which I take over. */
+    private IndexPermutation(int[] map, int[] inverse) {
+        _map = map;
+        _inverse = inverse;
+    }
+
+    /** Return the permutation that maps each I to MAP[I], which must
+     *  contain each of 0 .. MAP.length-1 exactly once. */
+    static IndexPermutation of(int... map) {
+        return new IndexPermutation(checked(map.clone()));
+    }
+
+    /** Return MAP after checking that it contains each of
+     *  0 .. MAP.length-1 exactly once. */
+    private static int[] checked(int[] map) {
+        boolean[] seen = new boolean[map.length];
+        for (int y : map) {
+            if (y < 0 || y >= map.length || seen[y]) {
+                throw error("not a permutation");
+            }
+            seen[y] = true;
+        }
+        return map;
+    }
+
+    /** Return the mapping of indices made by PERM, which must be one to
+     *  one. */
+    static IndexPermutation of(Permutation perm) {
+        return new IndexPermutation(checked(perm.toArray()));
+    }
+
+    /** Return the identity permutation of 0 .. N-1. */
+    static IndexPermutation identity(int n) {
+        int[] map = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            map[i] = i;
+        }
+        return new IndexPermutation(map);
+    }
+
+    /** Return the Permutation of the characters of ALPHABET, which must
+     *  have size() characters, whose indices I map. */
+    Permutation toPermutation(Alphabet alphabet) {
+        return new Permutation(this, alphabet);
+    }
+
+    /** Return the number of integers I permute. */
+    int size() {
+        return _map.length;
+    }
+
+    /** Return the image of X under me. */
+    int apply(int x) {
+        return _map[x];
+    }
+
+    /** Return the image of Y under my inverse. */
+    int invert(int y) {
+        return inverseMap()[y];
+    }
+
+    /** Return a copy of my mapping: the image of each I is at index I. */
+    int[] toArray() {
+        return _map.clone();
+    }
+
+    /** Return my inverse. */
+    IndexPermutation inverse() {
+        return new IndexPermutation(inverseMap(), _map);
+    }
+
+    /** Return the mapping of my inverse, computing it if need be. */
+    private int[] inverseMap() {
+        int[] result = _inverse;
+        if (result == null) {
+            result = new int[_map.length];
+            for (int i = 0; i < _map.length; i += 1) {
+                result[_map[i]] = i;
+            }
+            _inverse = result;
+        }
+        return result;
+    }
+
+    /** Return the composition of me with FIRST: the permutation that
+     *  applies FIRST and then me, which must have the same size. */
+    IndexPermutation compose(IndexPermutation first) {
+        checkSize(first);
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _map[first._map[i]];
+        }
+        return new IndexPermutation(result);
+    }
+
+    /** Return the permutation that applies me and then NEXT, which must
+     *  have the same size. */
+    IndexPermutation then(IndexPermutation next) {
+        return next.compose(this);
+    }
+
+    /** Return me applied K times, where a negative K applies my inverse
+     *  -K times. */
+    IndexPermutation power(long k) {
+        int[] result = new int[size()];
+        int[] cycle = new int[size()];
+        boolean[] seen = new boolean[size()];
+        for (int x = 0; x < result.length; x += 1) {
+            int len = 0;
+            for (int y = x; !seen[y]; y = _map[y]) {
+                seen[y] = true;
+                cycle[len] = y;
+                len += 1;
+            }
+            if (len > 0) {
+                int shift = (int) Math.floorMod(k, (long) len);
+                for (int j = 0; j < len; j += 1) {
+                    result[cycle[j]] = cycle[(j + shift) % len];
+                }
+            }
+        }
+        return new IndexPermutation(result);
+    }
+
+    /** Return my cycles, including those of length 1, each starting with
+     *  its least member, in order of those members. */
+    int[][] cycles() {
+        int[] lengths = new int[size()];
+        int[] order = new int[size()];
+        int count = decompose(order, lengths);
+        int[][] result = new int[count][];
+        for (int i = 0, start = 0; i < count; i += 1) {
+            result[i] = Arrays.copyOfRange(order, start, start + lengths[i]);
+            start += lengths[i];
+        }
+        return result;
+    }
+
+    /** Return the lengths of my cycles, including those of length 1,
+     *  largest first. */
+    int[] cycleType() {
+        int[] lengths = new int[size()];
+        int count = decompose(new int[size()], lengths);
+        Arrays.sort(lengths, 0, count);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i += 1) {
+            result[i] = lengths[count - 1 - i];
+        }
+        return result;
+    }
+
+    /** Fill ORDER with the members of my cycles, one cycle after another
+     *  as described in cycles(), and LENGTHS with the lengths of those
+     *  cycles.  Return the number of cycles. */
+    private int decompose(int[] order, int[] lengths) {
+        boolean[] seen = new boolean[size()];
+        int count = 0, k = 0;
+        for (int x = 0; x < _map.length; x += 1) {
+            int len = 0;
+            for (int y = x; !seen[y]; y = _map[y]) {
+                seen[y] = true;
+                order[k] = y;
+                k += 1;
+                len += 1;
+            }
+            if (len > 0) {
+                lengths[count] = len;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return the least positive K such that me applied K times is the
+     *  identity. */
+    long order() {
+        long result = 1;
+        for (int len : cycleType()) {
+            long a = result, b = len;
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            result = result / a * len;
+        }
+        return result;
+    }
+
+    /** Return true iff I map no integer to itself. */
+    boolean derangement() {
+        for (int i = 0; i < _map.length; i += 1) {
+            if (_map[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff I am my own inverse. */
+    boolean involution() {
+        for (int i = 0; i < _map.length; i += 1) {
+            if (_map[_map[i]] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return my cycles of length greater than 1, as the characters of
+     *  ALPHABET, in the cycle notation accepted by Permutation. */
+    String toString(Alphabet alphabet) {
+        checkAlphabet(alphabet);
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : cycles()) {
+            if (cycle.length > 1) {
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int x : cycle) {
+                    result.appendCodePoint(alphabet.toCodePoint(x));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that ALPHABET has as many characters as I permute. */
+    void checkAlphabet(Alphabet alphabet) {
+        if (alphabet.size() != size()) {
+            throw error("permutation of %d does not fit alphabet of %d",
+                        size(), alphabet.size());
+        }
+    }
+
+    /** Check that OTHER has my size. */
+    private void checkSize(IndexPermutation other) {
+        if (other.size() != size()) {
+            throw error("permutations of %d and %d", size(), other.size());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IndexPermutation
+            && Arrays.equals(_map, ((IndexPermutation) obj)._map);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_map);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(_map);
+    }
+
+    /** The image of each index. */
+    private final int[] _map;
+
+    /** My inverse's mapping, computed when first needed, or null.  It is
+     *  volatile so that threads sharing me see it only once filled. */
+    private volatile int[] _inverse;
+}
@@ -0,0 +1,138 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IndexPermutation class.
+ *  @author Vikram Cherukuri
+ */
+public class IndexPermutationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random permutation of N integers, using RANDOM. */
+    private static IndexPermutation random(int n, Random random) {
+        int[] map = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            map[i] = map[j];
+            map[j] = i;
+        }
+        return IndexPermutation.of(map);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOf() {
+        IndexPermutation p = IndexPermutation.of(2, 0, 1);
+        assertEquals(3, p.size());
+        assertEquals(2, p.apply(0));
+        assertEquals(1, p.invert(0));
+        assertArrayEquals(new int[] { 2, 0, 1 }, p.toArray());
+        for (int[] bad : new int[][] { { 0, 0 }, { 1, 2 }, { -1, 0 } }) {
+            try {
+                IndexPermutation.of(bad);
+                fail("accepted a non-permutation");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testAlgebra() {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 20; trial += 1) {
+            int n = 1 + random.nextInt(300);
+            IndexPermutation p = random(n, random), q = random(n, random),
+                id = IndexPermutation.identity(n);
+            IndexPermutation pq = p.compose(q);
+            for (int x = 0; x < n; x += 1) {
+                assertEquals(p.apply(q.apply(x)), pq.apply(x));
+                assertEquals(x, p.invert(p.apply(x)));
+            }
+            assertEquals(pq, q.then(p));
+            assertEquals(id, p.compose(p.inverse()));
+            assertEquals(id, p.power(0));
+            assertEquals(p, p.power(1));
+            assertEquals(p.compose(p).compose(p), p.power(3));
+            assertEquals(p.inverse().power(2), p.power(-2));
+            assertEquals(id, p.power(p.order()));
+            assertEquals(p.inverse(), p.power(p.order() - 1));
+        }
+    }
+
+    @Test
+    public void testCycles() {
+        IndexPermutation p = IndexPermutation.of(3, 0, 2, 5, 6, 4, 1);
+        int[][] cycles = p.cycles();
+        assertEquals(2, cycles.length);
+        assertArrayEquals(new int[] { 0, 3, 5, 4, 6, 1 }, cycles[0]);
+        assertArrayEquals(new int[] { 2 }, cycles[1]);
+        assertArrayEquals(new int[] { 6, 1 }, p.cycleType());
+        assertEquals(6, p.order());
+        assertFalse(p.derangement());
+        assertFalse(p.involution());
+        IndexPermutation swaps = IndexPermutation.of(1, 0, 3, 2);
+        assertTrue(swaps.derangement());
+        assertTrue(swaps.involution());
+        assertArrayEquals(new int[] { 2, 2 }, swaps.cycleType());
+        assertEquals(2, swaps.order());
+    }
+
+    @Test
+    public void testPermutation() {
+        for (String name : NAVALA.keySet()) {
+            if (NAVALA.get(name).contains(")(")) {
+                continue;
+            }
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            IndexPermutation p = IndexPermutation.of(perm);
+            Permutation back = p.toPermutation(UPPER);
+            for (int i = 0; i < UPPER.size(); i += 1) {
+                assertEquals(perm.permute(i), p.apply(i));
+                assertEquals(perm.invert(i), p.invert(i));
+                assertEquals(perm.permute(i), back.permute(i));
+                assertEquals(perm.invert(i), back.invert(i));
+            }
+            assertEquals(perm.derangement(), back.derangement());
+            assertEquals(p, IndexPermutation.of(
+                new Permutation(p.toString(UPPER), UPPER)));
+        }
+        IndexPermutation p = IndexPermutation.of(1, 2, 0, 3);
+        assertEquals("(ABC)", p.toString(new Alphabet("ABCD")));
+        assertArrayEquals(new String[] { "ABC" },
+                          p.toPermutation(new Alphabet("ABCD")).cycles());
+        try {
+            p.toPermutation(UPPER);
+            fail("permutation of 4 accepted for alphabet of 26");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            IndexPermutation.of(new Permutation("(AB) (AC)",
+                                                new Alphabet("ABC")));
+            fail("accepted a mapping that is not one to one");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            IndexPermutation.of(new Permutation("(AB)(CD)",
+                                                new Alphabet("ABCD")));
+            fail("accepted a mapping outside the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
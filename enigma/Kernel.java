@@ -0,0 +1,30 @@
+package enigma;
+
+/** A converter of whole message lines through a machine, from input
+ *  bytes to output bytes grouped as by Main, accumulated in a reusable
+ *  buffer.  Converting a line allocates no objects once the buffer has
+ *  grown large enough.
+ *  @author Vikram Cherukuri
+ */
+interface Kernel {
+
+    /** Convert the message line in IN[START .. END-1], ignoring
+     *  whitespace, and append the result, in groups of five characters
+     *  followed by a line separator, to buffer().  If the line cannot
+     *  be converted, append nothing. */
+    void convertLine(byte[] in, int start, int end);
+
+    /** Return my counts of each character of converted output, by its
+     *  index in the alphabet.  Counting costs one increment per character;
+     *  the caller may read the counts and clear them. */
+    long[] counts();
+
+    /** Return the buffer holding my converted output. */
+    byte[] buffer();
+
+    /** Return the number of bytes of converted output in buffer(). */
+    int length();
+
+    /** Discard the converted output in buffer(). */
+    void clear();
+}
@@ -0,0 +1,454 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** Known-plaintext key search spread over worker processes.  The
+ *  coordinator divides the settings of a configuration (rotor order,
+ *  and rings and positions of the rotors, up to equivalence for a
+ *  message as long as the crib; see KeySpace) into units, each one rotor
+ *  order and a range of notch timings, and hands them out to the workers
+ *  that connect to it over a local socket (see KeySearchWorker for the
+ *  protocol).  A unit given to a worker that disconnects, fails, or
+ *  falls silent is given to another, and workers that the coordinator
+ *  started itself are restarted when they die.  The settings found are
+ *  merged and printed once all units are done.
+ *  @author Vikram Cherukuri
+ */
+public final class KeySearch {
+
+    /** Search for keys, as specified by ARGS, which has one of the forms
+     *      [--workers N] [--port P] [--unit R] [--timeout S]
+     *          CONFIG CIPHERTEXT CRIB [PLUGBOARD]
+     *      --work HOST:PORT
+     *  The first coordinates a search for the settings of configuration
+     *  file CONFIG with plugboard PLUGBOARD (default: none) under which
+     *  CIPHERTEXT begins with the plaintext CRIB.  It listens on port P
+     *  of the loopback interface (default: any free port), starts N
+     *  local workers (default: the number of processors; 0 to rely on
+     *  workers started separately), hands out units of R notch timings
+     *  (default 1), and gives up on a worker that is silent for S seconds
+     *  (default 600).  The settings found are printed as settings lines,
+     *  followed by a summary.  The second form runs a worker for the
+     *  coordinator at HOST:PORT.  Exits normally if there are no errors;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 2 && args[0].equals("--work")) {
+                int colon = args[1].lastIndexOf(':');
+                if (colon < 0) {
+                    throw error("worker needs HOST:PORT");
+                }
+                new KeySearchWorker(args[1].substring(0, colon),
+                                    parse(args[1].substring(colon + 1),
+                                          "port")).run();
+                return;
+            }
+            long start = System.nanoTime();
+            KeySearch search = new KeySearch(args);
+            search.start();
+            for (String settings : search.finish()) {
+                System.out.println(settings);
+            }
+            System.out.printf("%d units, %d workers lost, %.3f s%n",
+                              search._units, search._lost.get(),
+                              (System.nanoTime() - start) * 1e-9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check ARGS (see comment on main) and divide the search into
+     *  units. */
+    KeySearch(String[] args) {
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "--workers":
+                _workers = parse(optionValue(args, i), "number of workers");
+                i += 1;
+                break;
+            case "--port":
+                _port = parse(optionValue(args, i), "port");
+                i += 1;
+                break;
+            case "--unit":
+                _unitSize = parse(optionValue(args, i), "unit size");
+                if (_unitSize < 1) {
+                    throw error("bad unit size");
+                }
+                i += 1;
+                break;
+            case "--timeout":
+                _timeout = parse(optionValue(args, i), "timeout");
+                i += 1;
+                break;
+            default:
+                if (args[i].startsWith("--")) {
+                    throw error("unknown option %s", args[i]);
+                }
+                rest.add(args[i]);
+            }
+        }
+        if (rest.size() < 3 || rest.size() > 4) {
+            throw error("usage: java enigma.KeySearch [--workers N] "
+                        + "[--port P] [--unit R] [--timeout S] CONFIG "
+                        + "CIPHERTEXT CRIB [PLUGBOARD]");
+        }
+        try {
+            _config = Files.readAllLines(new File(rest.get(0)).toPath(),
+                                         StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not open %s", rest.get(0));
+        }
+        _cipher = rest.get(1).replaceAll("\\s", "");
+        _crib = rest.get(2).replaceAll("\\s", "");
+        _plugboard = rest.size() > 3 ? rest.get(3) : "";
+        if (_crib.isEmpty() || _crib.codePointCount(0, _crib.length())
+            > _cipher.codePointCount(0, _cipher.length())) {
+            throw error("crib must be nonempty and no longer than "
+                        + "the ciphertext");
+        }
+
+        Machine proto = MachineConfig.read(rest.get(0)).newMachine();
+        new Permutation(_plugboard, proto.alphabet());
+        for (String text : new String[] { _cipher, _crib }) {
+            text.codePoints().forEach(proto.alphabet()::toIndex);
+        }
+        int horizon = _crib.codePointCount(0, _crib.length());
+        int id = 0;
+        for (String[] order : CycleCatalog.rotorOrders(proto)) {
+            proto.insertRotors(order);
+            long timings = new KeySpace(proto, horizon).timings();
+            for (long r = 0; r < timings; r += _unitSize) {
+                _pending.add(new Unit(id, order, r,
+                                      Math.min(timings, r + _unitSize)));
+                id += 1;
+            }
+        }
+        _units = id;
+        _remaining = new CountDownLatch(id);
+    }
+
+    /** Return the value following the option ARGS[K]. */
+    private static String optionValue(String[] args, int k) {
+        if (k + 1 >= args.length) {
+            throw error("missing value for %s", args[k]);
+        }
+        return args[k + 1];
+    }
+
+    /** Return the non-negative integer denoted by VALUE, which is a
+     *  WHAT. */
+    private static int parse(String value, String what) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad %s", what);
+    }
+
+    /** Start listening for workers, and start my own. */
+    void start() {
+        try {
+            _server = new ServerSocket(_port, 50,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen on port %d", _port);
+        }
+        Thread acceptor = new Thread(this::accept, "key-search-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (int i = 0; i < _workers; i += 1) {
+            spawn();
+        }
+    }
+
+    /** Return the port on which I listen for workers. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Return the number of workers lost so far. */
+    int lost() {
+        return _lost.get();
+    }
+
+    /** Wait for all units to be done, and return the settings found, in
+     *  order. */
+    List<String> finish() {
+        boolean done = false;
+        try {
+            while (!_remaining.await(100, TimeUnit.MILLISECONDS)) {
+                if (_failure != null) {
+                    throw error("worker failed: %s", _failure);
+                }
+                tendWorkers();
+            }
+            done = true;
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            try {
+                _server.close();
+            } catch (IOException excp) {
+                /* Nothing more can be accepted either way. */
+            }
+            for (Process worker : _processes) {
+                try {
+                    if (!done || !worker.waitFor(5, TimeUnit.SECONDS)) {
+                        worker.destroy();
+                    }
+                } catch (InterruptedException excp) {
+                    worker.destroy();
+                }
+            }
+        }
+        return new ArrayList<>(_found);
+    }
+
+    /** Replace any of my own workers that have died, as long as
+     *  restarts remain, and report an error if none are left. */
+    private void tendWorkers() {
+        if (_workers == 0) {
+            return;
+        }
+        for (int i = 0; i < _processes.size(); i += 1) {
+            if (!_processes.get(i).isAlive()) {
+                _processes.remove(i);
+                i -= 1;
+                if (_restarts < _workers) {
+                    _restarts += 1;
+                    spawn();
+                }
+            }
+        }
+        if (_processes.isEmpty() && _connections.get() == 0) {
+            throw error("all workers lost");
+        }
+    }
+
+    /** Start a worker process for me. */
+    private void spawn() {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               "enigma.KeySearch", "--work",
+                               InetAddress.getLoopbackAddress()
+                               .getHostAddress() + ":" + port());
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            _processes.add(builder.start());
+        } catch (IOException excp) {
+            throw error("could not start worker");
+        }
+    }
+
+    /** Accept workers' connections, serving each on its own thread,
+     *  until my server socket closes. */
+    private void accept() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = _server.accept();
+            } catch (IOException excp) {
+                return;
+            }
+            _connections.incrementAndGet();
+            Thread server = new Thread(() -> serve(socket),
+                                       "key-search-server");
+            server.setDaemon(true);
+            server.start();
+        }
+    }
+
+    /** Send the task and then units to the worker on SOCKET until all
+     *  are done or the worker is lost. */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(_timeout * 1000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.printf("TASK %d%n", _config.size());
+            for (String line : _config) {
+                out.println(line);
+            }
+            out.println(_cipher);
+            out.println(_crib);
+            out.println(_plugboard);
+            while (true) {
+                Unit unit = _pending.poll(100, TimeUnit.MILLISECONDS);
+                if (unit == null) {
+                    if (_remaining.getCount() == 0) {
+                        out.println("QUIT");
+                        out.flush();
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    _found.addAll(run(unit, in, out));
+                    _remaining.countDown();
+                } catch (IOException excp) {
+                    _pending.addFirst(unit);
+                    _lost.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException excp) {
+            _lost.incrementAndGet();
+        } finally {
+            _connections.decrementAndGet();
+        }
+    }
+
+    /** Have the worker reading OUT and writing IN do UNIT, and return the
+     *  settings it finds. */
+    private List<String> run(Unit unit, BufferedReader in, PrintWriter out)
+        throws IOException {
+        out.println(unit);
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("worker closed");
+        }
+        String found = "FOUND " + unit.id + " ";
+        String done = "DONE " + unit.id;
+        List<String> result = new ArrayList<>();
+        while (true) {
+            String line;
+            try {
+                line = in.readLine();
+            } catch (SocketTimeoutException excp) {
+                throw new IOException("worker timed out");
+            }
+            if (line == null) {
+                throw new IOException("worker closed");
+            } else if (line.startsWith(found)) {
+                result.add(line.substring(found.length()));
+            } else if (line.equals(done)) {
+                return result;
+            } else if (line.startsWith("ERROR ")) {
+                _failure = line.substring(6);
+                throw new IOException(_failure);
+            } else {
+                throw new IOException("bad reply");
+            }
+        }
+    }
+
+    /** One unit of work: one rotor order and a range of timing indices. */
+    private static final class Unit {
+        /** Unit ID for rotor order ORDER and timing indices FROM to
+         *  TO-1. */
+        Unit(int id, String[] order, long from, long to) {
+            this.id = id;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("UNIT %d %d %d %s", id, from, to,
+                                 String.join(" ", order));
+        }
+
+        /** Identifier of this unit. */
+        final int id;
+        /** Rotor order. */
+        final String[] order;
+        /** Range of timing indices. */
+        final long from, to;
+    }
+
+    /** Number of worker processes to start. */
+    private int _workers = Runtime.getRuntime().availableProcessors();
+
+    /** Port on which to listen, or 0 for any. */
+    private int _port;
+
+    /** Number of ring indices per unit. */
+    private int _unitSize = 1;
+
+    /** Seconds of silence after which a worker is given up. */
+    private int _timeout = 600;
+
+    /** Lines of the configuration file. */
+    private final List<String> _config;
+
+    /** The ciphertext. */
+    private final String _cipher;
+
+    /** The known plaintext of the start of _cipher. */
+    private final String _crib;
+
+    /** The plugboard, in cycle notation. */
+    private final String _plugboard;
+
+    /** Total number of units. */
+    private final int _units;
+
+    /** Units not yet assigned, or returned by lost workers. */
+    private final BlockingDeque<Unit> _pending = new LinkedBlockingDeque<>();
+
+    /** Counts down as units are done. */
+    private final CountDownLatch _remaining;
+
+    /** Settings found, in order. */
+    private final Set<String> _found = new ConcurrentSkipListSet<>();
+
+    /** Number of workers lost. */
+    private final AtomicInteger _lost = new AtomicInteger();
+
+    /** Number of workers currently connected. */
+    private final AtomicInteger _connections = new AtomicInteger();
+
+    /** Worker processes I started that may still be running. */
+    private final List<Process> _processes = new ArrayList<>();
+
+    /** Number of workers restarted so far. */
+    private int _restarts;
+
+    /** Message of a worker that could not carry out the task, or
+     *  null. */
+    private volatile String _failure;
+
+    /** Socket on which I listen for workers. */
+    private ServerSocket _server;
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.net.Socket;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Vikram Cherukuri
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A small configuration, with 2 reflectors, 3 moving rotors, and
+     *  3 rotor slots. */
+    private static final String CONFIG =
+        "ABCDEF\n3 2\n"
+        + " R1 R (AB) (CD) (EF)\n"
+        + " R2 R (AF) (BE) (CD)\n"
+        + " X MA (ABC) (DEF)\n"
+        + " Y MD (ADBFCE)\n"
+        + " Z MBE (AB) (CDE)\n";
+
+    /** The settings of the message searched for. */
+    private static final String KEY = "* R2 Z X CF DB (AE)";
+
+    /** The plaintext of the message. */
+    private static final String PLAIN = "FACADEBEADCAFEBABEDEAFFACE";
+
+    /** Return PLAIN enciphered with KEY. */
+    private String cipher() {
+        Machine m = new MachineConfig(new Scanner(CONFIG)).newMachine();
+        Main.setUp(m, KEY);
+        return m.convert(PLAIN);
+    }
+
+    /** Act as a worker for the coordinator on PORT that disappears once
+     *  it has been given a unit. */
+    private void desert(int port) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null
+                   && !line.startsWith("UNIT ")) {
+                continue;
+            }
+        }
+    }
+
+    @Test
+    public void testSearchWithLostWorker() throws Exception {
+        File config = File.createTempFile("search", ".conf");
+        try {
+            Files.write(config.toPath(),
+                        CONFIG.getBytes(StandardCharsets.UTF_8));
+            KeySearch search =
+                new KeySearch(new String[] {
+                    "--workers", "0", "--unit", "4", config.getPath(),
+                    cipher(), PLAIN.substring(0, 12), "(AE)" });
+            search.start();
+            desert(search.port());
+            Thread[] workers = new Thread[2];
+            for (int i = 0; i < workers.length; i += 1) {
+                workers[i] =
+                    new Thread(new KeySearchWorker("localhost",
+                                                   search.port()));
+                workers[i].start();
+            }
+            List<String> found = search.finish();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertEquals(1, search.lost());
+            Machine key = new MachineConfig(new Scanner(CONFIG)).newMachine();
+            Main.setUp(key, KEY);
+            KeySpace space = new KeySpace(key, 12);
+            boolean keyFound = false;
+            for (String settings : found) {
+                Machine m =
+                    new MachineConfig(new Scanner(CONFIG)).newMachine();
+                Main.setUp(m, settings);
+                keyFound |= settings.startsWith("* R2 Z X ")
+                    && space.index(m) == space.index(key);
+                assertEquals(PLAIN.substring(0, 12),
+                             m.convert(cipher()).substring(0, 12));
+            }
+            assertTrue(keyFound);
+        } finally {
+            config.delete();
+        }
+    }
+
+    @Test
+    public void testWorkerError() throws Exception {
+        File config = File.createTempFile("search", ".conf");
+        try {
+            Files.write(config.toPath(),
+                        CONFIG.getBytes(StandardCharsets.UTF_8));
+            KeySearch search =
+                new KeySearch(new String[] {
+                    "--workers", "0", config.getPath(), "ABC", "AB" });
+            search.start();
+            try (Socket socket = new Socket("localhost", search.port())) {
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null
+                       && !line.startsWith("UNIT ")) {
+                    continue;
+                }
+                out.println("ERROR no machine");
+                out.flush();
+                search.finish();
+                fail("no error reported");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("no machine"));
+            }
+        } finally {
+            config.delete();
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.net.Socket;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A worker for KeySearch.  It connects to a coordinator, receives the
+ *  search task, and then tests the settings of each unit of work it is
+ *  given until told to quit.
+ *
+ *  The coordinator first sends the task:
+ *      TASK N
+ *      (N lines of configuration file)
+ *      CIPHERTEXT
+ *      CRIB
+ *      PLUGBOARD
+ *  and then any number of units, each as
+ *      UNIT ID FROM TO NAME...
+ *  meaning that every offset of the rotor order NAME... is to be
+ *  tested for each timing index from FROM to TO-1, as numbered by the
+ *  KeySpace of that order for messages as long as CRIB.  Only one
+ *  setting of each class of equivalent ring and position settings is
+ *  tested and reported, since the others decipher the crib alike.  The
+ *  worker answers each unit with a line
+ *      FOUND ID SETTINGS
+ *  for each setting that deciphers the start of CIPHERTEXT to CRIB,
+ *  where SETTINGS is a settings line as for Main, followed by
+ *      DONE ID
+ *  The coordinator ends the session with QUIT.  A worker that cannot
+ *  carry out the task sends ERROR MESSAGE and stops.
+ *  @author Vikram Cherukuri
+ */
+class KeySearchWorker implements Runnable {
+
+    /** A worker for the coordinator at HOST:PORT. */
+    KeySearchWorker(String host, int port) {
+        _host = host;
+        _port = port;
+    }
+
+    @Override
+    public void run() {
+        try (Socket socket = new Socket(_host, _port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+            try {
+                readTask(in);
+                String line;
+                while ((line = in.readLine()) != null
+                       && !line.equals("QUIT")) {
+                    String[] fields = line.split(" ");
+                    if (!fields[0].equals("UNIT") || fields.length < 5) {
+                        throw error("bad request: %s", line);
+                    }
+                    String[] order = new String[fields.length - 4];
+                    System.arraycopy(fields, 4, order, 0, order.length);
+                    search(fields[1], Long.parseLong(fields[2]),
+                           Long.parseLong(fields[3]), order, out);
+                    out.printf("DONE %s%n", fields[1]);
+                    out.flush();
+                }
+            } catch (EnigmaException | NumberFormatException excp) {
+                out.printf("ERROR %s%n", excp.getMessage());
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* The coordinator has gone; there is nothing left to do. */
+            return;
+        }
+    }
+
+    /** Read the task from IN. */
+    private void readTask(BufferedReader in) throws IOException {
+        String header = in.readLine();
+        if (header == null || !header.startsWith("TASK ")) {
+            throw error("bad task");
+        }
+        StringBuilder config = new StringBuilder();
+        int lines = Integer.parseInt(header.substring(5));
+        for (int i = 0; i < lines; i += 1) {
+            config.append(readLine(in)).append('\n');
+        }
+        _machine = new MachineConfig(new Scanner(config.toString()))
+            .newMachine();
+        Alphabet alpha = _machine.alphabet();
+        _cipher = indices(alpha, readLine(in));
+        _crib = indices(alpha, readLine(in));
+        if (_crib.length > _cipher.length) {
+            throw error("crib longer than ciphertext");
+        }
+        _plugboardCycles = readLine(in);
+        _plugboard = new Permutation(_plugboardCycles, alpha);
+    }
+
+    /** Return the next line of IN, which must exist. */
+    private static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("truncated task");
+        }
+        return line;
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT. */
+    private static int[] indices(Alphabet alpha, String text) {
+        return text.codePoints().map(alpha::toIndex).toArray();
+    }
+
+    /** Test every offset of rotor order ORDER for each timing index
+     *  from FROM to TO-1, reporting matches for unit ID to OUT. */
+    private void search(String id, long from, long to, String[] order,
+                        PrintWriter out) {
+        Machine m = _machine;
+        m.insertRotors(order);
+        m.setPlugboard(_plugboard);
+        KeySpace space = new KeySpace(m, _crib.length);
+        long offsets = space.offsets();
+        if (from < 0 || to > space.timings()) {
+            throw error("bad timing range");
+        }
+        for (long t = from; t < to; t += 1) {
+            for (long k = t * offsets; k < (t + 1) * offsets; k += 1) {
+                space.apply(m, k);
+                if (matches(m)) {
+                    space.apply(m, k);
+                    out.printf("FOUND %s %s%n", id, settings(m, order));
+                }
+            }
+        }
+    }
+
+    /** Return true iff M deciphers the start of _cipher to _crib. */
+    private boolean matches(Machine m) {
+        for (int k = 0; k < _crib.length; k += 1) {
+            if (m.convert(_cipher[k]) != _crib[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the settings line for M, with rotor order ORDER, at the
+     *  current positions and rings of its rotors. */
+    private String settings(Machine m, String[] order) {
+        Alphabet alpha = m.alphabet();
+        Rotor[] rotors = m.rotors();
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < rotors.length; i += 1) {
+            line.appendCodePoint(alpha.toCodePoint(rotors[i].setting()));
+        }
+        line.append(' ');
+        for (int i = 1; i < rotors.length; i += 1) {
+            line.appendCodePoint(alpha.toCodePoint(rotors[i].ring()));
+        }
+        if (!_plugboardCycles.isEmpty()) {
+            line.append(' ').append(_plugboardCycles);
+        }
+        return line.toString();
+    }
+
+    /** Host of the coordinator. */
+    private final String _host;
+
+    /** Port of the coordinator. */
+    private final int _port;
+
+    /** Machine used for all tests. */
+    private Machine _machine;
+
+    /** The ciphertext, as indices. */
+    private int[] _cipher;
+
+    /** The known plaintext of the start of _cipher, as indices. */
+    private int[] _crib;
+
+    /** The plugboard, in cycle notation. */
+    private String _plugboardCycles;
+
+    /** The plugboard. */
+    private Permutation _plugboard;
+}
@@ -0,0 +1,526 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A binary key sheet: a sorted table of machine settings, each under a
+ *  label such as a network and date, that is read by memory-mapping it.
+ *  Applying an entry to a Machine creates no Strings: rotors are stored
+ *  as indices into a table of names read once when the sheet is opened,
+ *  and positions, rings, and plugboard pairs as alphabet ordinals.
+ *
+ *  A sheet file consists of a header written by DataOutputStream: MAGIC,
+ *  VERSION, the number of rotor slots, the number of bytes per ordinal
+ *  (1 for alphabets of at most 256 characters, else 2), the greatest
+ *  number of plugboard pairs in any entry, the number of entries, and
+ *  the rotor names, as a count followed by the names.  Then come the
+ *  entries, at the next multiple of 8 bytes, sorted by label, each of
+ *  the same size:
+ *      label: LABEL_SIZE bytes of ASCII, padded with zeros;
+ *      rotors: an unsigned short name index per slot;
+ *      positions: an ordinal per slot after the first;
+ *      a byte that is 1 if rings are given, else 0;
+ *      rings: an ordinal per slot after the first;
+ *      pairs: an unsigned short count, and then two ordinals per pair,
+ *      padded to the greatest number of pairs.
+ *  @author Vikram Cherukuri
+ */
+public final class KeySheet {
+
+    /** First int of a key sheet. */
+    static final int MAGIC = 0x454e4b53;
+
+    /** Version of the key sheet format. */
+    static final int VERSION = 1;
+
+    /** Number of bytes in a label. */
+    static final int LABEL_SIZE = 16;
+
+    /** Build or read a key sheet, as specified by ARGS, which has one of
+     *  the forms
+     *      --compile CONFIG TEXT SHEET
+     *      --show CONFIG SHEET LABEL
+     *  The first converts TEXT, each of whose non-blank lines has the
+     *  form "LABEL SETTINGS", where SETTINGS is a settings line for
+     *  configuration file CONFIG, into the key sheet SHEET.  The second
+     *  prints the settings line stored in SHEET, a key sheet for
+     *  CONFIG, under LABEL.  Exits normally if there are no errors;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 4 && args[0].equals("--compile")) {
+                int n = compile(MachineConfig.read(args[1]),
+                                new File(args[2]), new File(args[3]));
+                System.out.printf("%d entries%n", n);
+                return;
+            } else if (args.length == 4 && args[0].equals("--show")) {
+                Alphabet alpha = MachineConfig.read(args[1]).alphabet();
+                KeySheet sheet = new KeySheet(new File(args[2]));
+                int k = sheet.find(label(args[3]));
+                if (k < 0) {
+                    throw error("no entry for %s", args[3]);
+                }
+                System.out.println(sheet.settings(k, alpha));
+                return;
+            }
+            throw error("usage: java enigma.KeySheet --compile CONFIG TEXT "
+                        + "SHEET | --show CONFIG SHEET LABEL");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return NAME as a label. */
+    static byte[] label(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > LABEL_SIZE || name.isEmpty()
+            || !StandardCharsets.US_ASCII.newEncoder().canEncode(name)) {
+            throw error("bad label %s", name);
+        }
+        return Arrays.copyOf(bytes, LABEL_SIZE);
+    }
+
+    /** Write the entries listed in TEXT for machines made from CONFIG to
+     *  the key sheet SHEET, returning their number. */
+    static int compile(MachineConfig config, File text, File sheet) {
+        Machine m = config.newMachine();
+        Alphabet alpha = m.alphabet();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> index = new HashMap<>();
+        for (Rotor r : m.allRotors()) {
+            index.put(r.name(), names.size());
+            names.add(r.name());
+        }
+        int slots = m.numRotors();
+        List<Entry> entries = new ArrayList<>();
+        int maxPairs = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(text))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw error("bad key sheet line: %s", line);
+                }
+                String settings = line.substring(space + 1).trim();
+                if (settings.split(" ").length < slots + 2) {
+                    throw error("bad key sheet line: %s", line);
+                }
+                Main.setUp(m, settings);
+                Entry e = new Entry(label(line.substring(0, space)),
+                                    settings, slots, index, alpha);
+                maxPairs = Math.max(maxPairs, e.pairs.length / 2);
+                entries.add(e);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", text);
+        }
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.label, b.label));
+        for (int k = 1; k < entries.size(); k += 1) {
+            if (Arrays.equals(entries.get(k - 1).label,
+                              entries.get(k).label)) {
+                throw error("duplicate label %s",
+                            new String(entries.get(k).label,
+                                       StandardCharsets.US_ASCII).trim());
+            }
+        }
+
+        int width = alpha.size() <= 256 ? 1 : 2;
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(sheet),
+                                          1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slots);
+            out.writeInt(width);
+            out.writeInt(maxPairs);
+            out.writeInt(entries.size());
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            while (out.size() % 8 != 0) {
+                out.writeByte(0);
+            }
+            for (Entry e : entries) {
+                e.write(out, width, maxPairs);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", sheet);
+        }
+        return entries.size();
+    }
+
+    /** One entry of a key sheet being compiled. */
+    private static final class Entry {
+        /** The entry labelled LABEL with settings line SETTINGS for a
+         *  machine with SLOTS slots, whose rotor names have indices
+         *  INDEX, and alphabet ALPHA.  SETTINGS has already been checked
+         *  by Main.setUp. */
+        Entry(byte[] label, String settings, int slots,
+              Map<String, Integer> index, Alphabet alpha) {
+            this.label = label;
+            String[] terms = settings.split(" ");
+            rotors = new int[slots];
+            for (int i = 0; i < slots; i += 1) {
+                Integer r = index.get(terms[i + 1]);
+                if (r == null) {
+                    throw error("unknown rotor %s", terms[i + 1]);
+                }
+                rotors[i] = r;
+            }
+            positions = ordinals(terms[slots + 1], alpha);
+            int k = slots + 2;
+            if (k < terms.length && terms[k].charAt(0) != '(') {
+                rings = ordinals(terms[k], alpha);
+                k += 1;
+            }
+            List<Integer> pairs = new ArrayList<>();
+            for (; k < terms.length; k += 1) {
+                int[] pair = terms[k].codePoints().toArray();
+                if (pair.length != 4) {
+                    throw error("key sheet plugboards must be pairs");
+                }
+                pairs.add(alpha.toIndex(pair[1]));
+                pairs.add(alpha.toIndex(pair[2]));
+            }
+            this.pairs = pairs.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /** Write me to OUT with WIDTH bytes per ordinal, padding my pairs
+         *  to MAXPAIRS. */
+        void write(DataOutputStream out, int width, int maxPairs)
+            throws IOException {
+            out.write(label);
+            for (int r : rotors) {
+                out.writeShort(r);
+            }
+            writeOrdinals(out, positions, width);
+            out.writeByte(rings == null ? 0 : 1);
+            writeOrdinals(out, rings == null ? new int[positions.length]
+                          : rings, width);
+            out.writeShort(pairs.length / 2);
+            writeOrdinals(out, Arrays.copyOf(pairs, 2 * maxPairs), width);
+        }
+
+        /** Label. */
+        final byte[] label;
+        /** Rotor name indices. */
+        final int[] rotors;
+        /** Positions of the rotors after the first. */
+        final int[] positions;
+        /** Rings of the rotors after the first, or null. */
+        int[] rings;
+        /** Plugboard pairs, as consecutive ordinals. */
+        final int[] pairs;
+    }
+
+    /** Return the ordinals in ALPHA of the characters of TEXT. */
+    private static int[] ordinals(String text, Alphabet alpha) {
+        return text.codePoints().map(alpha::toIndex).toArray();
+    }
+
+    /** Write VALUES to OUT with WIDTH bytes each. */
+    private static void writeOrdinals(DataOutputStream out, int[] values,
+                                      int width) throws IOException {
+        for (int v : values) {
+            if (width == 1) {
+                out.writeByte(v);
+            } else {
+                out.writeShort(v);
+            }
+        }
+    }
+
+    /** The key sheet in FILE. */
+    KeySheet(File file) {
+        try (FileInputStream fin = new FileInputStream(file);
+             DataInputStream in = new DataInputStream(fin)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("%s is not a key sheet", file);
+            }
+            _slots = in.readInt();
+            _width = in.readInt();
+            _maxPairs = in.readInt();
+            _size = in.readInt();
+            _names = new String[in.readInt()];
+            for (int i = 0; i < _names.length; i += 1) {
+                _names[i] = in.readUTF();
+            }
+            _base = (fin.getChannel().position() + 7) / 8 * 8;
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        _positions = LABEL_SIZE + 2 * _slots;
+        _ringsFlag = _positions + _width * (_slots - 1);
+        _pairCount = _ringsFlag + 1 + _width * (_slots - 1);
+        _recordSize = _pairCount + 2 + 2 * _width * _maxPairs;
+        _perChunk = Integer.MAX_VALUE / _recordSize;
+        _chunks = new ByteBuffer[(int) ((_size + (long) _perChunk - 1)
+                                        / _perChunk)];
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() != _base + (long) _size * _recordSize) {
+                throw error("%s is truncated", file);
+            }
+            for (int c = 0; c < _chunks.length; c += 1) {
+                long first = (long) c * _perChunk;
+                long count = Math.min(_perChunk, _size - first);
+                _chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         _base + first * _recordSize,
+                                         count * _recordSize);
+            }
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the index of the entry labelled LABEL, which has
+     *  LABEL_SIZE bytes, or -1 if there is none. */
+    int find(byte[] label) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareLabel(mid, label);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the label of entry K with LABEL, as unsigned bytes. */
+    private int compareLabel(int k, byte[] label) {
+        ByteBuffer chunk = chunk(k);
+        int at = offset(k);
+        for (int i = 0; i < LABEL_SIZE; i += 1) {
+            int cmp = Byte.toUnsignedInt(chunk.get(at + i))
+                - Byte.toUnsignedInt(label[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Set M, a machine for this sheet's configuration, to the settings
+     *  of entry K, as Main.setUp would for its settings line. */
+    void apply(int k, Machine m) {
+        ByteBuffer chunk = chunk(k);
+        int at = offset(k);
+        int n = m.alphabet().size();
+        String[] order = new String[_slots];
+        for (int i = 0; i < _slots; i += 1) {
+            order[i] = name(chunk, at, i);
+        }
+        m.insertRotors(order);
+        Rotor[] rotors = m.rotors();
+        boolean rings = chunk.get(at + _ringsFlag) != 0;
+        for (int i = 1; i < _slots; i += 1) {
+            rotors[i].set(ordinal(chunk, at + _positions, i - 1, n));
+            if (rings) {
+                rotors[i].setRing(ordinal(chunk, at + _ringsFlag + 1,
+                                          i - 1, n));
+            }
+        }
+        Plugboard plugboard = new Plugboard(m.alphabet());
+        for (int p = 0; p < pairs(chunk, at); p += 1) {
+            plugboard.swap(ordinal(chunk, at + _pairCount + 2, 2 * p, n),
+                           ordinal(chunk, at + _pairCount + 2, 2 * p + 1,
+                                   n));
+        }
+        m.setPlugboard(plugboard);
+    }
+
+    /** Return the settings line of entry K, for a machine with alphabet
+     *  ALPHA. */
+    String settings(int k, Alphabet alpha) {
+        ByteBuffer chunk = chunk(k);
+        int at = offset(k);
+        int n = alpha.size();
+        StringBuilder line = new StringBuilder("*");
+        for (int i = 0; i < _slots; i += 1) {
+            line.append(' ').append(name(chunk, at, i));
+        }
+        line.append(' ');
+        for (int i = 0; i < _slots - 1; i += 1) {
+            line.appendCodePoint(alpha.toCodePoint(
+                ordinal(chunk, at + _positions, i, n)));
+        }
+        if (chunk.get(at + _ringsFlag) != 0) {
+            line.append(' ');
+            for (int i = 0; i < _slots - 1; i += 1) {
+                line.appendCodePoint(alpha.toCodePoint(
+                    ordinal(chunk, at + _ringsFlag + 1, i, n)));
+            }
+        }
+        for (int p = 0; p < pairs(chunk, at); p += 1) {
+            line.append(" (")
+                .appendCodePoint(alpha.toCodePoint(
+                    ordinal(chunk, at + _pairCount + 2, 2 * p, n)))
+                .appendCodePoint(alpha.toCodePoint(
+                    ordinal(chunk, at + _pairCount + 2, 2 * p + 1, n)))
+                .append(')');
+        }
+        return line.toString();
+    }
+
+    /** Return the name of the rotor in slot I of the entry at AT in
+     *  CHUNK. */
+    private String name(ByteBuffer chunk, int at, int i) {
+        int r = Short.toUnsignedInt(chunk.getShort(at + LABEL_SIZE + 2 * i));
+        if (r >= _names.length) {
+            throw error("bad rotor in key sheet");
+        }
+        return _names[r];
+    }
+
+    /** Return the number of plugboard pairs of the entry at AT in
+     *  CHUNK. */
+    private int pairs(ByteBuffer chunk, int at) {
+        int pairs = Short.toUnsignedInt(chunk.getShort(at + _pairCount));
+        if (pairs > _maxPairs) {
+            throw error("bad plugboard in key sheet");
+        }
+        return pairs;
+    }
+
+    /** Return ordinal number I of those starting at AT in CHUNK, checking
+     *  that it is less than N. */
+    private int ordinal(ByteBuffer chunk, int at, int i, int n) {
+        int v = _width == 1 ? Byte.toUnsignedInt(chunk.get(at + i))
+            : Short.toUnsignedInt(chunk.getShort(at + 2 * i));
+        if (v >= n) {
+            throw error("bad ordinal in key sheet");
+        }
+        return v;
+    }
+
+    /** Return the mapped chunk holding entry K. */
+    private ByteBuffer chunk(int k) {
+        if (k < 0 || k >= _size) {
+            throw error("no key sheet entry %d", k);
+        }
+        return _chunks[k / _perChunk];
+    }
+
+    /** Return the offset of entry K in its chunk. */
+    private int offset(int k) {
+        return (k % _perChunk) * _recordSize;
+    }
+
+    /** A plugboard of pairs that can be changed in place. */
+    private static final class Plugboard extends Permutation {
+        /** An identity plugboard on ALPHA. */
+        Plugboard(Alphabet alpha) {
+            super("", alpha);
+            _map = new int[alpha.size()];
+            clear();
+        }
+
+        /** Remove all my pairs. */
+        void clear() {
+            for (int i = 0; i < _map.length; i += 1) {
+                _map[i] = i;
+            }
+        }
+
+        /** Add the pair A, B. */
+        void swap(int a, int b) {
+            _map[a] = b;
+            _map[b] = a;
+        }
+
+        @Override
+        int permute(int p) {
+            return _map[wrap(p)];
+        }
+
+        @Override
+        int invert(int c) {
+            return _map[wrap(c)];
+        }
+
+        @Override
+        String[] cycles() {
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < _map.length; i += 1) {
+                if (_map[i] > i) {
+                    result.add(new StringBuilder()
+                               .appendCodePoint(alphabet().toCodePoint(i))
+                               .appendCodePoint(alphabet()
+                                                .toCodePoint(_map[i]))
+                               .toString());
+                }
+            }
+            return result.toArray(new String[0]);
+        }
+
+        /** My mapping. */
+        private final int[] _map;
+    }
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Bytes per ordinal. */
+    private final int _width;
+
+    /** Greatest number of plugboard pairs in an entry. */
+    private final int _maxPairs;
+
+    /** Number of entries. */
+    private final int _size;
+
+    /** Rotor names, by index. */
+    private final String[] _names;
+
+    /** Offset in the file of the first entry. */
+    private final long _base;
+
+    /** Offsets within an entry of its positions, rings flag, and pair
+     *  count. */
+    private final int _positions, _ringsFlag, _pairCount;
+
+    /** Size of an entry. */
+    private final int _recordSize;
+
+    /** Number of entries in each mapped chunk. */
+    private final int _perChunk;
+
+    /** The entries, in mapped chunks of _perChunk entries. */
+    private final ByteBuffer[] _chunks;
+}
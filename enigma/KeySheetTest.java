@@ -0,0 +1,88 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Vikram Cherukuri
+ */
+public class KeySheetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A small configuration, with 2 reflectors, 3 moving rotors, and
+     *  3 rotor slots. */
+    private static final String CONFIG =
+        "ABCDEF\n3 2\n"
+        + " R1 R (AB) (CD) (EF)\n"
+        + " R2 R (AF) (BE) (CD)\n"
+        + " X MA (ABC) (DEF)\n"
+        + " Y MD (ADBFCE)\n"
+        + " Z MBE (AB) (CDE)\n";
+
+    /** Labels and settings of a key sheet, not in label order. */
+    private static final String[][] ENTRIES = {
+        {"RED-0002", "* R2 Z X CF DB (AE)"},
+        {"BLUE-0001", "* R1 X Y AB"},
+        {"RED-0001", "* R1 Y Z FF (AB) (CD) (EF)"},
+        {"GREEN", "* R2 X Z BD EE (FC)"},
+    };
+
+    /** A message. */
+    private static final String MSG = "FACADEBEADCAFEBABEDEAFFACE";
+
+    @Test
+    public void testCompileAndApply() throws IOException {
+        MachineConfig config = new MachineConfig(new Scanner(CONFIG));
+        Alphabet alpha = config.alphabet();
+        File text = File.createTempFile("keys", ".txt");
+        File sheetFile = File.createTempFile("keys", ".sheet");
+        try {
+            StringBuilder lines = new StringBuilder();
+            for (String[] e : ENTRIES) {
+                lines.append(e[0]).append(' ').append(e[1]).append('\n');
+            }
+            Files.write(text.toPath(),
+                        lines.toString().getBytes(StandardCharsets.UTF_8));
+            assertEquals(ENTRIES.length,
+                         KeySheet.compile(config, text, sheetFile));
+
+            KeySheet sheet = new KeySheet(sheetFile);
+            assertEquals(ENTRIES.length, sheet.size());
+            assertEquals(-1, sheet.find(KeySheet.label("RED-0003")));
+            assertEquals(0, sheet.find(KeySheet.label("BLUE-0001")));
+            for (String[] e : ENTRIES) {
+                int k = sheet.find(KeySheet.label(e[0]));
+                assertTrue(k >= 0);
+                assertEquals(e[1], sheet.settings(k, alpha));
+                Machine fromText = config.newMachine();
+                Machine fromSheet = config.newMachine();
+                Main.setUp(fromText, e[1]);
+                sheet.apply(k, fromSheet);
+                assertEquals(e[0], fromText.convert(MSG),
+                             fromSheet.convert(MSG));
+            }
+        } finally {
+            text.delete();
+            sheetFile.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLongLabel() {
+        KeySheet.label("NETWORK-NAME-TOO-LONG");
+    }
+
+}
@@ -0,0 +1,167 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The ring and position settings of the rotors of a machine with a
+ *  given rotor order, up to equivalence for messages of a given length.
+ *  A rotor's wiring depends only on its offset, its position less its
+ *  ring setting, so its ring setting matters only through the timing of
+ *  its notches: when its position lets the rotor to its left advance.
+ *  That timing matters only if the rotor to its left moves, and then
+ *  only at the positions the rotor passes through during the message.
+ *  So two settings of a rotor are equivalent if they have the same
+ *  offset and their positions are at notches at the same steps of the
+ *  message, and each slot after the reflector has the alphabet size
+ *  times the number of such timing classes of settings, rather than the
+ *  square of the alphabet size.  For a rotor whose left neighbor does
+ *  not move there is one class; for one whose neighbor does, and with
+ *  one notch, there are about as many as the message is long.
+ *
+ *  The classes are numbered by an index, timing() * offsets() + offset,
+ *  in which the offset numbers the offsets of the slots in alphabet
+ *  order, rightmost fastest, and the timing so numbers the timing
+ *  classes.  Each class is represented by the setting that has ring 0
+ *  if the class has one, and otherwise the one with the least
+ *  position.
+ *  @author Vikram Cherukuri
+ */
+final class KeySpace {
+
+    /** The settings of the rotors now in M, up to equivalence for
+     *  messages of at most HORIZON characters. */
+    KeySpace(Machine m, int horizon) {
+        Rotor[] rotors = m.rotors();
+        _size = m.alphabet().size();
+        _slots = rotors.length - 1;
+        _classOf = new int[rotors.length][];
+        _least = new int[rotors.length][];
+        long timings = 1, offsets = 1;
+        for (int i = 1; i < rotors.length; i += 1) {
+            if (rotors[i].rotates() && rotors[i - 1].rotates()) {
+                classify(i, rotors[i], Math.min(horizon, _size));
+            } else {
+                _classOf[i] = new int[_size];
+                _least[i] = new int[] { 0 };
+            }
+            try {
+                timings = Math.multiplyExact(timings, _least[i].length);
+                offsets = Math.multiplyExact(offsets, _size);
+                Math.multiplyExact(timings, offsets);
+            } catch (ArithmeticException excp) {
+                throw error("key space too large");
+            }
+        }
+        _timings = timings;
+        _offsets = offsets;
+    }
+
+    /** Fill _classOf[I] and _least[I] with the timing classes of ROTOR,
+     *  whose positions are equivalent if they are at notches at the same
+     *  ones of the next STEPS steps. */
+    private void classify(int i, Rotor rotor, int steps) {
+        int[] toNotch = new int[_size];
+        int next = Integer.MAX_VALUE;
+        for (int k = 2 * _size - 1; k >= 0; k -= 1) {
+            if (rotor.atNotch(k % _size)) {
+                next = k;
+            }
+            if (k < _size) {
+                toNotch[k] = next == Integer.MAX_VALUE ? next : next - k;
+            }
+        }
+        Map<List<Integer>, Integer> classes = new HashMap<>();
+        List<Integer> least = new ArrayList<>();
+        _classOf[i] = new int[_size];
+        for (int p = 0; p < _size; p += 1) {
+            List<Integer> notches = new ArrayList<>();
+            for (long t = toNotch[p]; t < steps;
+                 t += 1 + toNotch[(int) ((p + t + 1) % _size)]) {
+                notches.add((int) t);
+            }
+            Integer c = classes.get(notches);
+            if (c == null) {
+                c = least.size();
+                classes.put(notches, c);
+                least.add(p);
+            }
+            _classOf[i][p] = c;
+        }
+        _least[i] = least.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return the number of timing classes. */
+    long timings() {
+        return _timings;
+    }
+
+    /** Return the number of combinations of offsets. */
+    long offsets() {
+        return _offsets;
+    }
+
+    /** Return the number of classes of settings. */
+    long size() {
+        return _timings * _offsets;
+    }
+
+    /** Return the number of ring and position settings of all rotors
+     *  after the reflector divided by size(). */
+    double reduction() {
+        return Math.pow(_size, 2.0 * _slots) / size();
+    }
+
+    /** Return the index of the class of the current rings and positions
+     *  of the rotors in M, which has the rotors I was made from. */
+    long index(Machine m) {
+        Rotor[] rotors = m.rotors();
+        long timing = 0, offset = 0;
+        for (int i = 1; i < rotors.length; i += 1) {
+            int p = rotors[i].setting();
+            timing = timing * _least[i].length + _classOf[i][p];
+            offset = offset * _size
+                + Math.floorMod(p - rotors[i].ring(), _size);
+        }
+        return timing * _offsets + offset;
+    }
+
+    /** Set the rings and positions of the rotors of M, which has the
+     *  rotors I was made from, to the representative of class INDEX. */
+    void apply(Machine m, long index) {
+        Rotor[] rotors = m.rotors();
+        long timing = index / _offsets, offset = index % _offsets;
+        for (int i = rotors.length - 1; i >= 1; i -= 1) {
+            int c = (int) (timing % _least[i].length);
+            int d = (int) (offset % _size);
+            timing /= _least[i].length;
+            offset /= _size;
+            int p = _classOf[i][d] == c ? d : _least[i][c];
+            rotors[i].setRing(Math.floorMod(p - d, _size));
+            rotors[i].set(p);
+        }
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots after the reflector. */
+    private final int _slots;
+
+    /** Number of timing classes. */
+    private final long _timings;
+
+    /** Number of combinations of offsets. */
+    private final long _offsets;
+
+    /** For each slot after the reflector, the timing class of each
+     *  position. */
+    private final int[][] _classOf;
+
+    /** For each slot after the reflector, the least position in each
+     *  timing class. */
+    private final int[][] _least;
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Vikram Cherukuri
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with rotors ORDER and plugboard (TR) (AK). */
+    private static Machine newMachine(String... order) {
+        Machine m = navalMachine();
+        m.insertRotors(order);
+        m.setPlugboard(new Permutation("(TR) (AK)", UPPER));
+        return m;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSize() {
+        Machine m = newMachine("B", "Beta", "III", "IV", "I");
+        KeySpace space = new KeySpace(m, 10);
+        assertEquals(11 * 11, space.timings());
+        assertEquals(26 * 26 * 26 * 26, space.offsets());
+        assertEquals(26.0 * 26 * 26 * 26 / 121, space.reduction(), 1e-9);
+        assertEquals(26 * 26, new KeySpace(m, 100).timings());
+        m = newMachine("B", "Beta", "I", "III", "VI");
+        assertEquals(21 * 13, new KeySpace(m, 20).timings());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(47);
+        Machine m = newMachine("B", "Beta", "IV", "VI", "III");
+        KeySpace space = new KeySpace(m, 30);
+        for (int trial = 0; trial < 1000; trial += 1) {
+            long index = (long) (random.nextDouble() * space.size());
+            space.apply(m, index);
+            assertEquals(index, space.index(m));
+        }
+    }
+
+    @Test
+    public void testEquivalence() {
+        Random random = new Random(48);
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "B", "Beta", "I", "III", "VI" },
+            { "B", "Beta", "VI", "IV", "III" },
+        };
+        for (int trial = 0; trial < 600; trial += 1) {
+            String[] order = orders[trial % orders.length];
+            int horizon = 1 + random.nextInt(40);
+            Machine a = newMachine(order), b = newMachine(order);
+            KeySpace space = new KeySpace(a, horizon);
+            Rotor[] rotors = a.rotors();
+            for (int i = 1; i < rotors.length; i += 1) {
+                rotors[i].setRing(random.nextInt(26));
+                rotors[i].set(random.nextInt(26));
+            }
+            long index = space.index(a);
+            space.apply(b, index);
+            assertEquals(index, space.index(b));
+            for (int i = 1; i < rotors.length; i += 1) {
+                assertEquals(Math.floorMod(rotors[i].setting()
+                                           - rotors[i].ring(), 26),
+                             Math.floorMod(b.rotors()[i].setting()
+                                           - b.rotors()[i].ring(), 26));
+            }
+            for (int c : randomMessage(horizon, random)) {
+                assertEquals(a.convert(c), b.convert(c));
+            }
+        }
+    }
+}
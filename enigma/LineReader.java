@@ -0,0 +1,151 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.Charset;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A reader that splits a stream of bytes into lines without decoding
+ *  them.  Lines end with "\n" or "\r\n"; a final line need not be
+ *  terminated.  The bytes of the current line stay in a reusable buffer
+ *  until the next call to nextLine().
+ *  @author Vikram Cherukuri
+ */
+class LineReader {
+
+    /** Initial size of my buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader taking its lines from INPUT. */
+    LineReader(InputStream input) {
+        this(input, 0);
+    }
+
+    /** A reader taking its lines from INPUT, whose first byte is at
+     *  byte offset OFFSET of the underlying file. */
+    LineReader(InputStream input, long offset) {
+        _input = input;
+        _buffer = new byte[BUFFER_SIZE];
+        _offset = offset;
+    }
+
+    /** Advance to the next line of my input, returning false (and
+     *  leaving no current line) if there are no more lines. */
+    boolean nextLine() {
+        _offset += _next - _start;
+        _start = _next;
+        int scan = _start;
+        while (true) {
+            for (; scan < _limit; scan += 1) {
+                if (_buffer[scan] == '\n') {
+                    _next = scan + 1;
+                    _end = scan > _start && _buffer[scan - 1] == '\r'
+                        ? scan - 1 : scan;
+                    return true;
+                }
+            }
+            if (_eof) {
+                if (_start == _limit) {
+                    _end = _next = _start;
+                    return false;
+                }
+                _end = _next = _limit;
+                return true;
+            }
+            scan -= _start;
+            fill();
+        }
+    }
+
+    /** Return the buffer holding the current line. */
+    byte[] buffer() {
+        return _buffer;
+    }
+
+    /** Return the index of the first byte of the current line in
+     *  buffer(). */
+    int start() {
+        return _start;
+    }
+
+    /** Return the index just past the last byte of the current line
+     *  (excluding its terminator) in buffer(). */
+    int end() {
+        return _end;
+    }
+
+    /** Return true iff the current line is non-empty and begins with
+     *  the byte CH. */
+    boolean startsWith(char ch) {
+        return _end > _start && _buffer[_start] == ch;
+    }
+
+    /** Return the current line, decoded according to CHARSET. */
+    String line(Charset charset) {
+        return new String(_buffer, _start, _end - _start, charset);
+    }
+
+    /** Return the byte offset in my input of the start of the current
+     *  line. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Return the byte offset in my input just past the current line
+     *  and its terminator. */
+    long nextOffset() {
+        return _offset + _next - _start;
+    }
+
+    /** Move the unread part of my buffer to its front and read more bytes
+     *  after it, growing the buffer if a single line fills it. */
+    private void fill() {
+        int kept = _limit - _start;
+        if (kept == _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length);
+        } else if (_start > 0) {
+            System.arraycopy(_buffer, _start, _buffer, 0, kept);
+        }
+        _next -= _start;
+        _start = 0;
+        _limit = kept;
+        try {
+            int n = _input.read(_buffer, _limit, _buffer.length - _limit);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Source of my bytes. */
+    private final InputStream _input;
+
+    /** Buffered bytes of my input. */
+    private byte[] _buffer;
+
+    /** Start of the current line in _buffer. */
+    private int _start;
+
+    /** End of the current line (excluding its terminator) in _buffer. */
+    private int _end;
+
+    /** Start of the line following the current one in _buffer. */
+    private int _next;
+
+    /** Number of valid bytes in _buffer. */
+    private int _limit;
+
+    /** Byte offset in my input of _buffer[_start]. */
+    private long _offset;
+
+    /** True once my input is exhausted. */
+    private boolean _eof;
+}
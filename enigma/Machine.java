@@ -1,5 +1,8 @@
 package enigma;
 
+import java.io.File;
+import java.io.PrintStream;
+
 import java.util.Collection;
 
 
@@ -15,10 +18,17 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorLibrary(allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  of LIBRARY. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorLibrary library) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
+        _library = library;
         _rotors = new Rotor[numRotors];
 
         if (numRotors <= 1) {
@@ -44,25 +54,45 @@ class Machine {
         return _pawls;
     }
 
-    /** Return the number pawls (and thus rotating rotors) I have. */
+    /** Return all my available rotors, making any not yet made. */
     Collection<Rotor> allRotors() {
-        return _allRotors;
+        return _library.all();
+    }
+
+    /** Return the library of my available rotors. */
+    RotorLibrary library() {
+        return _library;
     }
 
-    /** Return the array of rotors. */
+    /** Return the array of rotors.  Changes made to the rotors through
+     *  this array must precede the next conversion. */
     Rotor[] rotors() {
+        detach();
         return _rotors;
     }
 
+    /** Return the settings of my rotors, starting with the reflector,
+     *  without changing how I convert. */
+    int[] settings() {
+        if (_compiled != null) {
+            _compiled.store(_rotors);
+        }
+        int[] result = new int[numRotors()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _rotors[i].setting();
+        }
+        return result;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        detach();
         for (int i = 0; i < rotors.length; i++) {
-            for (Rotor r: _allRotors) {
-                if (rotors[i].equals(r.name())) {
-                    _rotors[i] = r;
-                }
+            Rotor r = _library.get(rotors[i]);
+            if (r != null) {
+                _rotors[i] = r;
             }
         }
 
@@ -81,38 +111,104 @@ class Machine {
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        detach();
+        if (setting.codePointCount(0, setting.length()) != numRotors() - 1) {
             throw new EnigmaException("String setting is of incorrect length");
         }
 
+        int[] chars = setting.codePoints().toArray();
         for (int i = 1; i < numRotors(); i++) {
-            char ch = setting.charAt(i - 1);
-            _rotors[i].set(_alphabet.toInt(ch));
+            _rotors[i].set(_alphabet.toIndex(chars[i - 1]));
         }
     }
 
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        detach();
         _plugboard = plugboard;
     }
 
+    /** Set whether I convert through a CompiledMachine specialized to my
+     *  current configuration, according to SPECIALIZED.  When no such
+     *  machine can be made, I use the general conversion logic. */
+    void setSpecialized(boolean specialized) {
+        detach();
+        _specialized = specialized;
+    }
+
+    /** Choose for each configuration whether to convert through a
+     *  CompiledMachine, and after how many characters, according to
+     *  MODEL, overriding setSpecialized, or stop choosing if MODEL is
+     *  null. */
+    void setCostModel(CostModel model) {
+        detach();
+        _costModel = model;
+    }
+
+    /** Describe each choice made by my cost model on LOG, or nowhere if
+     *  LOG is null. */
+    void setEngineLog(PrintStream log) {
+        _engineLog = log;
+    }
+
+    /** Keep the tables of my CompiledMachines outside the heap iff
+     *  OFFHEAP: in memory-mapped files in directory DIR, or in direct
+     *  buffers if DIR is null. */
+    void setOffHeapTables(boolean offHeap, File dir) {
+        detach();
+        _offHeap = offHeap;
+        _tableDir = dir;
+    }
+
+    /** Return true iff I am currently converting through a
+     *  CompiledMachine. */
+    boolean specialized() {
+        return _compiled != null;
+    }
+
+    /** Stop converting through my CompiledMachine, if any, first copying
+     *  its rotor positions back into my rotors, and forget how many
+     *  quiet steps remain. */
+    private void detach() {
+        if (_compiled != null) {
+            _compiled.store(_rotors);
+            _compiled = null;
+        }
+        _compileAfter = UNDECIDED;
+        _quietSteps = 0;
+        _blockReady = false;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        int input = _plugboard.permute(c);
-
-        for (int i = 1; i < numRotors() - 1; i++) {
-            if (_rotors[i + 1].atNotch() && _rotors[i].rotates()) {
-                _rotors[i].advance();
-                if (i != numRotors() - 2) {
-                    _rotors[i + 1].advance();
-                    i++;
+        if (_compiled != null) {
+            return _compiled.convert(c);
+        } else if (_compileAfter != NEVER) {
+            if (_compileAfter == UNDECIDED) {
+                _compileAfter = chooseEngine();
+            }
+            if (_compileAfter == 0) {
+                _compileAfter = NEVER;
+                _compiled = CompiledMachine.compile(_alphabet, _rotors,
+                                                    _plugboard, _offHeap,
+                                                    _tableDir);
+                if (_compiled != null) {
+                    return _compiled.convert(c);
                 }
+            } else if (_compileAfter != NEVER) {
+                _compileAfter -= 1;
             }
         }
 
-        _rotors[numRotors() - 1].advance();
+        int input = _plugboard.permute(c);
+        step();
 
         for (int i = numRotors() - 1; i >= 0; i--) {
             input = _rotors[i].convertForward(input);
@@ -124,16 +220,222 @@ class Machine {
         return _plugboard.permute(input);
     }
 
+    /** Advance my rotors as for one conversion. */
+    private void step() {
+        if (_quietSteps > 0) {
+            _quietSteps -= 1;
+            _rotors[numRotors() - 1].advance();
+        } else {
+            for (int i = 1; i < numRotors() - 1; i++) {
+                if (_rotors[i + 1].atNotch() && _rotors[i].rotates()) {
+                    _rotors[i].advance();
+                    if (i != numRotors() - 2) {
+                        _rotors[i + 1].advance();
+                        i++;
+                    }
+                }
+            }
+
+            _rotors[numRotors() - 1].advance();
+            _quietSteps = quietSteps();
+        }
+    }
+
+    /** Replace each of MSG[START .. END-1] with its conversion, as by
+     *  convert(int) on each in turn.  When I interpret my configuration,
+     *  the conversion is done BLOCK characters at a time in two passes:
+     *  the first runs the stepping logic for the whole block, recording
+     *  the offset of each moving rotor at each character, and the second
+     *  takes the block through the plugboard and each rotor in turn, with
+     *  one loop per rotor that has no branches, through tables from
+     *  Permutation.blockTable(). */
+    void convert(int[] msg, int start, int end) {
+        if (_compileAfter == UNDECIDED && _compiled == null) {
+            _compileAfter = chooseEngine();
+        }
+        int n = _alphabet.size();
+        if (_compiled != null || _compileAfter != NEVER
+            || n > MAX_BLOCK_ALPHABET || !blockTables()) {
+            for (int k = start; k < end; k += 1) {
+                msg[k] = convert(msg[k]);
+            }
+            return;
+        }
+        for (int k = start; k < end; k += BLOCK) {
+            convertBlock(msg, k, Math.min(BLOCK, end - k));
+        }
+    }
+
+    /** Make the tables for converting in blocks, unless they are ready,
+     *  returning false if my configuration cannot be converted so. */
+    private boolean blockTables() {
+        if (_blockReady) {
+            return true;
+        }
+        if (_plugboard.blockTable(false) == null) {
+            return false;
+        }
+        for (Rotor r : _rotors) {
+            if (r.permutation().blockTable(false) == null) {
+                return false;
+            }
+        }
+        int n = numRotors();
+        if (_offsets == null) {
+            _offsets = new int[n][BLOCK];
+            _work = new int[BLOCK];
+            _moving = new int[n];
+            _tables = new int[2 * n][];
+        }
+        _numMoving = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (_rotors[i].rotates()) {
+                _moving[_numMoving] = i;
+                _numMoving += 1;
+            }
+            _tables[i] = _rotors[i].permutation().blockTable(false);
+            _tables[n + i] = _rotors[i].permutation().blockTable(true);
+        }
+        _blockReady = true;
+        return true;
+    }
+
+    /** Convert MSG[START .. START+LEN-1], where LEN <= BLOCK, as for
+     *  convert(int[], int, int). */
+    private void convertBlock(int[] msg, int start, int len) {
+        int n = _alphabet.size(), numRotors = numRotors();
+        for (int k = 0; k < len; k += 1) {
+            step();
+            for (int j = 0; j < _numMoving; j += 1) {
+                Rotor r = _rotors[_moving[j]];
+                int d = r.setting() - r.ring();
+                _offsets[_moving[j]][k] = d < 0 ? d + n : d;
+            }
+        }
+
+        int[] w = _work;
+        int[] plug = _plugboard.blockTable(false);
+        for (int k = 0; k < len; k += 1) {
+            w[k] = plug[_plugboard.wrap(msg[start + k])] - n;
+        }
+        for (int i = numRotors - 1; i >= 0; i -= 1) {
+            layer(i, _tables[i], len);
+        }
+        for (int i = 1; i < numRotors; i += 1) {
+            layer(i, _tables[numRotors + i], len);
+        }
+        for (int k = 0; k < len; k += 1) {
+            msg[start + k] = plug[w[k]] - n;
+        }
+    }
+
+    /** Take the first LEN entries of _work through the rotor in slot I,
+     *  using TABLE, its forward or inverse table from
+     *  Permutation.blockTable(). */
+    private void layer(int i, int[] table, int len) {
+        int[] w = _work;
+        Rotor r = _rotors[i];
+        if (r.rotates()) {
+            int[] offsets = _offsets[i];
+            for (int k = 0; k < len; k += 1) {
+                int o = offsets[k];
+                w[k] = table[w[k] + o] - o;
+            }
+        } else {
+            int n = _alphabet.size();
+            int o = Math.floorMod(r.setting() - r.ring(), n);
+            for (int k = 0; k < len; k += 1) {
+                w[k] = table[w[k] + o] - o;
+            }
+        }
+    }
+
+    /** Return the number of conversions to interpret in my current
+     *  configuration before compiling it, or NEVER. */
+    private int chooseEngine() {
+        if (_costModel == null && !_specialized && _engineLog == null) {
+            return NEVER;
+        }
+        int moving = CompiledMachine.moving(_alphabet, _rotors, _plugboard);
+        int result;
+        String reason;
+        if (_costModel == null && !_specialized) {
+            result = NEVER;
+            reason = "requested";
+        } else if (moving < 0) {
+            result = NEVER;
+            reason = "configuration cannot be compiled";
+        } else if (_costModel == null) {
+            result = 0;
+            reason = "requested";
+        } else if (_costModel.saving(numRotors()) <= 0) {
+            result = NEVER;
+            reason = "compiled conversion is no faster";
+        } else if (CompiledMachine.cached(_alphabet, _rotors, _plugboard,
+                                          _offHeap, _tableDir)) {
+            result = 0;
+            reason = "tables already built";
+        } else {
+            long bytes = CompiledMachine.tableBytes(_alphabet.size(),
+                                                    moving);
+            long budget = CostModel.memoryBudget();
+            if (!_offHeap && bytes > budget) {
+                result = NEVER;
+                reason = String.format("tables need %d bytes of %d "
+                                       + "available", bytes, budget);
+            } else {
+                result = _costModel.breakEven(_alphabet.size(),
+                                              numRotors(), moving);
+                reason = String.format("tables take about %.0f us to build "
+                                       + "and save %.1f ns per character",
+                                       _costModel.buildTime(
+                                           _alphabet.size(), moving) / 1e3,
+                                       _costModel.saving(numRotors()));
+            }
+        }
+        if (_engineLog != null) {
+            StringBuilder names = new StringBuilder();
+            for (Rotor r : _rotors) {
+                names.append(' ').append(r.name());
+            }
+            _engineLog.printf("engine:%s: %s (%s)%n", names,
+                              result == 0 ? "specialized"
+                              : result == NEVER ? "interpreter"
+                              : "specialized after " + result
+                                + " characters",
+                              reason);
+        }
+        return result;
+    }
+
+    /** Returns the number of conversions, starting with the next, before
+     *  which only the rightmost rotor can advance: that is, during which
+     *  no rotor that allows its left neighbor to advance is at a
+     *  notch. */
+    private int quietSteps() {
+        int n = numRotors();
+        for (int i = 1; i < n - 2; i++) {
+            if (_rotors[i + 1].atNotch() && _rotors[i].rotates()) {
+                return 0;
+            }
+        }
+        if (n > 2 && _rotors[n - 2].rotates() && _rotors[n - 1].rotates()) {
+            return _rotors[n - 1].stepsToNotch();
+        }
+        return Integer.MAX_VALUE;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int input = _alphabet.toInt(msg.charAt(i));
-            char ch = _alphabet.toChar(convert(input));
-            result += Character.toString(ch);
+        StringBuilder result = new StringBuilder(msg.length());
+        for (int i = 0; i < msg.length(); ) {
+            int c = msg.codePointAt(i);
+            int input = _alphabet.toIndex(c);
+            result.appendCodePoint(_alphabet.toCodePoint(convert(input)));
+            i += Character.charCount(c);
         }
-        return result;
+        return result.toString();
     }
 
     /** Common alphabet of my rotors. */
@@ -146,11 +448,74 @@ class Machine {
     private int _pawls;
 
     /** All available rotors in this machine. */
-    private Collection<Rotor> _allRotors;
+    private final RotorLibrary _library;
 
     /** Array of rotors ordered in this machine. */
     private Rotor[] _rotors;
 
     /** Plugboard of this machine. */
     private Permutation _plugboard;
+
+    /** True iff I should convert through a CompiledMachine. */
+    private boolean _specialized;
+
+    /** Model by which I choose whether to compile, or null. */
+    private CostModel _costModel;
+
+    /** Where I describe my cost model's choices, or null. */
+    private PrintStream _engineLog;
+
+    /** Number of conversions to interpret before compiling my current
+     *  configuration, or UNDECIDED, or NEVER. */
+    private int _compileAfter = UNDECIDED;
+
+    /** Value of _compileAfter before the next conversion decides it. */
+    private static final int UNDECIDED = -1;
+
+    /** Value of _compileAfter when I do not compile. */
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    /** True iff my CompiledMachines keep their tables off the heap. */
+    private boolean _offHeap;
+
+    /** Directory of memory-mapped table files, or null. */
+    private File _tableDir;
+
+    /** Specialized converter for my current configuration, or null. */
+    private CompiledMachine _compiled;
+
+    /** Number of characters convert(int[], int, int) converts at once
+     *  when interpreting. */
+    static final int BLOCK = 1024;
+
+    /** Size of the largest alphabet that convert(int[], int, int)
+     *  converts in blocks. */
+    static final int MAX_BLOCK_ALPHABET = 1024;
+
+    /** True iff _moving, _numMoving, and _tables describe my current
+     *  configuration. */
+    private boolean _blockReady;
+
+    /** Offsets of each of my rotors, less their rings, at each character
+     *  of the current block, for those that rotate. */
+    private int[][] _offsets;
+
+    /** Characters of the current block as they pass through my
+     *  plugboard and rotors. */
+    private int[] _work;
+
+    /** Slots of my rotors that rotate: _numMoving of them. */
+    private int[] _moving;
+
+    /** Number of entries of _moving in use. */
+    private int _numMoving;
+
+    /** Forward tables of my rotors, by slot, and then their inverse
+     *  tables, from Permutation.blockTable(). */
+    private int[][] _tables;
+
+    /** Number of conversions, starting with the next, that can advance
+     *  only the rightmost rotor.  Zero means that the full stepping
+     *  logic must run. */
+    private int _quietSteps;
 }
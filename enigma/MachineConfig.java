@@ -0,0 +1,364 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a machine configuration file: an alphabet, the
+ *  numbers of rotor slots and pawls, and descriptions of the available
+ *  rotors.  A configuration is read once and may then make any number of
+ *  independent Machines, each with its own rotors.
+ *
+ *  A configuration read from a file (see read) is indexed rather than
+ *  parsed: a first pass records the name of each rotor and where its
+ *  description starts, and a description is parsed only when a machine
+ *  first uses its rotor.  Errors in a description other than in its name
+ *  are then reported as when it is parsed up front, but only if the
+ *  rotor is used.
+ *  @author Vikram Cherukuri
+ */
+class MachineConfig {
+
+    /** A configuration read from CONFIG. */
+    MachineConfig(Scanner config) {
+        try {
+            readHeader(config);
+
+            if (!config.hasNext()) {
+                throw new EnigmaException("Bad Machine description");
+            }
+
+            while (config.hasNext()) {
+                readRotor(config, _names.size());
+            }
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** An empty configuration of FILE, which is read in CHARSET, to be
+     *  filled in by index. */
+    private MachineConfig(File file, Charset charset) {
+        _file = file;
+        _charset = charset;
+    }
+
+    /** Return the configuration read from the file named NAME. */
+    static MachineConfig read(String name) {
+        File file = new File(name);
+        Charset charset = Charset.defaultCharset();
+        if (file.isFile() && indexable(charset)) {
+            MachineConfig result = new MachineConfig(file, charset);
+            try {
+                if (result.index()) {
+                    return result;
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s", name);
+            }
+        }
+        Scanner config;
+        try {
+            config = new Scanner(file);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            return new MachineConfig(config);
+        } finally {
+            config.close();
+        }
+    }
+
+    /** Return true iff text in CHARSET can be split into lines at the
+     *  byte '\n', as LineReader does. */
+    private static boolean indexable(Charset charset) {
+        byte[] newline = "\n".getBytes(charset);
+        return newline.length == 1 && newline[0] == '\n';
+    }
+
+    /** Read my header from _file, and the names and positions of my
+     *  rotor descriptions.  Return false if _file has line terminators
+     *  other than '\n' where they would make the index differ from a
+     *  parse by Scanner, in which case it must be parsed instead. */
+    private boolean index() throws IOException {
+        try (InputStream in = new FileInputStream(_file)) {
+            LineReader lines = new LineReader(in);
+            StringBuilder header = new StringBuilder();
+            int tokens = -1;
+            while (tokens < 2 && lines.nextLine()) {
+                String line = lines.line(_charset);
+                header.append(line).append('\n');
+                tokens = tokens < 0 ? 0 : tokens + tokenCount(line);
+            }
+            Scanner config = new Scanner(header.toString());
+            try {
+                readHeader(config);
+            } catch (NoSuchElementException excp) {
+                throw error("configuration file truncated");
+            }
+            if (config.hasNextLine()) {
+                return false;
+            }
+
+            boolean expectName = true, expectNotches = false;
+            while (lines.nextLine()) {
+                String line = lines.line(_charset);
+                for (int i = 0; i < line.length();) {
+                    if (Character.isWhitespace(line.charAt(i))) {
+                        i += 1;
+                        continue;
+                    }
+                    int j = i;
+                    while (j < line.length()
+                           && !Character.isWhitespace(line.charAt(j))) {
+                        j += 1;
+                    }
+                    String token = line.substring(i, j);
+                    if (expectNotches) {
+                        expectNotches = false;
+                    } else if (expectName || !CYCLE.matcher(token).matches()) {
+                        if (token.contains("(") || token.contains(")")) {
+                            throw new EnigmaException("Incorrect name format");
+                        }
+                        _index.put(token, _names.size());
+                        _names.add(token);
+                        _starts.add(lines.offset());
+                        _skips.add(i);
+                        expectName = false;
+                        expectNotches = true;
+                    }
+                    i = j;
+                }
+            }
+            if (_names.isEmpty()) {
+                throw new EnigmaException("Bad Machine description");
+            }
+            for (int k = 0; k < _names.size(); k += 1) {
+                _permutations.add(null);
+                _notches.add(null);
+            }
+            return true;
+        }
+    }
+
+    /** Return the number of tokens in LINE. */
+    private static int tokenCount(String line) {
+        int result = 0;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            boolean white = Character.isWhitespace(line.charAt(i));
+            if (!white && !inToken) {
+                result += 1;
+            }
+            inToken = !white;
+        }
+        return result;
+    }
+
+    /** Read the alphabet and the numbers of slots and pawls from CONFIG,
+     *  followed by the rest of the line on which they end. */
+    private void readHeader(Scanner config) {
+        String alpha = config.nextLine();
+
+        if (alpha.contains("*") || alpha.contains("(")
+                || alpha.contains(")")) {
+            throw new EnigmaException("Incorrect name format");
+        }
+
+        _alphabet = Alphabet.of(alpha);
+
+        if (!config.hasNextInt()) {
+            throw new EnigmaException("Bad Machine description");
+        }
+        _numRotors = config.nextInt();
+
+        if (!config.hasNextInt()) {
+            throw new EnigmaException("Bad Machine description");
+        }
+        _pawls = config.nextInt();
+
+        config.nextLine();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a new machine with my alphabet, slots, and pawls, whose
+     *  available rotors are fresh copies of mine, made as it uses them. */
+    Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _pawls,
+                           new RotorLibrary(this));
+    }
+
+    /** Return the number of rotor descriptions I have. */
+    int numDescriptions() {
+        return _names.size();
+    }
+
+    /** Return the index of the last rotor description named NAME, or -1
+     *  if there is none. */
+    int indexOf(String name) {
+        Integer k = _index.get(name);
+        return k == null ? -1 : k;
+    }
+
+    /** Return a new rotor made from description K, parsing the description
+     *  if it has not been parsed. */
+    synchronized Rotor newRotor(int k) {
+        if (_permutations.get(k) == null) {
+            readRotor(new Scanner(description(k)), k);
+        }
+        return newRotor(_names.get(k), _permutations.get(k),
+                        _notches.get(k));
+    }
+
+    /** Return the text of rotor description K in _file: from its start
+     *  to the start of the next description or the end of the file. */
+    private String description(int k) {
+        long start = _starts.get(k), end;
+        int skip = _skips.get(k), tail;
+        try (RandomAccessFile file = new RandomAccessFile(_file, "r")) {
+            if (k + 1 < _starts.size()) {
+                end = _starts.get(k + 1);
+                tail = _skips.get(k + 1);
+            } else {
+                end = file.length();
+                tail = 0;
+            }
+            byte[] lines = new byte[(int) (end - start)];
+            file.seek(start);
+            file.readFully(lines);
+            String result = new String(lines, _charset);
+            if (tail > 0) {
+                LineReader last = new LineReader(
+                    Channels.newInputStream(file.getChannel()));
+                last.nextLine();
+                result += last.line(_charset).substring(0, tail);
+            }
+            return result.substring(skip);
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+    }
+
+    /** Read a rotor description from CONFIG and record it as description
+     *  K, which is either new or has been indexed. */
+    private void readRotor(Scanner config, int k) {
+        try {
+            String name = config.next();
+
+            if (name.contains(" ") || name.contains("(")
+                    || name.contains(")")) {
+                throw new EnigmaException("Incorrect name format");
+            }
+
+            String notches = config.next();
+
+            String cycles = "", curr = "";
+            while (config.hasNext(CYCLE)) {
+                curr = config.next(CYCLE);
+                cycles += curr;
+            }
+
+            for (int i = 0; i < cycles.length(); i++) {
+                if (cycles.charAt(i) == ')' && i != cycles.length() - 1) {
+                    cycles = cycles.substring(0, i + 1) + " "
+                            + cycles.substring(i + 1, cycles.length());
+                }
+            }
+
+            Permutation perm = new Permutation(cycles, _alphabet);
+            newRotor(name, perm, notches);
+            if (k == _names.size()) {
+                _index.put(name, k);
+                _names.add(name);
+                _permutations.add(perm);
+                _notches.add(notches);
+            } else {
+                _permutations.set(k, perm);
+                _notches.set(k, notches);
+            }
+
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return a new rotor named NAME with permutation PERM, whose type
+     *  and notches are given by NOTCHES as in a configuration file. */
+    private static Rotor newRotor(String name, Permutation perm,
+                                  String notches) {
+        if (notches.charAt(0) == 'M') {
+            if (notches.charAt(1) == ' ') {
+                throw new EnigmaException("Space required between "
+                        + "class and notches");
+            }
+            return new MovingRotor(name, perm,
+                    notches.substring(1, notches.length()));
+        } else if (notches.charAt(0) == 'N') {
+            return new FixedRotor(name, perm);
+        } else if (notches.charAt(0) == 'R') {
+            return new Reflector(name, perm);
+        } else {
+            throw new EnigmaException("Incorrect rotor type");
+        }
+    }
+
+    /** Form of each cycle of a rotor description. */
+    private static final Pattern CYCLE = Pattern.compile("\\(.+?\\)");
+
+    /** File from which my rotor descriptions are parsed as needed, or
+     *  null if they have all been parsed. */
+    private File _file;
+
+    /** Character set of _file. */
+    private Charset _charset;
+
+    /** Alphabet of this configuration. */
+    private Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private int _numRotors;
+
+    /** Number of pawls. */
+    private int _pawls;
+
+    /** Names of the available rotors. */
+    private final List<String> _names = new ArrayList<>();
+
+    /** Index in _names of the last occurrence of each name. */
+    private final Map<String, Integer> _index = new HashMap<>();
+
+    /** Permutations of the available rotors, as for _names, with null
+     *  for those not yet parsed. */
+    private final List<Permutation> _permutations = new ArrayList<>();
+
+    /** Types and notches of the available rotors, as for _names, with
+     *  null for those not yet parsed. */
+    private final List<String> _notches = new ArrayList<>();
+
+    /** Byte offsets in _file of the lines on which the rotor
+     *  descriptions start, as for _names. */
+    private final List<Long> _starts = new ArrayList<>();
+
+    /** Character offsets within those lines of the descriptions. */
+    private final List<Integer> _skips = new ArrayList<>();
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MachineConfig and RotorLibrary
+ *  classes.
+ *  @author Vikram Cherukuri
+ */
+public class MachineConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration whose rotor descriptions are laid out in several
+     *  ways: several to a line, over several lines, with tabs and
+     *  carriage returns, and with a later rotor named as an earlier. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\r\n 5 3 ignored\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP)\r\n (ESZ) (BJ) (GR) (NT) (A) (Q)"
+        + "\tIII MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX) B R (AE) (BN)\n"
+        + "      (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n"
+        + " IV MA     (AB)\n";
+
+    /** Return the configuration read from a file containing TEXT. */
+    private static MachineConfig read(String text) throws IOException {
+        File file = File.createTempFile("config", ".conf");
+        try {
+            Files.write(file.toPath(),
+                        text.getBytes(Charset.defaultCharset()));
+            return MachineConfig.read(file.getPath());
+        } finally {
+            file.deleteOnExit();
+        }
+    }
+
+    /** Assert that rotors R and S have the same name, kind, and wiring. */
+    private static void assertSameRotor(Rotor r, Rotor s) {
+        assertEquals(r.name(), s.name());
+        assertEquals(r.getClass(), s.getClass());
+        assertEquals(r.rotates(), s.rotates());
+        for (int i = 0; i < r.size(); i += 1) {
+            assertEquals(r.convertForward(i), s.convertForward(i));
+            if (r.rotates()) {
+                assertEquals(r.atNotch(), s.atNotch());
+                r.set(i);
+                s.set(i);
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndexMatchesParse() throws IOException {
+        Machine parsed =
+            new MachineConfig(new Scanner(CONFIG)).newMachine();
+        Machine indexed = read(CONFIG).newMachine();
+        assertEquals(parsed.allRotors().size(), indexed.allRotors().size());
+        for (String name : new String[] {"I", "II", "III", "IV", "Beta",
+                                         "B"}) {
+            assertSameRotor(parsed.library().get(name),
+                            indexed.library().get(name));
+        }
+        assertEquals(7, indexed.library().size());
+        Rotor[] p = parsed.allRotors().toArray(new Rotor[0]);
+        Rotor[] q = indexed.allRotors().toArray(new Rotor[0]);
+        for (int k = 0; k < p.length; k += 1) {
+            assertSameRotor(p[k], q[k]);
+        }
+    }
+
+    @Test
+    public void testLazy() throws IOException {
+        String text = CONFIG + " BAD MQ (AB1)\n Bad2 Q (AB)\n";
+        MachineConfig config = read(text);
+        Machine m = config.newMachine();
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        RotorLibrary library = m.library();
+        assertEquals(9, library.size());
+        assertEquals(6, config.indexOf("IV"));
+        assertEquals(7, config.indexOf("BAD"));
+        assertEquals(-1, config.indexOf("V"));
+        assertNotNull(library.made(config.indexOf("II")));
+        assertNull(library.made(config.indexOf("IV")));
+        assertNull(library.made(config.indexOf("BAD")));
+
+        Machine expected =
+            new MachineConfig(new Scanner(CONFIG)).newMachine();
+        for (Machine machine : new Machine[] {expected, m}) {
+            machine.insertRotors(
+                new String[] {"B", "Beta", "I", "II", "III"});
+            machine.setRotors("AXLE");
+            machine.setPlugboard(new Permutation("(TR)", m.alphabet()));
+        }
+        assertEquals(expected.convert("FROMHISSHOULDERHIAWATHA"),
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        String[] bad = {
+            CONFIG + " BAD MQ (AB1)\n", CONFIG + " BAD Q (AB)\n",
+            CONFIG + " BAD\n", CONFIG + " (BAD MQ (AB)\n",
+            "ABC\n 5\n", "ABC\n", "ABC\n 5 3\n",
+            "A(BC\n 5 3\n X R (AB)\n",
+        };
+        for (String text : bad) {
+            String message = null;
+            try {
+                new MachineConfig(new Scanner(text));
+                fail("bad configuration accepted: " + text);
+            } catch (EnigmaException excp) {
+                message = excp.getMessage();
+            }
+            try {
+                read(text).newMachine().insertRotors(
+                    new String[] {"B", "Beta", "I", "II", "BAD"});
+                fail("bad configuration accepted: " + text);
+            } catch (EnigmaException excp) {
+                assertEquals(message, excp.getMessage());
+            }
+        }
+    }
+}
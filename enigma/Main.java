@@ -1,14 +1,23 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static enigma.EnigmaException.*;
 
@@ -18,14 +27,49 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 once options
+     *  are removed.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options may appear anywhere in ARGS:
+     *    --checkpoint FILE  periodically record progress in FILE.
+     *    --checkpoint-interval N  record progress after about every N
+     *                       bytes of input (default 64 MiB).
+     *    --resume           continue from the checkpoint in FILE, if
+     *                       there is one.
+     *    --engine NAME      convert with the named engine: interpreter,
+     *                       specialized, or auto (the default), which
+     *                       chooses for each settings line.
+     *    --cost-model FILE  have auto use the costs recorded in FILE,
+     *                       first measuring and recording them there if
+     *                       FILE does not exist.
+     *    --log-engine       report each choice of engine, and why, on
+     *                       the standard error.
+     *    --tables WHERE     keep the specialized engine's tables on the
+     *                       heap (the default) or off-heap.
+     *    --table-dir DIR    keep off-heap tables in memory-mapped files
+     *                       in DIR, reusing any already there.
+     *    --gzip             read and write gzip-compressed messages,
+     *                       as is done anyway for files named *.gz.
+     *    --stats FILE       write the index of coincidence, entropy, and
+     *                       chi-squared statistic of the output of each
+     *                       settings line, and of all output, to FILE.
+     *    --cache BYTES      keep up to BYTES of converted messages in
+     *                       memory, and reuse them for the same messages
+     *                       under machines set up the same way.
+     *    --cache-file FILE  also keep converted messages in FILE, from
+     *                       run to run.
+     *    --log-cache        report the use of the cache on the standard
+     *                       error.
+     *  Checkpoints require both an input and an output file, neither of
+     *  them compressed.  Neither checkpoints nor --stats may be used with
+     *  --cache. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -38,169 +82,450 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        List<String> files = parseOptions(args);
+        if (files.size() < 1 || files.size() > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
+        if (_checkpointFile != null && files.size() < 3) {
+            throw error("checkpoints require input and output files");
+        }
+        if (_checkpointFile != null
+            && (compressed(files.get(1)) || compressed(files.get(2)))) {
+            throw error("checkpoints cannot be used with compressed files");
+        }
+        if (_resume) {
+            if (_checkpointFile == null) {
+                throw error("--resume requires --checkpoint");
+            }
+            _resumed = Checkpoint.read(_checkpointFile);
+        }
+        if (_cacheSize > 0) {
+            if (_checkpointFile != null || _statsFile != null) {
+                throw error("--cache cannot be used with checkpoints "
+                            + "or --stats");
+            }
+            _cache = _cacheFile == null ? new ResultCache(_cacheSize)
+                : new ResultCache(_cacheSize, _cacheFile);
+        } else if (_cacheFile != null || _logCache) {
+            throw error("--cache-file and --log-cache require --cache");
+        }
+        long inputOffset = _resumed == null ? 0 : _resumed.inputOffset();
+        long outputOffset = _resumed == null ? 0 : _resumed.outputOffset();
+
+        if (_statsFile != null) {
+            try {
+                _stats = new PrintStream(_statsFile);
+            } catch (IOException excp) {
+                throw error("could not open %s", _statsFile);
+            }
+        }
 
-        _config = getInput(args[0]);
+        _configName = files.get(0);
+        if (!new File(_configName).canRead()) {
+            throw error("could not open %s", _configName);
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (files.size() > 1) {
+            _input = new LineReader(getInputStream(files.get(1), inputOffset),
+                                    inputOffset);
+        } else if (_gzip) {
+            _input = new LineReader(decompress(System.in, "input"));
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(System.in);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (files.size() > 2) {
+            _output = getOutput(files.get(2), outputOffset);
+        } else if (_gzip) {
+            _output = compress(new FileOutputStream(FileDescriptor.out),
+                               "output");
         } else {
-            _output = System.out;
+            _output = new PrintStream(new AsyncWriter(Channels.newChannel(
+                new FileOutputStream(FileDescriptor.out))));
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
-        try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
-            throw error("could not open %s", name);
+    /** A Main that applies machines made from CONFIG to the messages
+     *  read from INPUT, writing the results to OUTPUT, which process()
+     *  closes when done. */
+    Main(MachineConfig config, InputStream input, OutputStream output) {
+        _machineConfig = config;
+        _input = new LineReader(input);
+        _output = new PrintStream(output);
+    }
+
+    /** Set my options from ARGS, returning the remaining arguments. */
+    private List<String> parseOptions(String[] args) {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "--checkpoint":
+                _checkpointFile = new File(optionValue(args, i));
+                i += 1;
+                break;
+            case "--checkpoint-interval":
+                try {
+                    _checkpointInterval =
+                        Long.parseLong(optionValue(args, i));
+                } catch (NumberFormatException excp) {
+                    throw error("bad checkpoint interval");
+                }
+                i += 1;
+                break;
+            case "--tables":
+                String where = optionValue(args, i);
+                if (!where.equals("heap") && !where.equals("off-heap")) {
+                    throw error("unknown table storage %s", where);
+                }
+                _offHeap = where.equals("off-heap");
+                i += 1;
+                break;
+            case "--table-dir":
+                _tableDir = new File(optionValue(args, i));
+                if (!_tableDir.isDirectory()) {
+                    throw error("%s is not a directory", _tableDir);
+                }
+                _offHeap = true;
+                i += 1;
+                break;
+            case "--cost-model":
+                _costModelFile = new File(optionValue(args, i));
+                i += 1;
+                break;
+            case "--log-engine":
+                _logEngine = true;
+                break;
+            case "--resume":
+                _resume = true;
+                break;
+            case "--gzip":
+                _gzip = true;
+                break;
+            case "--stats":
+                _statsFile = new File(optionValue(args, i));
+                i += 1;
+                break;
+            case "--cache":
+                try {
+                    _cacheSize = Long.parseLong(optionValue(args, i));
+                } catch (NumberFormatException excp) {
+                    throw error("bad cache size");
+                }
+                if (_cacheSize <= 0) {
+                    throw error("bad cache size");
+                }
+                i += 1;
+                break;
+            case "--cache-file":
+                _cacheFile = new File(optionValue(args, i));
+                i += 1;
+                break;
+            case "--log-cache":
+                _logCache = true;
+                break;
+            case "--engine":
+                _engine = optionValue(args, i);
+                if (!_engine.equals("interpreter")
+                    && !_engine.equals("specialized")
+                    && !_engine.equals("auto")) {
+                    throw error("unknown engine %s", _engine);
+                }
+                i += 1;
+                break;
+            default:
+                if (args[i].startsWith("--")) {
+                    throw error("unknown option %s", args[i]);
+                }
+                files.add(args[i]);
+            }
         }
+        return files;
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return the value following the option ARGS[K]. */
+    private static String optionValue(String[] args, int k) {
+        if (k + 1 >= args.length) {
+            throw error("missing value for %s", args[k]);
+        }
+        return args[k + 1];
+    }
+
+    /** Return an InputStream reading from the file named NAME,
+     *  starting at byte OFFSET. */
+    private InputStream getInputStream(String name, long offset) {
+        FileInputStream in;
         try {
-            return new PrintStream(new File(name));
+            in = new FileInputStream(name);
+            in.getChannel().position(offset);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
+        _source = compressed(name) ? decompress(in, name) : in;
+        return _source;
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        _machine = readConfig();
-        if (!_input.hasNextLine()) {
-            throw new EnigmaException("input must contain settings");
-        }
+    /** Return true iff the file named NAME holds compressed messages. */
+    private boolean compressed(String name) {
+        return _gzip || name.endsWith(".gz");
+    }
 
-        String settings = _input.nextLine();
+    /** Return a stream of the decompressed contents of IN, a gzip stream
+     *  named NAME, decompressed on a separate thread. */
+    private static InputStream decompress(InputStream in, String name) {
+        try {
+            return new AsyncReader(new GZIPInputStream(in,
+                                                       COMPRESSION_BUFFER));
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", name, excp.getMessage());
+        }
+    }
 
-        if (settings.charAt(0) != '*') {
-            throw new EnigmaException("input must contain settings");
+    /** Return a PrintStream writing to OUT, named NAME, in gzip format,
+     *  compressing on a separate thread. */
+    private static PrintStream compress(OutputStream out, String name) {
+        try {
+            return new PrintStream(new AsyncWriter(Channels.newChannel(
+                new GZIPOutputStream(out, COMPRESSION_BUFFER))));
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
         }
+    }
 
-        while (_input.hasNextLine()) {
-            setUp(_machine, settings);
-            while (_input.hasNextLine()) {
-                String line = _input.nextLine();
-                if (line.length() == 0) {
-                    line = _machine.convert(line);
-                    printMessageLine(line);
-                    continue;
-                } else if (line.charAt(0) == '*') {
-                    settings = line;
-                    break;
-                }
-                line = line.replaceAll("\\s", "");
-                line = _machine.convert(line);
-                printMessageLine(line);
+    /** Return a PrintStream writing to the file named NAME after its
+     *  first OFFSET bytes, discarding the rest of its contents. */
+    private PrintStream getOutput(String name, long offset) {
+        if (compressed(name)) {
+            try {
+                return compress(new FileOutputStream(name), name);
+            } catch (IOException excp) {
+                throw error("could not open %s", name);
             }
         }
+        try {
+            FileOutputStream out = new FileOutputStream(name, offset > 0);
+            _outputChannel = out.getChannel();
+            _outputChannel.truncate(offset);
+            return new PrintStream(new AsyncWriter(_outputChannel));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _configName and apply it to the messages in _input, sending the
+     *  results to _output, which is then closed. */
+    void process() {
         try {
-            String alpha = _config.nextLine();
-
-            if (alpha.contains("*") || alpha.contains("(")
-                    || alpha.contains(")")) {
-                throw new EnigmaException("Incorrect name format");
+            processSections();
+        } finally {
+            drainKernel();
+            _output.close();
+            if (_stats != null) {
+                _stats.close();
             }
-
-            _alphabet = new Alphabet(alpha);
-
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Bad Machine description");
+            if (_logCache) {
+                System.err.printf("cache: %s%n", _cache);
             }
-            int numRotors = _config.nextInt();
-
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Bad Machine description");
+            if (_source != null) {
+                try {
+                    _source.close();
+                } catch (IOException excp) {
+                    /* Ignore IOException: all input needed was read. */
+                }
             }
-            int pawls = _config.nextInt();
+        }
+        if (_output.checkError()) {
+            throw error("could not write output");
+        }
+        if (_stats != null && _stats.checkError()) {
+            throw error("could not write %s", _statsFile);
+        }
+        if (_checkpointFile != null) {
+            _checkpointFile.delete();
+        }
+    }
 
-            _config.nextLine();
+    /** Configure _machine and apply it to each section of _input. */
+    private void processSections() {
+        if (_machineConfig == null) {
+            _machineConfig = MachineConfig.read(_configName);
+        }
+        _alphabet = _machineConfig.alphabet();
+        _machine = _machineConfig.newMachine();
+        _machine.setSpecialized(_engine.equals("specialized"));
+        if (_engine.equals("auto")) {
+            _machine.setCostModel(_costModelFile == null
+                                  ? CostModel.RECORDED
+                                  : CostModel.load(_costModelFile));
+        }
+        if (_logEngine) {
+            _machine.setEngineLog(System.err);
+        }
+        _machine.setOffHeapTables(_offHeap, _tableDir);
+        if (AsciiKernel.supports(_alphabet)) {
+            _kernel = new AsciiKernel(_machine);
+        } else {
+            _kernel = new TextKernel(_machine, CHARSET);
+        }
+        _total = new Statistics(_alphabet.size());
 
-            if (!_config.hasNext()) {
-                throw new EnigmaException("Bad Machine description");
+        String settings;
+        boolean configured = _resumed != null;
+        if (configured) {
+            settings = _resumed.settings();
+            setUp(_machine, settings);
+            _resumed.restore(_machine);
+        } else {
+            if (!_input.nextLine() || !_input.startsWith('*')) {
+                throw new EnigmaException("input must contain settings");
             }
-
-            Collection<Rotor> allRotors = new ArrayList<>();
-
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            settings = _input.line(CHARSET);
+        }
+        _nextCheckpoint = _input.nextOffset() + _checkpointInterval;
+        boolean more = _input.nextLine();
+
+        while (more) {
+            if (_cache != null) {
+                more = convertCached(settings);
+                if (more) {
+                    settings = _input.line(CHARSET);
+                    more = _input.nextLine();
+                }
+                continue;
             }
+            if (!configured) {
+                setUp(_machine, settings);
+            }
+            configured = false;
+            while (more) {
+                if (_input.startsWith('*')) {
+                    reportStatistics(settings);
+                    settings = _input.line(CHARSET);
+                    more = _input.nextLine();
+                    break;
+                }
+                convertLine();
+                if (_checkpointFile != null
+                    && _input.nextOffset() >= _nextCheckpoint) {
+                    checkpoint(settings);
+                }
+                more = _input.nextLine();
+            }
+        }
+        reportStatistics(settings);
+        if (_stats != null) {
+            _stats.printf("total\t%s%n", _total);
+        }
+    }
 
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
-
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+    /** Write the statistics of the output of the section configured by
+     *  SETTINGS to _stats, if it is in use, and start counting afresh. */
+    private void reportStatistics(String settings) {
+        if (_stats != null) {
+            long[] counts = _kernel.counts();
+            Statistics section = new Statistics(counts);
+            _total.add(counts);
+            Arrays.fill(counts, 0);
+            _stats.printf("%s\t%s%n", settings, section);
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Record in _checkpointFile that all input up to the end of the
+     *  current line of _input, in a section configured by SETTINGS, has
+     *  been processed. */
+    private void checkpoint(String settings) {
+        drainKernel();
+        _output.flush();
         try {
-            String name = _config.next();
-
-            if (name.contains(" ") || name.contains("(")
-                    || name.contains(")")) {
-                throw new EnigmaException("Incorrect name format");
-            }
-
-            String notches = _config.next();
+            new Checkpoint(_input.nextOffset(), _outputChannel.position(),
+                           settings, _machine).write(_checkpointFile);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", _checkpointFile);
+        }
+        _nextCheckpoint = _input.nextOffset() + _checkpointInterval;
+    }
 
-            String cycles = "", curr = "";
-            while (_config.hasNext("\\(.+?\\)")) {
-                curr = _config.next("\\(.+?\\)");
-                cycles += curr;
-            }
+    /** Convert the current message line of _input and print the result
+     *  in groups of five. */
+    private void convertLine() {
+        _kernel.convertLine(_input.buffer(), _input.start(), _input.end());
+        if (_kernel.length() >= LineReader.BUFFER_SIZE) {
+            drainKernel();
+        }
+    }
 
-            for (int i = 0; i < cycles.length(); i++) {
-                if (cycles.charAt(i) == ')' && i != cycles.length() - 1) {
-                    cycles = cycles.substring(0, i + 1) + " "
-                            + cycles.substring(i + 1, cycles.length());
+    /** Set up _machine according to SETTINGS and convert the message
+     *  lines of _input up to the next settings line or the end of the
+     *  input, reusing the output of the same lines under the same setup
+     *  from _cache, if it has them, and otherwise adding it.  Lines too
+     *  long in all to be cached are simply converted.  Return true iff
+     *  a settings line follows. */
+    private boolean convertCached(String settings) {
+        long limit = Math.min(_cache.maxResult(), Integer.MAX_VALUE - 8);
+        _messageLength = 0;
+        boolean more = true;
+        while (more && !_input.startsWith('*')) {
+            int start = _input.start(), length = _input.end() - start;
+            if ((long) _messageLength + length + 1 > limit) {
+                setUp(_machine, settings);
+                replayMessage(true);
+                while (more && !_input.startsWith('*')) {
+                    convertLine();
+                    more = _input.nextLine();
                 }
+                return more;
             }
+            if (_messageLength + length + 1 > _message.length) {
+                _message = Arrays.copyOf(_message, (int) Math.min(
+                    limit, 2L * (_messageLength + length + 1)));
+            }
+            System.arraycopy(_input.buffer(), start, _message,
+                             _messageLength, length);
+            _messageLength += length;
+            _message[_messageLength] = '\n';
+            _messageLength += 1;
+            more = _input.nextLine();
+        }
+        setUp(_machine, settings);
+        byte[] key = ResultCache.key(_machine, CHARSET.name(), _message,
+                                     _messageLength);
+        drainKernel();
+        byte[] result = _cache.get(key, _messageLength);
+        if (result != null) {
+            _output.write(result, 0, result.length);
+            return more;
+        }
+        replayMessage(false);
+        _cache.put(key, _messageLength, _kernel.buffer(), _kernel.length());
+        drainKernel();
+        return more;
+    }
 
-            Permutation perm = new Permutation(cycles, _alphabet);
-
-            if (notches.charAt(0) == 'M') {
-                if (notches.charAt(1) == ' ') {
-                    throw new EnigmaException("Space required between "
-                            + "class and notches");
+    /** Convert the message lines held in _message, as by convertLine(),
+     *  but leaving all the output in _kernel unless DRAIN. */
+    private void replayMessage(boolean drain) {
+        for (int p = 0, q = 0; q < _messageLength; q += 1) {
+            if (_message[q] == '\n') {
+                _kernel.convertLine(_message, p, q);
+                p = q + 1;
+                if (drain && _kernel.length() >= LineReader.BUFFER_SIZE) {
+                    drainKernel();
                 }
-                return new MovingRotor(name, perm,
-                        notches.substring(1, notches.length()));
-            } else if (notches.charAt(0) == 'N') {
-                return new FixedRotor(name, perm);
-            } else if (notches.charAt(0) == 'R') {
-                return new Reflector(name, perm);
-            } else {
-                throw new EnigmaException("Incorrect rotor type");
             }
+        }
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Write any output accumulated by _kernel to _output. */
+    private void drainKernel() {
+        if (_kernel != null && _kernel.length() > 0) {
+            _output.write(_kernel.buffer(), 0, _kernel.length());
+            _kernel.clear();
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
 
         if (settings.charAt(0) != '*') {
             throw new EnigmaException("Asterisk missing at first column");
@@ -224,11 +549,12 @@ public final class Main {
         if (curr < terms.length && terms[curr].charAt(0) != '(') {
             String ring = terms[curr];
 
-            if (ring.length() != M.numRotors() - 1) {
+            int[] chars = ring.codePoints().toArray();
+            if (chars.length != M.numRotors() - 1) {
                 throw new EnigmaException("Incorrect length of ring settings");
             }
-            for (int i = 0; i < ring.length(); i++) {
-                M.rotors()[i + 1].setRing(ring.charAt(i));
+            for (int i = 0; i < chars.length; i++) {
+                M.rotors()[i + 1].setRing(M.alphabet().toIndex(chars[i]));
             }
             curr++;
         }
@@ -240,7 +566,7 @@ public final class Main {
         if (cycles.length() != 0) {
             cycles = cycles.substring(0, cycles.length() - 1);
         }
-        M.setPlugboard(new Permutation(cycles, _alphabet));
+        M.setPlugboard(new Permutation(cycles, M.alphabet()));
 
         for (int i = 1; i <= M.rotors().length; i++) {
             if (M.rotors()[i - 1] instanceof MovingRotor) {
@@ -260,31 +586,96 @@ public final class Main {
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = msg.replaceAll("\\s", "");
+    /** Alphabet used in this machine. */
+    private Alphabet _alphabet;
 
-        String result = "";
+    /** Character set of input messages. */
+    private static final Charset CHARSET = Charset.defaultCharset();
 
-        for (int i = 0; i < msg.length(); i++) {
-            if (i % 5 == 0 && i != 0) {
-                result += " ";
-            }
-            result += msg.substring(i, i + 1);
-        }
+    /** Source of input messages. */
+    private LineReader _input;
 
-        _output.println(result);
-    }
+    /** Converter of message lines, or null before the first section. */
+    private Kernel _kernel;
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Size of the buffers of gzip streams. */
+    private static final int COMPRESSION_BUFFER = 1 << 16;
 
-    /** Source of input messages. */
-    private Scanner _input;
+    /** Stream opened on the input file, or null. */
+    private InputStream _source;
+
+    /** File named by --stats, or null. */
+    private File _statsFile;
+
+    /** Destination of output statistics, or null if they are not
+     *  wanted. */
+    private PrintStream _stats;
+
+    /** Statistics of all output so far. */
+    private Statistics _total;
+
+    /** Maximum number of bytes of converted messages kept in memory by
+     *  _cache, or 0 if there is no cache. */
+    private long _cacheSize;
+
+    /** File named by --cache-file, or null. */
+    private File _cacheFile;
+
+    /** True iff the use of _cache is reported. */
+    private boolean _logCache;
+
+    /** Cache of converted messages, or null. */
+    private ResultCache _cache;
+
+    /** Message lines of the current section, each followed by a newline,
+     *  while they are gathered for _cache. */
+    private byte[] _message = new byte[1 << 12];
+
+    /** Number of bytes in _message. */
+    private int _messageLength;
+
+    /** True iff all messages are compressed (--gzip). */
+    private boolean _gzip;
+
+    /** Channel of the output file, or null for the standard output or a
+     *  compressed file. */
+    private FileChannel _outputChannel;
+
+    /** File in which to record checkpoints, or null if none. */
+    private File _checkpointFile;
+
+    /** Approximate number of input bytes between checkpoints. */
+    private long _checkpointInterval = 1L << 26;
+
+    /** Input offset after which to record the next checkpoint. */
+    private long _nextCheckpoint;
+
+    /** Name of the conversion engine to use. */
+    private String _engine = "auto";
+
+    /** File of recorded engine costs, or null. */
+    private File _costModelFile;
+
+    /** True iff choices of engine are reported. */
+    private boolean _logEngine;
+
+    /** True iff the specialized engine's tables are off the heap. */
+    private boolean _offHeap;
+
+    /** Directory of memory-mapped table files, or null. */
+    private File _tableDir;
+
+    /** True iff the --resume option was given. */
+    private boolean _resume;
+
+    /** Checkpoint from which this run resumes, or null. */
+    private Checkpoint _resumed;
+
+    /** Name of the machine configuration file. */
+    private String _configName;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Machine configuration read from _configName, or supplied. */
+    private MachineConfig _machineConfig;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
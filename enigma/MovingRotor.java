@@ -15,6 +15,27 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+
+        int n = size();
+        _notchMap = new long[(n + 63) / 64];
+        for (int c : notches.codePoints().toArray()) {
+            int k = alphabet().indexOf(c);
+            if (k >= 0) {
+                _notchMap[k >> 6] |= 1L << k;
+            }
+        }
+
+        _toNotch = new int[n];
+        int next = Integer.MAX_VALUE;
+        for (int k = 2 * n - 1; k >= 0; k--) {
+            if (atNotch(k % n)) {
+                next = k;
+            }
+            if (k < n) {
+                _toNotch[k] = next == Integer.MAX_VALUE
+                    ? Integer.MAX_VALUE : next - k;
+            }
+        }
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
@@ -27,12 +48,20 @@ class MovingRotor extends Rotor {
      *  to advance. */
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toChar(setting()) == _notches.charAt(i)) {
-                return true;
-            }
-        }
-        return false;
+        return atNotch(setting());
+    }
+
+    /** Returns the number of advances needed to put me at a notch:
+     *  0 if I am at one now, and Integer.MAX_VALUE if I have none. */
+    @Override
+    int stepsToNotch() {
+        return _toNotch[setting()];
+    }
+
+    /** Returns true iff setting POSN is at one of my notches. */
+    @Override
+    boolean atNotch(int posn) {
+        return (_notchMap[posn >> 6] & (1L << posn)) != 0;
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -44,4 +73,10 @@ class MovingRotor extends Rotor {
     /** Notches of the rotor. */
     private String _notches;
 
+    /** Bitmap of the settings at which I am at a notch. */
+    private final long[] _notchMap;
+
+    /** Value of stepsToNotch() at each setting. */
+    private final int[] _toNotch;
+
 }
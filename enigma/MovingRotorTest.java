@@ -6,6 +6,8 @@ import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
 
 import static enigma.TestUtils.*;
 
@@ -107,4 +109,61 @@ public class MovingRotorTest {
         assertFalse(r.atNotch());
     }
 
+    @Test
+    public void testStepsToNotch() {
+        Permutation p = new Permutation("(EDA) (CB)", new Alphabet("ABCDE"));
+        MovingRotor r = new MovingRotor("I", p, "BD");
+        int[] expected = {1, 0, 1, 0, 2};
+        for (int i = 0; i < expected.length; i += 1) {
+            r.set(i);
+            assertEquals(expected[i], r.stepsToNotch());
+        }
+
+        r = new MovingRotor("II", p, "");
+        assertEquals(Integer.MAX_VALUE, r.stepsToNotch());
+        assertFalse(r.atNotch());
+    }
+
+    @Test
+    public void testQuietSteps() {
+        String[][] orders = {
+            {"B", "Beta", "III", "II", "I"},
+            {"C", "Gamma", "VI", "VII", "I"},
+            {"B", "Beta", "VI", "VII", "VIII"},
+            {"C", "Gamma", "II", "VI", "V"},
+            {"B", "V", "VI", "VII", "VIII"},
+            {"B", "III", "II", "I", "VI"},
+        };
+        String[] settings = {"ADDQ", "AZLY", "MZLM", "QEZY", "LMYZ", "AUDL"};
+        Random random = new Random(31);
+        for (int t = 0; t < orders.length; t += 1) {
+            String config = t < 4 ? NAVAL_CONFIG
+                : NAVAL_CONFIG.replace(" 5 3", " 5 4");
+            for (boolean specialized : new boolean[] { false, true }) {
+                Machine m = new MachineConfig(new Scanner(config))
+                    .newMachine();
+                Machine ref = new MachineConfig(new Scanner(config))
+                    .newMachine();
+                for (Machine x : new Machine[] { m, ref }) {
+                    x.insertRotors(orders[t]);
+                    x.setRotors(settings[t]);
+                    x.setPlugboard(new Permutation("(AK) (TR)", UPPER));
+                }
+                m.setSpecialized(specialized);
+                for (int k = 0; k < 3000; k += 1) {
+                    /* Fetching its rotors makes ref forget its count of
+                     * quiet steps, so it checks every notch each step. */
+                    ref.rotors();
+                    int c = random.nextInt(26);
+                    assertEquals(msg(orders[t][2], "wrong conversion at %d",
+                                     k),
+                                 ref.convert(c), m.convert(c));
+                    assertArrayEquals(msg(orders[t][2],
+                                          "wrong settings at %d", k),
+                                      ref.settings(), m.settings());
+                }
+            }
+        }
+    }
+
 }
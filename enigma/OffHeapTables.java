@@ -0,0 +1,260 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The tables of a CompiledMachine.Plan, held outside the Java heap,
+ *  either in a direct buffer or in a memory-mapped file.  Mapped tables
+ *  are shared by all processes that map the same file, and survive from
+ *  run to run, so that a configuration's tables are built only once.
+ *
+ *  The tables occupy one buffer of ints in native byte order: a header
+ *  (MAGIC, VERSION, alphabet size N, number of moving rotors P, and the
+ *  length of the configuration key), the key itself as chars, padded to
+ *  a whole number of ints, and then the forward tables of the P moving
+ *  rotors, their backward tables, the inner table, and the notch flags
+ *  of the moving rotors (1 at a notch, else 0), laid out as in Plan.
+ *  @author Vikram Cherukuri
+ */
+final class OffHeapTables {
+
+    /** First int of a table file.  Also identifies its byte order. */
+    static final int MAGIC = 0x454e4754;
+
+    /** Version of the table layout. */
+    static final int VERSION = 1;
+
+    /** Number of ints in the header. */
+    private static final int HEADER = 5;
+
+    /** Return new tables in a direct buffer holding the contents of
+     *  PLAN, whose configuration is described by KEY. */
+    static OffHeapTables allocate(String key, CompiledMachine.Plan plan) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes(key, plan));
+        fill(buf.order(ByteOrder.nativeOrder()), key, plan);
+        return new OffHeapTables(buf);
+    }
+
+    /** Return the tables for the configuration described by KEY, mapped
+     *  from their file in directory DIR.  If there is no such file, or
+     *  it does not hold the tables for KEY, first write the tables from
+     *  PLAN to it. */
+    static OffHeapTables map(File dir, String key,
+                             Supplier<CompiledMachine.Plan> plan) {
+        File file = new File(dir, fileName(key));
+        try {
+            OffHeapTables result = load(file, key);
+            if (result == null) {
+                write(file, key, plan.get());
+                result = load(file, key);
+            }
+            if (result == null) {
+                throw error("bad table file %s", file);
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not map table file %s", file);
+        }
+    }
+
+    /** Tables stored in BUF, which has been validated. */
+    private OffHeapTables(ByteBuffer buf) {
+        _data = buf.order(ByteOrder.nativeOrder()).position(0)
+            .asIntBuffer();
+        _size = _data.get(2);
+        _moving = _data.get(3);
+        _base = HEADER + (_data.get(4) + 1) / 2;
+    }
+
+    /** Return my alphabet size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of bytes I take. */
+    long bytes() {
+        return 4L * _data.capacity();
+    }
+
+    /** Return my number of moving rotors. */
+    int moving() {
+        return _moving;
+    }
+
+    /** Return all my ints. */
+    IntBuffer data() {
+        return _data;
+    }
+
+    /** Return the index in data() of the forward table of moving rotor
+     *  J, numbering from the left. */
+    int forward(int j) {
+        return _base + j * _size * _size;
+    }
+
+    /** Return the index in data() of the backward table of moving rotor
+     *  J. */
+    int backward(int j) {
+        return forward(_moving + j);
+    }
+
+    /** Return the index in data() of the inner table. */
+    int inner() {
+        return forward(2 * _moving);
+    }
+
+    /** Return the index in data() of the notch flags of moving rotor
+     *  J. */
+    int notches(int j) {
+        return inner() + _size + j * _size;
+    }
+
+    /** Return the number of bytes needed for PLAN with KEY. */
+    private static int bytes(String key, CompiledMachine.Plan plan) {
+        long n = plan.size;
+        long ints = HEADER + (key.length() + 1) / 2
+            + 2L * plan.moving * n * n + n + plan.moving * n;
+        if (4 * ints > Integer.MAX_VALUE) {
+            throw error("tables too large");
+        }
+        return (int) (4 * ints);
+    }
+
+    /** Store the header, KEY, and the contents of PLAN in BUF. */
+    private static void fill(ByteBuffer buf, String key,
+                             CompiledMachine.Plan plan) {
+        IntBuffer data = buf.position(0).asIntBuffer();
+        data.put(MAGIC).put(VERSION).put(plan.size).put(plan.moving)
+            .put(key.length());
+        buf.position(4 * HEADER).asCharBuffer().put(key);
+        data.position(HEADER + (key.length() + 1) / 2);
+        for (CompactTable f : plan.forward) {
+            put(data, f);
+        }
+        for (CompactTable b : plan.backward) {
+            put(data, b);
+        }
+        put(data, plan.inner);
+        for (boolean[] notches : plan.notches) {
+            for (boolean notch : notches) {
+                data.put(notch ? 1 : 0);
+            }
+        }
+        buf.position(0);
+    }
+
+    /** Append the entries of TABLE to DATA. */
+    private static void put(IntBuffer data, CompactTable table) {
+        for (int i = 0; i < table.length(); i += 1) {
+            data.put(table.get(i));
+        }
+    }
+
+    /** Return the tables for KEY mapped from FILE, or null if FILE does
+     *  not exist or does not hold them. */
+    private static OffHeapTables load(File file, String key)
+        throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < 4 * HEADER || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                .order(ByteOrder.nativeOrder());
+            IntBuffer header = buf.asIntBuffer();
+            if (header.get(0) != MAGIC || header.get(1) != VERSION
+                || header.get(4) != key.length()) {
+                return null;
+            }
+            CharBuffer stored = buf.position(4 * HEADER).asCharBuffer();
+            if (stored.remaining() < key.length()
+                || !stored.limit(key.length()).toString().equals(key)) {
+                return null;
+            }
+            long n = header.get(2), moving = header.get(3);
+            long ints = HEADER + (key.length() + 1) / 2
+                + 2 * moving * n * n + n + moving * n;
+            if (4 * ints != length) {
+                return null;
+            }
+            return new OffHeapTables(buf);
+        }
+    }
+
+    /** Write the tables of PLAN for KEY to FILE, replacing it
+     *  atomically, so that processes mapping FILE concurrently never see
+     *  a partial file. */
+    private static void write(File file, String key,
+                              CompiledMachine.Plan plan) throws IOException {
+        Path tmp = Files.createTempFile(file.getAbsoluteFile()
+                                        .getParentFile().toPath(),
+                                        "tables", ".tmp");
+        try {
+            try (FileChannel channel =
+                 FileChannel.open(tmp, StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE)) {
+                ByteBuffer buf =
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                bytes(key, plan))
+                    .order(ByteOrder.nativeOrder());
+                fill(buf, key, plan);
+                channel.force(true);
+            }
+            Files.move(tmp, file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Return the name of the table file for KEY. */
+    static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(key.getBytes(StandardCharsets.UTF_16BE));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i += 1) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return name.append(".tables").toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+    }
+
+    /** My contents, as ints. */
+    private final IntBuffer _data;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of moving rotors. */
+    private final int _moving;
+
+    /** Index in _data of the first table. */
+    private final int _base;
+}
@@ -1,5 +1,10 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -33,16 +38,119 @@ class Permutation {
                 _cycles[i] = _cycles[i].substring(1, _cycles[i].length() - 1);
             }
 
-            for (int i = 0; i < cycles.length(); i++) {
-                if (cycles.charAt(i) != '(' && cycles.charAt(i) != ')'
-                        && cycles.charAt(i) != ' ') {
-                    if (!_alphabet.contains(cycles.charAt(i))) {
+            for (int i = 0; i < cycles.length();
+                 i += Character.charCount(cycles.codePointAt(i))) {
+                int c = cycles.codePointAt(i);
+                if (c != '(' && c != ')' && c != ' ') {
+                    if (!_alphabet.containsCodePoint(c)) {
                         throw new EnigmaException("cycles is not in alphabet");
                     }
                 }
             }
         }
+        tabulate();
+    }
+
+    /** The Permutation of the characters of ALPHABET whose indices PERM
+     *  maps.  PERM must permute as many indices as ALPHABET has
+     *  characters. */
+    Permutation(IndexPermutation perm, Alphabet alphabet) {
+        perm.checkAlphabet(alphabet);
+        _alphabet = alphabet;
+        List<String> cycles = new ArrayList<>();
+        for (int[] cycle : perm.cycles()) {
+            if (cycle.length > 1) {
+                StringBuilder c = new StringBuilder();
+                for (int x : cycle) {
+                    c.appendCodePoint(alphabet.toCodePoint(x));
+                }
+                cycles.add(c.toString());
+            }
+        }
+        _cycles = cycles.toArray(new String[0]);
+        int n = size();
+        _map = CompactTable.of(perm.toArray(), n + 1);
+        _inverse = CompactTable.of(perm.inverse().toArray(), n + 1);
+    }
+
+    /** Fill in _map and _inverse from _cycles.  A character maps forward
+     *  as at its first appearance in the cycles, and backward as at its
+     *  first appearance in the last cycle that contains it.  An entry of
+     *  size() marks a result that is not in the alphabet. */
+    private void tabulate() {
+        HashMap<Integer, Integer> next = new HashMap<>();
+        HashMap<Integer, Integer> prev = new HashMap<>();
+        for (String cycle : _cycles) {
+            int[] c = cycle.codePoints().toArray();
+            HashMap<Integer, Integer> seen = new HashMap<>();
+            for (int j = 0; j < c.length; j += 1) {
+                next.putIfAbsent(c[j], c[(j + 1) % c.length]);
+                seen.putIfAbsent(c[j], c[(j + c.length - 1) % c.length]);
+            }
+            prev.putAll(seen);
+        }
+        int n = size();
+        _map = CompactTable.of(n, n + 1);
+        _inverse = CompactTable.of(n, n + 1);
+        _blockTables = null;
+        for (int i = 0; i < n; i += 1) {
+            int c = _alphabet.toCodePoint(i);
+            _map.set(i, indexOrMissing(next.getOrDefault(c, c)));
+            _inverse.set(i, indexOrMissing(prev.getOrDefault(c, c)));
+        }
+    }
+
+    /** Return the index of code point C in my alphabet, or size() if it is
+     *  not there. */
+    private int indexOrMissing(int c) {
+        int k = _alphabet.indexOf(c);
+        return k < 0 ? size() : k;
+    }
+
+    /** Return R, an entry of _map or _inverse, checking that it is an
+     *  index in my alphabet. */
+    private int checked(int r) {
+        if (r == size()) {
+            throw new EnigmaException("Character not in alphabet");
+        }
+        return r;
+    }
+    /** Return a new array holding my mapping of each index, with size()
+     *  for a character that maps outside the alphabet. */
+    int[] toArray() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _map.get(i);
+        }
+        return result;
+    }
+
+    /** Return a table T of 3 * size() entries for converting in blocks,
+     *  in which T[P] is size() plus my mapping of P modulo size(), or,
+     *  if INVERSE, that of my inverse; or null if some character maps
+     *  outside the alphabet.  Indexing T with a sum of an index and an
+     *  offset, each less than 2 * size() and size() respectively, and
+     *  subtracting the offset from the result gives a value that is
+     *  again less than 2 * size(), so that conversions chain without
+     *  reducing modulo size().  The tables are made once. */
+    int[] blockTable(boolean inverse) {
+        if (_blockTables == null) {
+            int n = size();
+            int[][] tables = new int[2][3 * n];
+            for (int x = 0; x < 3 * n; x += 1) {
+                int f = _map.get(x % n), b = _inverse.get(x % n);
+                if (f == n || b == n) {
+                    tables = new int[2][];
+                    break;
+                }
+                tables[0][x] = n + f;
+                tables[1][x] = n + b;
+            }
+            _blockTables = tables;
+        }
+        return _blockTables[inverse ? 1 : 0];
     }
+
     /** Return String array of cycles. */
     String[] cycles() {
         return _cycles;
@@ -51,8 +159,9 @@ class Permutation {
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        _cycles = new String[_cycles.length + 1];
+        _cycles = Arrays.copyOf(_cycles, _cycles.length + 1);
         _cycles[_cycles.length - 1] = cycle;
+        tabulate();
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -72,52 +181,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char curr = _alphabet.toChar(wrap(p));
-        if (!_alphabet.contains(curr)) {
-            throw new EnigmaException("Character not in alphabet");
-        }
-        char result = curr;
-        int checker = 0;
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (curr == _cycles[i].charAt(j)) {
-                    if (j == _cycles[i].length() - 1) {
-                        result = _cycles[i].charAt(0);
-                    } else {
-                        result = _cycles[i].charAt(j + 1);
-                    }
-                    checker++;
-                    break;
-                }
-            }
-            if (checker > 0) {
-                break;
-            }
-        }
-        return _alphabet.toInt(result);
+        return checked(_map.get(wrap(p)));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char curr = _alphabet.toChar(wrap(c));
-        if (!_alphabet.contains(curr)) {
-            throw new EnigmaException("Character not in alphabet");
-        }
-        char result = curr;
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (curr == _cycles[i].charAt(j)) {
-                    if (j == 0) {
-                        result = _cycles[i].charAt(_cycles[i].length() - 1);
-                    } else {
-                        result = _cycles[i].charAt(j - 1);
-                    }
-                    break;
-                }
-            }
-        }
-        return _alphabet.toInt(result);
+        return checked(_inverse.get(wrap(c)));
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -163,4 +233,15 @@ class Permutation {
 
     /** Cycles of this permutation. */
     private String[] _cycles;
+
+    /** My mapping of indices, with size() for characters outside the
+     *  alphabet. */
+    private CompactTable _map;
+
+    /** The inverse of _map, likewise. */
+    private CompactTable _inverse;
+
+    /** The tables returned by blockTable(), forward and inverse, once
+     *  made.  Volatile, as rotors may be shared between threads. */
+    private volatile int[][] _blockTables;
 }
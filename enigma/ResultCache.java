@@ -0,0 +1,486 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of converted messages, so that a message converted
+ *  again under the same settings is not run through the machine.  Each
+ *  result is addressed by a SHA-256 key over a description of
+ *  everything that determines it: the wiring, notches, positions, and
+ *  rings of the machine's rotors and its plugboard mapping, once set up
+ *  for the message, and the bytes of the message.  Settings lines that
+ *  set up equal machines thus share results, whatever their spelling or
+ *  configuration file.  Each entry also records the length of its
+ *  message, which a lookup must match.
+ *
+ *  Entries are held in memory, up to a given number of bytes, evicting
+ *  the least recently used first, and optionally also in a
+ *  memory-mapped file, which persists from run to run.  The file is a
+ *  circular log of records, each the key, the message length, the
+ *  result length, a CRC-32 of those and of the result, and the result,
+ *  after a header of MAGIC, the file's capacity, the positions of its
+ *  oldest record and of the end of its newest, and the number of
+ *  records.  A new record overwrites the oldest ones in its way; a
+ *  record that would not fit before the end of the file starts again
+ *  after the header, and a message length of -1 marks where the log
+ *  wraps.  Since the header is rewritten only after a record, a run
+ *  stopped while appending can leave records that the header still
+ *  counts partly overwritten; such records fail their checksums, and
+ *  are dropped when the file is read and when they are looked up.  A
+ *  cache is for use by one thread.
+ *  @author Vikram Cherukuri
+ */
+final class ResultCache {
+
+    /** First long of a cache file. */
+    static final long MAGIC = 0x454e4947_4d414331L;
+
+    /** Capacity of a new cache file, in bytes. */
+    static final long FILE_CAPACITY = 1L << 26;
+
+    /** Number of bytes of memory charged to each entry in addition to
+     *  its result. */
+    static final int ENTRY_OVERHEAD = 128;
+
+    /** Number of bytes in a key. */
+    static final int KEY_BYTES = 32;
+
+    /** Number of bytes in the header of a cache file. */
+    static final int HEADER = 40;
+
+    /** Number of bytes in a record of a cache file before its result. */
+    static final int RECORD_HEADER = KEY_BYTES + 16;
+
+    /** A cache holding up to CAPACITY bytes of entries in memory, and
+     *  none on file. */
+    ResultCache(long capacity) {
+        if (capacity <= ENTRY_OVERHEAD) {
+            throw error("cache too small");
+        }
+        _capacity = capacity;
+        _file = null;
+        _fileCapacity = 0;
+    }
+
+    /** A cache holding up to CAPACITY bytes of entries in memory, and
+     *  also holding entries in FILE, which is created with a capacity of
+     *  FILE_CAPACITY bytes if it does not exist, and otherwise keeps its
+     *  capacity.  A FILE that is not a cache file is overwritten. */
+    ResultCache(long capacity, File file) {
+        if (capacity <= ENTRY_OVERHEAD) {
+            throw error("cache too small");
+        }
+        _capacity = capacity;
+        long size = file.length();
+        _fileCapacity = size > HEADER ? size : FILE_CAPACITY;
+        if (_fileCapacity > Integer.MAX_VALUE) {
+            throw error("cache file %s too large", file);
+        }
+        try (FileChannel channel =
+             FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                              StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            _file = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                _fileCapacity);
+        } catch (IOException excp) {
+            throw error("could not map cache file %s", file);
+        }
+        if (!loadFile()) {
+            _head = HEADER;
+            _records.clear();
+            _fileIndex.clear();
+            writeFileHeader();
+        }
+    }
+
+    /** Return the key of the result of converting the LENGTH bytes of
+     *  MESSAGE, read and written in the charset named CHARSET, with M,
+     *  which has just been set up for it. */
+    static byte[] key(Machine m, String charset, byte[] message,
+                      int length) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+        Alphabet alpha = m.alphabet();
+        int n = alpha.size();
+        Rotor[] rotors = m.rotors();
+        ByteBuffer desc = ByteBuffer.allocate(
+            4 * (3 + n + rotors.length * (4 + 2 * n) + n));
+        desc.putInt(n).putInt(rotors.length).putInt(m.numPawls());
+        for (int x = 0; x < n; x += 1) {
+            desc.putInt(alpha.toCodePoint(x));
+        }
+        for (Rotor r : rotors) {
+            desc.putInt(r.rotates() ? 1 : 0).putInt(r.reflecting() ? 1 : 0)
+                .putInt(r.setting()).putInt(r.ring());
+            for (int x = 0; x < n; x += 1) {
+                desc.putInt(r.permutation().permute(x))
+                    .putInt(r.atNotch(x) ? 1 : 0);
+            }
+        }
+        for (int x = 0; x < n; x += 1) {
+            desc.putInt(m.plugboard().permute(x));
+        }
+        md.update(desc.array(), 0, desc.position());
+        md.update((charset + "\n" + System.lineSeparator())
+                  .getBytes(StandardCharsets.UTF_8));
+        md.update(message, 0, length);
+        return md.digest();
+    }
+
+    /** Return the result stored under KEY for a message of LENGTH bytes,
+     *  which the caller must not change, or null if there is none. */
+    byte[] get(byte[] key, long length) {
+        _lookups += 1;
+        Key k = new Key(key);
+        Entry entry = _memory.get(k);
+        if (entry != null) {
+            if (entry.length == length) {
+                _memoryHits += 1;
+                return entry.result;
+            }
+            _mismatches += 1;
+            return null;
+        }
+        Long where = _file == null ? null : _fileIndex.get(k);
+        if (where != null) {
+            int pos = (int) (long) where;
+            if (_file.getLong(pos + KEY_BYTES) != length) {
+                _mismatches += 1;
+                return null;
+            }
+            byte[] result = readResult(pos);
+            if (result == null) {
+                _fileIndex.remove(k);
+                return null;
+            }
+            _fileHits += 1;
+            remember(k, length, result);
+            return result;
+        }
+        return null;
+    }
+
+    /** Store the first SIZE bytes of RESULT as the result under KEY for a
+     *  message of LENGTH bytes, unless it is too large to keep. */
+    void put(byte[] key, long length, byte[] result, int size) {
+        Key k = new Key(key);
+        byte[] copy = Arrays.copyOf(result, size);
+        remember(k, length, copy);
+        if (_file != null && !_fileIndex.containsKey(k)) {
+            append(k, length, copy);
+        }
+    }
+
+    /** Return the size of the largest result I can keep. */
+    long maxResult() {
+        long inFile = _file == null ? 0
+            : _fileCapacity - HEADER - RECORD_HEADER;
+        return Math.max(_capacity - ENTRY_OVERHEAD, inFile);
+    }
+
+    /** Return the number of lookups so far. */
+    long lookups() {
+        return _lookups;
+    }
+
+    /** Return the number of lookups so far that found a result. */
+    long hits() {
+        return _memoryHits + _fileHits;
+    }
+
+    /** Return the fraction of lookups so far that found a result, or NaN
+     *  if there have been none. */
+    double hitRate() {
+        return _lookups == 0 ? Double.NaN : (double) hits() / _lookups;
+    }
+
+    /** Return the number of bytes of entries in memory. */
+    long used() {
+        return _used;
+    }
+
+    /** Return the number of entries evicted so far, from memory and from
+     *  file. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of lookups so far that found an entry for a
+     *  message of a different length. */
+    long mismatches() {
+        return _mismatches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lookups=%d hits=%d (memory %d, file %d) "
+                             + "hit-rate=%s mismatches=%d evictions=%d "
+                             + "entries=%d bytes=%d",
+                             _lookups, hits(), _memoryHits, _fileHits,
+                             _lookups == 0 ? "-"
+                             : String.format("%.3f", hitRate()),
+                             _mismatches, _evictions, _memory.size(),
+                             _used);
+    }
+
+    /** Keep RESULT under K for a message of LENGTH bytes in memory,
+     *  evicting the least recently used entries to make room, unless it
+     *  would not fit. */
+    private void remember(Key k, long length, byte[] result) {
+        long cost = (long) result.length + ENTRY_OVERHEAD;
+        if (cost > _capacity) {
+            return;
+        }
+        Entry old = _memory.remove(k);
+        if (old != null) {
+            _used -= old.result.length + ENTRY_OVERHEAD;
+        }
+        Iterator<Entry> eldest = _memory.values().iterator();
+        while (_used + cost > _capacity) {
+            _used -= eldest.next().result.length + ENTRY_OVERHEAD;
+            eldest.remove();
+            _evictions += 1;
+        }
+        _memory.put(k, new Entry(length, result));
+        _used += cost;
+    }
+
+    /** Append a record of RESULT under K for a message of LENGTH bytes
+     *  to the file, overwriting the oldest records in its way, unless it
+     *  would not fit. */
+    private void append(Key k, long length, byte[] result) {
+        long size = RECORD_HEADER + (long) result.length;
+        if (size > _fileCapacity - HEADER) {
+            return;
+        }
+        int pos = _head;
+        if (pos + size > _fileCapacity) {
+            evictFrom(pos, _fileCapacity);
+            if (_fileCapacity - pos >= RECORD_HEADER) {
+                _file.putLong(pos + KEY_BYTES, -1);
+            }
+            pos = HEADER;
+        }
+        evictFrom(pos, pos + size);
+        _file.put(pos, k.bytes);
+        _file.putLong(pos + KEY_BYTES, length);
+        _file.putInt(pos + KEY_BYTES + 8, result.length);
+        _file.putInt(pos + KEY_BYTES + 12,
+                     checksum(k.bytes, length, result));
+        _file.put(pos + RECORD_HEADER, result);
+        _records.addLast(new Record(pos, k));
+        _fileIndex.put(k, (long) pos);
+        _head = (int) (pos + size);
+        writeFileHeader();
+    }
+
+    /** Return the result of the record at POS in the file, or null if
+     *  the record does not match its checksum. */
+    private byte[] readResult(int pos) {
+        int size = _file.getInt(pos + KEY_BYTES + 8);
+        if (size < 0 || (long) pos + RECORD_HEADER + size > _fileCapacity) {
+            return null;
+        }
+        byte[] key = new byte[KEY_BYTES];
+        _file.get(pos, key);
+        byte[] result = new byte[size];
+        _file.get(pos + RECORD_HEADER, result);
+        if (_file.getInt(pos + KEY_BYTES + 12)
+            != checksum(key, _file.getLong(pos + KEY_BYTES), result)) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Return the checksum of a record of RESULT under KEY for a message
+     *  of LENGTH bytes. */
+    private static int checksum(byte[] key, long length, byte[] result) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(ByteBuffer.allocate(12).putLong(length)
+                   .putInt(result.length).array());
+        crc.update(result);
+        return (int) crc.getValue();
+    }
+
+    /** Drop the oldest records from the file while they start at or
+     *  after START and before END. */
+    private void evictFrom(long start, long end) {
+        while (!_records.isEmpty() && _records.peekFirst().pos >= start
+               && _records.peekFirst().pos < end) {
+            Record oldest = _records.removeFirst();
+            Long where = _fileIndex.get(oldest.key);
+            if (where != null && where == oldest.pos) {
+                _fileIndex.remove(oldest.key);
+            }
+            _evictions += 1;
+        }
+    }
+
+    /** Record the positions of the oldest record and of the end of the
+     *  newest, and the number of records, in the file's header. */
+    private void writeFileHeader() {
+        _file.putLong(0, MAGIC);
+        _file.putLong(8, _fileCapacity);
+        _file.putLong(16, _records.isEmpty() ? _head
+                      : _records.peekFirst().pos);
+        _file.putLong(24, _head);
+        _file.putLong(32, _records.size());
+    }
+
+    /** Read the records of the file into _records and _fileIndex,
+     *  leaving out those that fail their checksums, and returning false
+     *  if it is not a valid cache file. */
+    private boolean loadFile() {
+        if (_file.getLong(0) != MAGIC || _file.getLong(8) != _fileCapacity) {
+            return false;
+        }
+        long tail = _file.getLong(16), head = _file.getLong(24),
+            count = _file.getLong(32);
+        if (tail < HEADER || tail > _fileCapacity || head < HEADER
+            || head > _fileCapacity || count < 0) {
+            return false;
+        }
+        long pos = tail;
+        for (long r = 0; r < count; r += 1) {
+            if (_fileCapacity - pos < RECORD_HEADER
+                || _file.getLong((int) pos + KEY_BYTES) == -1) {
+                pos = HEADER;
+            }
+            int size = _file.getInt((int) pos + KEY_BYTES + 8);
+            if (size < 0 || pos + RECORD_HEADER + size > _fileCapacity) {
+                return false;
+            }
+            byte[] key = new byte[KEY_BYTES];
+            _file.get((int) pos, key);
+            Key k = new Key(key);
+            _records.addLast(new Record((int) pos, k));
+            if (readResult((int) pos) != null) {
+                _fileIndex.put(k, pos);
+            }
+            pos += RECORD_HEADER + size;
+        }
+        if (pos != head) {
+            return false;
+        }
+        _head = (int) head;
+        return true;
+    }
+
+    /** A key, compared by value. */
+    private static final class Key {
+        /** A key with contents BYTES. */
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            _hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(bytes, ((Key) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The contents of the key. */
+        final byte[] bytes;
+        /** Hash code of bytes. */
+        private final int _hash;
+    }
+
+    /** A result held in memory. */
+    private static final class Entry {
+        /** The result RESULT of a message of LENGTH bytes. */
+        Entry(long length, byte[] result) {
+            this.length = length;
+            this.result = result;
+        }
+
+        /** Length of the message. */
+        final long length;
+        /** The converted message. */
+        final byte[] result;
+    }
+
+    /** A record in the file. */
+    private static final class Record {
+        /** The record at POS in the file, with key KEY. */
+        Record(int pos, Key key) {
+            this.pos = pos;
+            this.key = key;
+        }
+
+        /** Position of the record in the file. */
+        final int pos;
+        /** Key of the record. */
+        final Key key;
+    }
+
+    /** Maximum number of bytes of entries in memory. */
+    private final long _capacity;
+
+    /** Number of bytes of entries in memory. */
+    private long _used;
+
+    /** Entries in memory, least recently used first. */
+    private final LinkedHashMap<Key, Entry> _memory =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The cache file, mapped, or null if there is none. */
+    private final MappedByteBuffer _file;
+
+    /** Size of the cache file. */
+    private final long _fileCapacity;
+
+    /** Records in the file, oldest first. */
+    private final ArrayDeque<Record> _records = new ArrayDeque<>();
+
+    /** Position in the file of each record, by key. */
+    private final Map<Key, Long> _fileIndex = new HashMap<>();
+
+    /** Position in the file just past its newest record. */
+    private int _head;
+
+    /** Number of lookups so far. */
+    private long _lookups;
+
+    /** Number of lookups found in memory. */
+    private long _memoryHits;
+
+    /** Number of lookups found only in the file. */
+    private long _fileHits;
+
+    /** Number of lookups that found an entry for a message of a different
+     *  length. */
+    private long _mismatches;
+
+    /** Number of entries evicted from memory or from file. */
+    private long _evictions;
+}
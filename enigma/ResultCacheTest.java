@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ResultCache class.
+ *  @author Vikram Cherukuri
+ */
+public class ResultCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a key that is all K. */
+    private static byte[] key(int k) {
+        byte[] result = new byte[ResultCache.KEY_BYTES];
+        Arrays.fill(result, (byte) k);
+        return result;
+    }
+
+    /** Return a result of N bytes, all K. */
+    private static byte[] result(int n, int k) {
+        byte[] result = new byte[n];
+        Arrays.fill(result, (byte) k);
+        return result;
+    }
+
+    /** Change the byte at POS in FILE. */
+    private static void corrupt(File file, long pos) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.seek(pos);
+            int b = f.read();
+            f.seek(pos);
+            f.write(b ^ 0x40);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKey() {
+        byte[] msg = "HELLO WORLD\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] a = ResultCache.key(
+            navalMachine("* B Beta III IV I AXLE (TR) (AK)"), "US-ASCII",
+            msg, msg.length);
+        byte[] b = ResultCache.key(
+            navalMachine("* B Beta III IV I AXLE AAAA (KA) (RT)"), "US-ASCII",
+            msg, msg.length);
+        assertArrayEquals(a, b);
+        assertFalse(Arrays.equals(a, ResultCache.key(
+            navalMachine("* B Beta III IV I AXLE AAAB (TR) (AK)"),
+            "US-ASCII", msg, msg.length)));
+        assertFalse(Arrays.equals(a, ResultCache.key(
+            navalMachine("* B Beta III IV I AXLE (TR) (AK)"), "US-ASCII",
+            msg, msg.length - 1)));
+        assertFalse(Arrays.equals(a, ResultCache.key(
+            navalMachine("* B Beta III IV I AXLE (TR) (AK)"), "UTF-8",
+            msg, msg.length)));
+    }
+
+    @Test
+    public void testMemory() {
+        int entry = 100 + ResultCache.ENTRY_OVERHEAD;
+        ResultCache cache = new ResultCache(3 * entry);
+        for (int k = 0; k < 3; k += 1) {
+            assertNull(cache.get(key(k), 10));
+            cache.put(key(k), 10, result(120, k), 100);
+        }
+        assertEquals(3 * entry, cache.used());
+        assertArrayEquals(result(100, 0), cache.get(key(0), 10));
+        assertNull(cache.get(key(0), 11));
+        cache.put(key(3), 10, result(100, 3), 100);
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(key(1), 10));
+        assertArrayEquals(result(100, 2), cache.get(key(2), 10));
+        cache.put(key(4), 10, result(4 * entry, 4), 4 * entry);
+        assertNull(cache.get(key(4), 10));
+        assertEquals(3 * entry, cache.used());
+        assertEquals(8, cache.lookups());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.mismatches());
+        assertEquals(2.0 / 8, cache.hitRate(), 1e-9);
+        assertTrue(Double.isNaN(new ResultCache(1000).hitRate()));
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = File.createTempFile("cache", ".bin");
+        try {
+            Files.write(file.toPath(), new byte[1000]);
+            ResultCache cache = new ResultCache(1000, file);
+            for (int k = 0; k < 20; k += 1) {
+                cache.put(key(k), k, result(100 + k, k), 100 + k);
+            }
+            assertEquals(1000, file.length());
+            for (int j = 0; j < 2; j += 1) {
+                cache = new ResultCache(200, file);
+                for (int k = 0; k < 20; k += 1) {
+                    byte[] found = cache.get(key(k), k);
+                    if (k < 16) {
+                        assertNull(found);
+                    } else {
+                        assertArrayEquals(result(100 + k, k), found);
+                        assertNull(cache.get(key(k), k + 1));
+                    }
+                }
+                assertEquals(4, cache.hits());
+            }
+            cache.put(key(30), 30, result(900, 30), 900);
+            cache = new ResultCache(200, file);
+            assertNull(cache.get(key(19), 19));
+            assertArrayEquals(result(900, 30), cache.get(key(30), 30));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testChecksums() throws IOException {
+        File file = File.createTempFile("cache", ".bin");
+        try {
+            Files.write(file.toPath(), new byte[1000]);
+            ResultCache cache = new ResultCache(1000, file);
+            for (int k = 0; k < 4; k += 1) {
+                cache.put(key(k), k, result(10, k), 10);
+            }
+            int record = ResultCache.RECORD_HEADER + 10;
+            corrupt(file, ResultCache.HEADER + record
+                    + ResultCache.RECORD_HEADER + 3);
+            cache = new ResultCache(200, file);
+            corrupt(file, ResultCache.HEADER + 2 * record + 5);
+            assertArrayEquals(result(10, 0), cache.get(key(0), 0));
+            assertNull(cache.get(key(1), 1));
+            assertNull(cache.get(key(2), 2));
+            assertNull(cache.get(key(2), 2));
+            assertArrayEquals(result(10, 3), cache.get(key(3), 3));
+            assertEquals(2, cache.hits());
+            assertEquals(0, cache.mismatches());
+            cache.put(key(1), 1, result(10, 1), 10);
+            cache = new ResultCache(200, file);
+            assertArrayEquals(result(10, 1), cache.get(key(1), 1));
+            assertNull(cache.get(key(2), 2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        String section = "* B Beta III IV I AXLE (TR)\nFROM HIS SHOULDER\n"
+            + "HIAWATHA\n* B Beta III IV I AXLE BBBB (TR)\nTOOK THE\n"
+            + "* B Beta III IV I AXLE (TR)\nFROM HIS SHOULDER\nHIAWATHA\n";
+        String input = section + section + "* B Beta III IV I AXLE (TR)\n";
+        File config = File.createTempFile("cache", ".conf");
+        File in = File.createTempFile("cache", ".in");
+        File out = File.createTempFile("cache", ".out");
+        File expected = File.createTempFile("cache", ".out");
+        File cacheFile = File.createTempFile("cache", ".bin");
+        try {
+            Files.write(config.toPath(),
+                        NAVAL_CONFIG.getBytes(StandardCharsets.US_ASCII));
+            Files.write(in.toPath(),
+                        input.getBytes(StandardCharsets.US_ASCII));
+            new Main(new String[] { config.getPath(), in.getPath(),
+                                    expected.getPath() }).process();
+            for (int trial = 0; trial < 2; trial += 1) {
+                new Main(new String[] { "--cache", "100000",
+                                        "--cache-file", cacheFile.getPath(),
+                                        config.getPath(), in.getPath(),
+                                        out.getPath() }).process();
+                assertArrayEquals(Files.readAllBytes(expected.toPath()),
+                                  Files.readAllBytes(out.toPath()));
+            }
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+            expected.delete();
+            cacheFile.delete();
+        }
+    }
+}
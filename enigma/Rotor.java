@@ -60,6 +60,11 @@ class Rotor {
         set(alphabet().toInt(cposn));
     }
 
+    /** Return my current ring setting. */
+    int ring() {
+        return _ring;
+    }
+
     /** Set ring's setting setting to POSN.  */
     void setRing(int posn) {
         _ring = posn;
@@ -92,6 +97,19 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be positioned to allow the rotor to my
+     *  left to advance at setting POSN. */
+    boolean atNotch(int posn) {
+        return false;
+    }
+
+    /** Returns the number of advances needed to put me at a notch:
+     *  0 if I am at one now, and Integer.MAX_VALUE if I never will be.
+     *  By default, I have no notches. */
+    int stepsToNotch() {
+        return Integer.MAX_VALUE;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -0,0 +1,98 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/** The rotors available to one Machine.  They are either given, as a
+ *  collection that the library keeps and consults each time, so that
+ *  rotors added to it later are found too, or made from the rotor
+ *  descriptions of a MachineConfig, each when it is first asked for, so
+ *  that a machine whose configuration offers many rotors pays only for
+ *  those it uses.  When several rotors have the same name, the last of
+ *  them is the one found by that name.
+ *  @author Vikram Cherukuri
+ */
+class RotorLibrary {
+
+    /** A library of the rotors in ROTORS, which remain those available
+     *  as ROTORS changes. */
+    RotorLibrary(Collection<Rotor> rotors) {
+        _config = null;
+        _given = rotors;
+        _rotors = null;
+    }
+
+    /** A library of new rotors made from the descriptions in CONFIG. */
+    RotorLibrary(MachineConfig config) {
+        _config = config;
+        _given = null;
+        _rotors = new Rotor[config.numDescriptions()];
+    }
+
+    /** Return the number of rotors available. */
+    int size() {
+        return _given != null ? _given.size() : _rotors.length;
+    }
+
+    /** Return the last rotor named NAME, making it if need be, or null if
+     *  there is none. */
+    Rotor get(String name) {
+        if (_config != null) {
+            int k = _config.indexOf(name);
+            return k < 0 ? null : get(k);
+        }
+        Rotor result = null;
+        for (Rotor r : _given) {
+            if (name.equals(r.name())) {
+                result = r;
+            }
+        }
+        return result;
+    }
+
+    /** Return rotor K, making it if need be. */
+    Rotor get(int k) {
+        if (_given != null) {
+            for (Rotor r : _given) {
+                if (k == 0) {
+                    return r;
+                }
+                k -= 1;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+        if (_rotors[k] == null) {
+            _rotors[k] = _config.newRotor(k);
+        }
+        return _rotors[k];
+    }
+
+    /** Return rotor K if it has been made, and otherwise null. */
+    Rotor made(int k) {
+        return _given != null ? get(k) : _rotors[k];
+    }
+
+    /** Return all my rotors in order, making any not yet made. */
+    Collection<Rotor> all() {
+        if (_given != null) {
+            return Collections.unmodifiableCollection(_given);
+        }
+        List<Rotor> result = new ArrayList<>(_rotors.length);
+        for (int k = 0; k < _rotors.length; k += 1) {
+            result.add(get(k));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** Configuration describing my rotors, or null if they were given. */
+    private final MachineConfig _config;
+
+    /** The rotors I was given, or null if they are made from _config. */
+    private final Collection<Rotor> _given;
+
+    /** My rotors made from _config, with null for those not yet made, or
+     *  null if they were given. */
+    private final Rotor[] _rotors;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+/** A bounded, lock-free queue between one producer thread and one
+ *  consumer thread.  The producer alone advances the tail and the
+ *  consumer alone the head; each publishes its progress with a single
+ *  volatile write, which also publishes the element it has just stored
+ *  or released.  Neither method blocks: offer fails when the queue is
+ *  full and poll when it is empty, leaving the caller to decide how to
+ *  wait.
+ *  @param <T> the type of element.
+ *  @author Vikram Cherukuri
+ */
+final class SpscQueue<T> {
+
+    /** A queue holding at most CAPACITY elements, which is rounded up to
+     *  a power of 2. */
+    SpscQueue(int capacity) {
+        int size =
+            capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) * 2;
+        _elements = new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Append X, which must not be null, returning false if I am full.
+     *  Only the producer may call this. */
+    boolean offer(T x) {
+        long tail = _tail;
+        if (tail - _head == _elements.length) {
+            return false;
+        }
+        _elements[(int) tail & _mask] = x;
+        _tail = tail + 1;
+        return true;
+    }
+
+    /** Remove and return my first element, or null if I am empty.  Only
+     *  the consumer may call this. */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = _head;
+        if (head == _tail) {
+            return null;
+        }
+        int k = (int) head & _mask;
+        T result = (T) _elements[k];
+        _elements[k] = null;
+        _head = head + 1;
+        return result;
+    }
+
+    /** Return the number of elements I can hold. */
+    int capacity() {
+        return _elements.length;
+    }
+
+    /** My elements, at their positions modulo the capacity. */
+    private final Object[] _elements;
+
+    /** Mask taking positions to indices in _elements. */
+    private final int _mask;
+
+    /** Position of my first element. */
+    private volatile long _head;
+
+    /** Position after my last element. */
+    private volatile long _tail;
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Frequency statistics of the characters of a text, from counts of each
+ *  character indexed by its position in an alphabet: the index of
+ *  coincidence, the Shannon entropy, and the chi-squared statistic against
+ *  a uniform distribution.  Enigma output is nearly uniform, so these
+ *  describe how far a ciphertext departs from random text.
+ *  @author Vikram Cherukuri
+ */
+final class Statistics {
+
+    /** Statistics of a text in an alphabet of SIZE characters, initially
+     *  empty. */
+    Statistics(int size) {
+        _counts = new long[size];
+    }
+
+    /** Statistics of a text containing COUNTS[I] occurrences of the
+     *  character with index I. */
+    Statistics(long[] counts) {
+        _counts = counts.clone();
+        for (long f : counts) {
+            _total += f;
+        }
+    }
+
+    /** Add COUNTS[I] occurrences of each character with index I, where
+     *  COUNTS is as long as my alphabet. */
+    void add(long[] counts) {
+        for (int i = 0; i < _counts.length; i += 1) {
+            _counts[i] += counts[i];
+            _total += counts[i];
+        }
+    }
+
+    /** Return a copy of my counts, indexed by character. */
+    long[] counts() {
+        return _counts.clone();
+    }
+
+    /** Return the number of characters counted. */
+    long total() {
+        return _total;
+    }
+
+    /** Return the probability that two characters drawn without
+     *  replacement are the same, or NaN if fewer than two were counted. */
+    double indexOfCoincidence() {
+        if (_total < 2) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (long f : _counts) {
+            sum += (double) f * (f - 1);
+        }
+        return sum / ((double) _total * (_total - 1));
+    }
+
+    /** Return the entropy of my character frequencies in bits per
+     *  character, or NaN if none were counted. */
+    double entropy() {
+        if (_total == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (long f : _counts) {
+            if (f > 0) {
+                double p = (double) f / _total;
+                sum -= p * Math.log(p);
+            }
+        }
+        return sum / Math.log(2);
+    }
+
+    /** Return the chi-squared statistic of my counts against equal
+     *  frequencies of every character, with degreesOfFreedom() degrees of
+     *  freedom, or NaN if none were counted. */
+    double chiSquared() {
+        if (_total == 0) {
+            return Double.NaN;
+        }
+        double expected = (double) _total / _counts.length;
+        double sum = 0;
+        for (long f : _counts) {
+            double d = f - expected;
+            sum += d * d;
+        }
+        return sum / expected;
+    }
+
+    /** Return the degrees of freedom of chiSquared(). */
+    int degreesOfFreedom() {
+        return _counts.length - 1;
+    }
+
+    /** Return X formatted with PRECISION decimals, or "-" if it is
+     *  NaN. */
+    private static String format(double x, int precision) {
+        return Double.isNaN(x) ? "-" : String.format("%." + precision + "f",
+                                                     x);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Statistics
+            && Arrays.equals(_counts, ((Statistics) obj)._counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_counts);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d ioc=%s entropy=%s chi2=%s df=%d",
+                             _total, format(indexOfCoincidence(), 5),
+                             format(entropy(), 4), format(chiSquared(), 2),
+                             degreesOfFreedom());
+    }
+
+    /** Number of occurrences of each character, by index. */
+    private final long[] _counts;
+
+    /** Sum of _counts. */
+    private long _total;
+}
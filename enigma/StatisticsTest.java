@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Statistics class and the counts
+ *  kept by kernels.
+ *  @author Vikram Cherukuri
+ */
+public class StatisticsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Tolerance of floating-point comparisons. */
+    private static final double EPSILON = 1e-9;
+
+    /** Settings line used in the tests. */
+    private static final String SETTINGS = "* B Beta III IV I AXLE (TR)";
+
+    /** Return the counts of each character of UPPER in TEXT. */
+    private static long[] count(String text) {
+        long[] result = new long[UPPER.size()];
+        for (int i = 0; i < text.length(); i += 1) {
+            if (UPPER.contains(text.charAt(i))) {
+                result[UPPER.toInt(text.charAt(i))] += 1;
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testValues() {
+        Statistics s = new Statistics(new long[] { 2, 1, 1, 0 });
+        assertEquals(4, s.total());
+        assertEquals(2.0 / 12, s.indexOfCoincidence(), EPSILON);
+        assertEquals(1.5, s.entropy(), EPSILON);
+        assertEquals(2.0, s.chiSquared(), EPSILON);
+        assertEquals(3, s.degreesOfFreedom());
+
+        Statistics uniform = new Statistics(new long[] { 5, 5, 5, 5 });
+        assertEquals(2.0, uniform.entropy(), EPSILON);
+        assertEquals(0.0, uniform.chiSquared(), EPSILON);
+
+        Statistics empty = new Statistics(4);
+        assertTrue(Double.isNaN(empty.indexOfCoincidence()));
+        assertTrue(Double.isNaN(empty.entropy()));
+        assertEquals("n=0 ioc=- entropy=- chi2=- df=3", empty.toString());
+        empty.add(new long[] { 2, 1, 1, 0 });
+        assertEquals(s, empty);
+        assertEquals(s.toString(), empty.toString());
+    }
+
+    @Test
+    public void testKernelCounts() {
+        Machine m = navalMachine(SETTINGS);
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        long[] expected = count(m.convert(msg));
+        byte[] in = "FROM HIS SHOULDER HIAWATHA".getBytes();
+        Kernel ascii = new AsciiKernel(navalMachine(SETTINGS));
+        ascii.convertLine(in, 0, in.length);
+        assertArrayEquals(expected, ascii.counts());
+        Kernel text = new TextKernel(navalMachine(SETTINGS),
+                                     StandardCharsets.US_ASCII);
+        text.convertLine(in, 0, in.length);
+        assertArrayEquals(expected, text.counts());
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        String input = SETTINGS + "\nFROM HIS SHOULDER\nHIAWATHA\n"
+            + SETTINGS + "\n" + SETTINGS + "\nTOOK THE CAMERA\n";
+        File config = File.createTempFile("stats", ".conf");
+        File in = File.createTempFile("stats", ".in");
+        File out = File.createTempFile("stats", ".out");
+        File stats = File.createTempFile("stats", ".txt");
+        try {
+            Files.write(config.toPath(),
+                        NAVAL_CONFIG.getBytes(StandardCharsets.US_ASCII));
+            Files.write(in.toPath(),
+                        input.getBytes(StandardCharsets.US_ASCII));
+            new Main(new String[] { "--stats", stats.getPath(),
+                                    config.getPath(), in.getPath(),
+                                    out.getPath() }).process();
+            List<String> lines = Files.readAllLines(stats.toPath());
+            String first =
+                navalMachine(SETTINGS).convert("FROMHISSHOULDERHIAWATHA");
+            String second = navalMachine(SETTINGS).convert("TOOKTHECAMERA");
+            List<String> expected = new ArrayList<>();
+            expected.add(SETTINGS + "\t" + new Statistics(count(first)));
+            expected.add(SETTINGS + "\t" + new Statistics(count("")));
+            expected.add(SETTINGS + "\t" + new Statistics(count(second)));
+            expected.add("total\t"
+                         + new Statistics(count(first + second)));
+            assertEquals(expected, lines);
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+            stats.delete();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package enigma;
 
 import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -39,6 +41,48 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches and kind of each naval rotor. */
+    private static final String[][] NAVAL_NOTCHES = {
+        {"I", "MQ"}, {"II", "ME"}, {"III", "MV"}, {"IV", "MJ"},
+        {"V", "MZ"}, {"VI", "MZM"}, {"VII", "MZM"}, {"VIII", "MZM"},
+        {"Beta", "N"}, {"Gamma", "N"}, {"B", "R"}, {"C", "R"},
+    };
+
+    /** A configuration with all the naval rotors, with five rotor slots
+     *  and three pawls. */
+    static final String NAVAL_CONFIG;
+    static {
+        StringBuilder config =
+            new StringBuilder("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n");
+        for (String[] rotor : NAVAL_NOTCHES) {
+            config.append(" ").append(rotor[0]).append(" ").append(rotor[1])
+                .append(" ").append(NAVALA.get(rotor[0])).append("\n");
+        }
+        NAVAL_CONFIG = config.toString();
+    }
+
+    /** Return a new machine configured by NAVAL_CONFIG. */
+    static Machine navalMachine() {
+        return new MachineConfig(new Scanner(NAVAL_CONFIG)).newMachine();
+    }
+
+    /** Return a new machine configured by NAVAL_CONFIG and set up by the
+     *  settings line SETTINGS. */
+    static Machine navalMachine(String settings) {
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        return m;
+    }
+
+    /** Return a random message of N indices of UPPER, using RANDOM. */
+    static int[] randomMessage(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = random.nextInt(UPPER.size());
+        }
+        return result;
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A conversion kernel for machines with any alphabet, the counterpart
+ *  of AsciiKernel for alphabets that are not ASCII.  Input bytes are
+ *  decoded into a reusable char buffer, converted a code point at a
+ *  time, and encoded, grouped, into a reusable output buffer, so that,
+ *  once the buffers have grown to the longest line, converting a line
+ *  allocates nothing.  Malformed input and unmappable output are
+ *  replaced, as by String and PrintStream.
+ *  @author Vikram Cherukuri
+ */
+final class TextKernel implements Kernel {
+
+    /** A kernel that converts through MACHINE, reading and writing text
+     *  in CHARSET. */
+    TextKernel(Machine machine, Charset charset) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _counts = new long[_alphabet.size()];
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _newline = System.lineSeparator();
+        _chars = CharBuffer.allocate(LineReader.BUFFER_SIZE);
+        _converted = CharBuffer.allocate(LineReader.BUFFER_SIZE);
+        _buffer = new byte[LineReader.BUFFER_SIZE];
+        _out = ByteBuffer.wrap(_buffer);
+    }
+
+    /** Return my machine. */
+    Machine machine() {
+        return _machine;
+    }
+
+    @Override
+    public void convertLine(byte[] in, int start, int end) {
+        if (_in == null || _in.array() != in) {
+            _in = ByteBuffer.wrap(in);
+        }
+        _in.clear().position(start).limit(end);
+        int size = (int) ((end - start) * _decoder.maxCharsPerByte()) + 1;
+        if (size > _chars.capacity()) {
+            _chars = CharBuffer.allocate(size);
+        }
+        _chars.clear();
+        _decoder.reset();
+        _decoder.decode(_in, _chars, true);
+        _decoder.flush(_chars);
+        _chars.flip();
+
+        int limit = 2 * _chars.remaining() + _newline.length();
+        if (limit > _converted.capacity()) {
+            _converted = CharBuffer.allocate(limit);
+        }
+        if (_chars.remaining() > _message.length) {
+            _message = new int[Math.max(2 * _message.length,
+                                        _chars.remaining())];
+        }
+        int n = 0;
+        while (_chars.hasRemaining()) {
+            char ch = _chars.get();
+            int c = ch;
+            if (Character.isHighSurrogate(ch) && _chars.hasRemaining()
+                && Character.isLowSurrogate(_chars.get(_chars.position()))) {
+                c = Character.toCodePoint(ch, _chars.get());
+            } else if (isWhitespace(ch)) {
+                continue;
+            }
+            _message[n] = _alphabet.toIndex(c);
+            n += 1;
+        }
+        _machine.convert(_message, 0, n);
+
+        CharBuffer out = _converted.clear();
+        int count = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (count == AsciiKernel.GROUP) {
+                out.put(' ');
+                count = 0;
+            }
+            int r = _message[i];
+            _counts[r] += 1;
+            int c = _alphabet.toCodePoint(r);
+            if (Character.isBmpCodePoint(c)) {
+                out.put((char) c);
+            } else {
+                out.put(Character.highSurrogate(c))
+                    .put(Character.lowSurrogate(c));
+            }
+            count += 1;
+        }
+        out.append(_newline).flip();
+
+        reserve((int) (out.remaining() * _encoder.maxBytesPerChar()));
+        _out.limit(_buffer.length).position(_length);
+        _encoder.reset();
+        _encoder.encode(out, _out, true);
+        _encoder.flush(_out);
+        _length = _out.position();
+    }
+
+    /** Return true iff CH is whitespace in the sense of the regular
+     *  expression \s. */
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000b'
+            || ch == '\f' || ch == '\r';
+    }
+
+    @Override
+    public long[] counts() {
+        return _counts;
+    }
+
+    @Override
+    public byte[] buffer() {
+        return _buffer;
+    }
+
+    @Override
+    public int length() {
+        return _length;
+    }
+
+    @Override
+    public void clear() {
+        _length = 0;
+    }
+
+    /** Ensure that buffer() has room for at least N more bytes. */
+    private void reserve(int n) {
+        if (_length + n > _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer,
+                                    Math.max(2 * _buffer.length, _length + n));
+            _out = ByteBuffer.wrap(_buffer);
+        }
+    }
+
+    /** The machine I convert through. */
+    private final Machine _machine;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of times each index has been output. */
+    private final long[] _counts;
+
+    /** Alphabet indices of the characters of the current line. */
+    private int[] _message = new int[Machine.BLOCK];
+
+    /** Decoder of input lines. */
+    private final CharsetDecoder _decoder;
+
+    /** Encoder of output lines. */
+    private final CharsetEncoder _encoder;
+
+    /** Line separator appended to each converted line. */
+    private final String _newline;
+
+    /** View of the current input buffer, or null. */
+    private ByteBuffer _in;
+
+    /** The current line, decoded. */
+    private CharBuffer _chars;
+
+    /** The converted current line. */
+    private CharBuffer _converted;
+
+    /** Converted output. */
+    private byte[] _buffer;
+
+    /** View of _buffer. */
+    private ByteBuffer _out;
+
+    /** Number of valid bytes in _buffer. */
+    private int _length;
+}
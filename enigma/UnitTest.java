@@ -11,7 +11,29 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      IndexPermutationTest.class,
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      MachineConfigTest.class,
+                                      AsciiKernelTest.class,
+                                      EnigmaProcessorTest.class,
+                                      AsyncReaderTest.class,
+                                      CheckpointTest.class,
+                                      AsyncWriterTest.class,
+                                      BatchTest.class,
+                                      CompiledMachineTest.class,
+                                      CycleCatalogTest.class,
+                                      KeySearchTest.class,
+                                      KeySheetTest.class,
+                                      AllocationTest.class,
+                                      StatisticsTest.class,
+                                      FairSchedulerTest.class,
+                                      CribFinderTest.class,
+                                      KeySpaceTest.class,
+                                      CascadeTest.class,
+                                      ResultCacheTest.class,
+                                      CompactTableTest.class,
+                                      ConformanceTest.class));
     }
 
 }